@@ -0,0 +1,48 @@
+package com.eggheadgames.siren;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Alert type resolution once the package entry has been read, for version names and version codes.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AlertTypeBenchmark {
+
+    @Param({"2.1.1.1", "1.1.2", "1.1.1.1"})
+    public String minVersionName;
+
+    @Param({"false", "true"})
+    public boolean force;
+
+    private final SirenAlertTypeResolver alertTypeResolver = new SirenAlertTypeResolver(SirenAlertType.OPTION,
+            SirenAlertType.FORCE, SirenAlertType.OPTION, SirenAlertType.SKIP, SirenAlertType.NONE);
+    private SirenVersion currentVersion;
+    private SirenVersion minVersion;
+    private long minVersionCode;
+    private final long currentVersionCode = 1101;
+
+    @Setup
+    public void setUp() {
+        currentVersion = SirenVersion.parse("1.1.1.1");
+        minVersion = SirenVersion.parse(minVersionName);
+        minVersionCode = minVersion.getSegment(0) * 1000L + minVersion.getSegment(1) * 100L + minVersion.getSegment(2);
+    }
+
+    @Benchmark
+    public SirenAlertType versionName() {
+        return alertTypeResolver.forVersionName(minVersion, currentVersion, force);
+    }
+
+    @Benchmark
+    public SirenAlertType versionCode() {
+        return alertTypeResolver.forVersionCode(minVersionCode, currentVersionCode, force);
+    }
+}
@@ -0,0 +1,88 @@
+package com.eggheadgames.siren;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Generates shared app description documents of different sizes.
+ */
+final class BenchmarkManifests {
+
+    static final String PACKAGE_NAME = "com.example.app";
+
+    private BenchmarkManifests() {
+        // utility class
+    }
+
+    /**
+     * @return a document describing {@code packageCount} packages, with {@link #PACKAGE_NAME} as the last one
+     */
+    static String shared(int packageCount) {
+        StringBuilder sb = new StringBuilder(packageCount * 120);
+        sb.append('{');
+        for (int i = 1; i < packageCount; i++) {
+            sb.append("\"com.example.whitelabel").append(i).append("\":{")
+                    .append("\"minVersionName\":\"").append(i % 10).append('.').append(i % 7).append(".0\",")
+                    .append("\"minVersionCode\":").append(i).append(',')
+                    .append("\"force\":").append(i % 2 == 0).append(',')
+                    .append("\"updateUrl\":\"https://example.com/apps/").append(i).append("\"},");
+        }
+        sb.append('"').append(PACKAGE_NAME).append("\":{")
+                .append("\"minVersionName\":\"2.1.1.1\",\"minVersionCode\":5,\"enable\":true,\"force\":false}");
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /**
+     * @return the same document as {@link #shared(int)} in the encoding read by {@link SirenBinaryManifestDecoder}
+     */
+    static byte[] sharedBinary(int packageCount) {
+        try {
+            ByteArrayOutputStream document = new ByteArrayOutputStream(packageCount * 80);
+            DataOutputStream out = new DataOutputStream(document);
+            out.write(SirenBinaryManifestDecoder.MAGIC);
+            out.writeByte(SirenBinaryManifestDecoder.VERSION);
+            out.writeShort(packageCount);
+            for (int i = 1; i < packageCount; i++) {
+                ByteArrayOutputStream fields = new ByteArrayOutputStream();
+                DataOutputStream fieldsOut = new DataOutputStream(fields);
+                writeString(fieldsOut, SirenBinaryManifestDecoder.TAG_MIN_VERSION_NAME, (i % 10) + "." + (i % 7) + ".0");
+                fieldsOut.writeByte(SirenBinaryManifestDecoder.TAG_MIN_VERSION_CODE);
+                fieldsOut.writeShort(8);
+                fieldsOut.writeLong(i);
+                fieldsOut.writeByte(SirenBinaryManifestDecoder.TAG_FORCE);
+                fieldsOut.writeShort(1);
+                fieldsOut.writeBoolean(i % 2 == 0);
+                writeString(fieldsOut, SirenBinaryManifestDecoder.TAG_UPDATE_URL, "https://example.com/apps/" + i);
+                writeEntry(out, "com.example.whitelabel" + i, fields.toByteArray());
+            }
+            ByteArrayOutputStream fields = new ByteArrayOutputStream();
+            DataOutputStream fieldsOut = new DataOutputStream(fields);
+            writeString(fieldsOut, SirenBinaryManifestDecoder.TAG_MIN_VERSION_NAME, "2.1.1.1");
+            fieldsOut.writeByte(SirenBinaryManifestDecoder.TAG_MIN_VERSION_CODE);
+            fieldsOut.writeShort(8);
+            fieldsOut.writeLong(5);
+            writeEntry(out, PACKAGE_NAME, fields.toByteArray());
+            return document.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeEntry(DataOutputStream out, String packageName, byte[] fields) throws IOException {
+        byte[] name = packageName.getBytes(Charset.forName("UTF-8"));
+        out.writeShort(name.length);
+        out.write(name);
+        out.writeShort(fields.length);
+        out.write(fields);
+    }
+
+    private static void writeString(DataOutputStream out, int tag, String value) throws IOException {
+        byte[] bytes = value.getBytes(Charset.forName("UTF-8"));
+        out.writeByte(tag);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+}
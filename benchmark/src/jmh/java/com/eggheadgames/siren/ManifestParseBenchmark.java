@@ -0,0 +1,61 @@
+package com.eggheadgames.siren;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming package lookup versus building the whole {@link JSONObject} tree, as the library did before.
+ * With {@code -prof gc} the streaming path should report the same bytes per operation for every document size.
+ * {@link #binaryDecoder()} reads the same document in the compact binary encoding.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ManifestParseBenchmark {
+
+    @Param({"1", "100", "1000", "10000", "50000"})
+    public int packageCount;
+
+    private String manifest;
+    private byte[] binaryManifest;
+    private SirenVersion currentVersion;
+    private final SirenAlertTypeResolver alertTypeResolver = new SirenAlertTypeResolver();
+
+    @Setup
+    public void setUp() {
+        manifest = BenchmarkManifests.shared(packageCount);
+        binaryManifest = BenchmarkManifests.sharedBinary(packageCount);
+        currentVersion = SirenVersion.parse("1.1.1.1");
+    }
+
+    @Benchmark
+    public SirenManifestEntry streamingParser() throws JSONException {
+        return SirenManifestParser.parse(manifest, BenchmarkManifests.PACKAGE_NAME);
+    }
+
+    /**
+     * What handleVerificationResults does before showing an alert: find the entry and decide on the alert type.
+     */
+    @Benchmark
+    public SirenAlertType streamingParserAndDecision() throws JSONException {
+        SirenManifestEntry entry = SirenManifestParser.parse(manifest, BenchmarkManifests.PACKAGE_NAME);
+        return alertTypeResolver.forVersionName(SirenVersion.parse(entry.minVersionName), currentVersion, entry.force);
+    }
+
+    @Benchmark
+    public SirenManifestEntry binaryDecoder() throws JSONException {
+        return SirenBinaryManifestDecoder.decode(binaryManifest, BenchmarkManifests.PACKAGE_NAME);
+    }
+
+    @Benchmark
+    public JSONObject jsonObjectTree() throws JSONException {
+        return new JSONObject(manifest).getJSONObject(BenchmarkManifests.PACKAGE_NAME);
+    }
+}
@@ -0,0 +1,65 @@
+package com.eggheadgames.siren;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching a device against a compiled rules section. The time per match should stay about the same from 10 to
+ * 1000 rules, while the linear scan it replaces grows with the rule count.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RuleIndexBenchmark {
+
+    private static final String[] COUNTRIES = {"US", "CA", "DE", "FR", "JP", "BR", "IN", "MX"};
+
+    @Param({"10", "100", "1000"})
+    public int ruleCount;
+
+    private List<SirenRuleIndex.Rule> rules;
+    private SirenRuleIndex index;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        rules = new ArrayList<>();
+        for (int i = 0; i < ruleCount; i++) {
+            SirenRuleIndex.Rule rule = new SirenRuleIndex.Rule();
+            rule.minSdk = 16 + random.nextInt(20);
+            rule.maxSdk = rule.minSdk + random.nextInt(6);
+            rule.countries = new String[]{COUNTRIES[random.nextInt(COUNTRIES.length)]};
+            rule.minInstalledVersionCode = random.nextInt(1000);
+            rule.maxInstalledVersionCode = rule.minInstalledVersionCode + random.nextInt(50);
+            rules.add(rule);
+        }
+        index = SirenRuleIndex.compile(rules);
+    }
+
+    /**
+     * A device that no rule matches, the worst case for both approaches
+     */
+    @Benchmark
+    public SirenRuleIndex.Rule compiledIndex() {
+        return index.match(40, "IT", 5000);
+    }
+
+    @Benchmark
+    public SirenRuleIndex.Rule linearScan() {
+        for (SirenRuleIndex.Rule rule : rules) {
+            if (40 >= rule.minSdk && 40 <= rule.maxSdk && 5000 >= rule.minInstalledVersionCode
+                    && 5000 <= rule.maxInstalledVersionCode && rule.countries != null && "IT".equals(rule.countries[0])) {
+                return rule;
+            }
+        }
+        return null;
+    }
+}
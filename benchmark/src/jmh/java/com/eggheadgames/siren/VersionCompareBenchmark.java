@@ -0,0 +1,93 @@
+package com.eggheadgames.siren;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SirenVersion} against the split/parseInt comparison the library used before.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VersionCompareBenchmark {
+
+    @Param({"2.1.1.1", "1.1.1.2", "1.1.1.1"})
+    public String minVersionName;
+
+    private final String currentVersionName = "1.1.1.1";
+    private SirenVersion currentVersion;
+    private SirenVersion minVersion;
+
+    @Setup
+    public void setUp() {
+        currentVersion = SirenVersion.parse(currentVersionName);
+        minVersion = SirenVersion.parse(minVersionName);
+    }
+
+    /**
+     * What a check costs: the installed version is parsed once, the required one on every check.
+     */
+    @Benchmark
+    public int parseAndCompare() {
+        return SirenVersion.parse(minVersionName).firstGreaterSegment(currentVersion);
+    }
+
+    @Benchmark
+    public int compareParsed() {
+        return minVersion.firstGreaterSegment(currentVersion);
+    }
+
+    @Benchmark
+    public int legacySplitCompare() {
+        String[] minVersionNumbers = minVersionName.split("\\.");
+        String[] currentVersionNumbers = currentVersionName.split("\\.");
+        if (minVersionNumbers.length != currentVersionNumbers.length) {
+            return -1;
+        }
+        for (Integer index = 0; index < minVersionNumbers.length; index++) {
+            Integer compareResult = legacyCheckVersionDigit(minVersionNumbers, currentVersionNumbers, index);
+            if (compareResult == 1) {
+                return index;
+            } else if (compareResult == -1) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static int legacyCheckVersionDigit(String[] minVersionNumbers, String[] currentVersionNumbers, int digitIndex) {
+        if (legacyIsGreater(minVersionNumbers[digitIndex], currentVersionNumbers[digitIndex])) {
+            return 1;
+        } else if (legacyIsEquals(minVersionNumbers[digitIndex], currentVersionNumbers[digitIndex])) {
+            return 0;
+        }
+        return -1;
+    }
+
+    private static boolean legacyIsGreater(String first, String second) {
+        return isDigitsOnly(first) && isDigitsOnly(second) && Integer.parseInt(first) > Integer.parseInt(second);
+    }
+
+    private static boolean legacyIsEquals(String first, String second) {
+        return isDigitsOnly(first) && isDigitsOnly(second) && Integer.parseInt(first) == Integer.parseInt(second);
+    }
+
+    /**
+     * Same loop as android.text.TextUtils.isDigitsOnly
+     */
+    private static boolean isDigitsOnly(CharSequence str) {
+        final int len = str.length();
+        for (int cp, i = 0; i < len; i += Character.charCount(cp)) {
+            cp = Character.codePointAt(str, i);
+            if (!Character.isDigit(cp)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,156 @@
+package com.eggheadgames.siren;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local stand-in for the server hosting the app description document, with injectable latency, errors and requests
+ * that are never answered, the way a lost packet looks to a client.
+ */
+final class FleetServer {
+
+    static final String PATH = "/siren.json";
+
+    private final HttpServer mServer;
+    private final ExecutorService mExecutor;
+    private final byte[] mBody;
+    private final byte[] mGzipBody;
+    private final String mETag;
+    private final long mLatencyMillis;
+    private final long mJitterMillis;
+    private final double mErrorRate;
+    private final double mTimeoutRate;
+    private final long mHangMillis;
+    private final int mRetryAfterSeconds;
+    private final Random mRandom;
+
+    final AtomicLong requests = new AtomicLong();
+    final AtomicLong bytesServed = new AtomicLong();
+    final AtomicLong ok = new AtomicLong();
+    final AtomicLong notModified = new AtomicLong();
+    final AtomicLong errors = new AtomicLong();
+    final AtomicLong hangs = new AtomicLong();
+
+    /**
+     * @param errorRate   fraction of requests answered with 503 and Retry-After
+     * @param timeoutRate fraction of requests held for {@code hangMillis} and then dropped without an answer
+     */
+    FleetServer(String document, int threads, long latencyMillis, long jitterMillis, double errorRate, double timeoutRate,
+                long hangMillis, int retryAfterSeconds, long seed) throws IOException {
+        this.mBody = document.getBytes(Charset.forName("UTF-8"));
+        this.mGzipBody = gzip(mBody);
+        this.mETag = "\"" + Integer.toHexString(document.hashCode()) + "\"";
+        this.mLatencyMillis = latencyMillis;
+        this.mJitterMillis = jitterMillis;
+        this.mErrorRate = errorRate;
+        this.mTimeoutRate = timeoutRate;
+        this.mHangMillis = hangMillis;
+        this.mRetryAfterSeconds = retryAfterSeconds;
+        this.mRandom = new Random(seed);
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4096);
+        mExecutor = Executors.newFixedThreadPool(threads);
+        mServer.setExecutor(mExecutor);
+        mServer.createContext(PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    respond(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+    }
+
+    void start() {
+        mServer.start();
+    }
+
+    void stop() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    String getUrl() {
+        return "http://" + mServer.getAddress().getAddress().getHostAddress() + ":" + mServer.getAddress().getPort() + PATH;
+    }
+
+    String getETag() {
+        return mETag;
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        double outcome;
+        long delay;
+        synchronized (mRandom) {
+            outcome = mRandom.nextDouble();
+            delay = mLatencyMillis + (mJitterMillis > 0 ? (long) (mRandom.nextDouble() * mJitterMillis) : 0);
+        }
+        if (outcome < mTimeoutRate) {
+            hangs.incrementAndGet();
+            sleep(mHangMillis);
+            // closed without a response, after the client gave up
+            return;
+        }
+        sleep(delay);
+        if (outcome < mTimeoutRate + mErrorRate) {
+            errors.incrementAndGet();
+            exchange.getResponseHeaders().set(Constants.HEADER_RETRY_AFTER, String.valueOf(mRetryAfterSeconds));
+            exchange.sendResponseHeaders(503, -1);
+            return;
+        }
+        exchange.getResponseHeaders().set(Constants.HEADER_ETAG, mETag);
+        if (mETag.equals(exchange.getRequestHeaders().getFirst(Constants.HEADER_IF_NONE_MATCH))) {
+            notModified.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        String acceptEncoding = exchange.getRequestHeaders().getFirst(Constants.HEADER_ACCEPT_ENCODING);
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains(Constants.ENCODING_GZIP);
+        byte[] body = gzip ? mGzipBody : mBody;
+        exchange.getResponseHeaders().set("Content-Type", SirenManifestDocument.JSON_CONTENT_TYPE);
+        if (gzip) {
+            exchange.getResponseHeaders().set(Constants.HEADER_CONTENT_ENCODING, Constants.ENCODING_GZIP);
+        }
+        exchange.sendResponseHeaders(200, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+        ok.incrementAndGet();
+        bytesServed.addAndGet(body.length);
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(bytes);
+        gzip.close();
+        return out.toByteArray();
+    }
+}
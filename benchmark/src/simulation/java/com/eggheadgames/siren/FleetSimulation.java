@@ -0,0 +1,483 @@
+package com.eggheadgames.siren;
+
+import org.json.JSONException;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives a fleet of simulated installs through the real check logic (schedule and sampling, backoff, download with
+ * the install's own cache, parsing, targeting rules and the alert decision) against a local {@link FleetServer}, and
+ * reports the request rate the server sees over time, the bytes it serves and the latency clients observe.
+ * <p>
+ * The parts are the library's own; only the steps that join them are copied from {@code Siren}, which needs a
+ * {@code Context}. Changes to {@code Siren.isCheckDue} and {@code Siren.prepareResult} have to be repeated in
+ * {@link #check}.
+ * <p>
+ * App launches happen in simulated time, so days of traffic take seconds; the checks of each time bucket are
+ * downloaded for real and concurrently before the next bucket starts. Options are given as {@code --name=value}, see
+ * {@link Options}.
+ */
+public final class FleetSimulation {
+
+    static final String PACKAGE_NAME = "com.example.app";
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * Simulated time starts at a midnight, so that calendar effects of the schedule show up in the first bucket
+     */
+    private static final long START = 20000 * DAY;
+
+    private static final String[] INSTALLED_VERSIONS = {"2.1.0", "2.1.0", "2.1.0", "2.0.3", "2.0.3", "1.9.0"};
+    /**
+     * Version codes of {@link #INSTALLED_VERSIONS}, at the same index
+     */
+    private static final long[] INSTALLED_VERSION_CODES = {210, 210, 210, 203, 203, 190};
+    private static final String[] COUNTRIES = {"US", "DE", "IN", "BR", "JP"};
+
+    private static final SirenManifestLoader.Cancellation NOT_CANCELLED = new SirenManifestLoader.Cancellation() {
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public void onConnect(HttpURLConnection connection) {
+            // never cancelled
+        }
+    };
+
+    static final class Options {
+        int clients = 10000;
+        int days = 2;
+        double launchesPerDay = 4;
+        /**
+         * Check interval set by the app; 0 checks on every launch
+         */
+        long intervalMinutes = TimeUnit.DAYS.toMinutes(1);
+        long bucketMinutes = 60;
+        int threads = 256;
+        int serverThreads = 64;
+        long latencyMillis = 20;
+        long jitterMillis = 40;
+        double errorRate;
+        double timeoutRate;
+        int retryAfterSeconds = 60;
+        int clientTimeoutMillis = 2000;
+        /**
+         * Server policy sent in the document, see {@link Constants#JSON_MIN_CHECK_INTERVAL_MINUTES}
+         */
+        long minCheckIntervalMinutes;
+        double checkSampleRate = 1;
+        /**
+         * Every install checks on its first launch with an empty cache, as after the library ships in a new release;
+         * otherwise installs start in steady state, with the current document cached
+         */
+        boolean coldStart;
+        /**
+         * Lets the JVM reuse connections between installs, which real devices can't
+         */
+        boolean keepAlive;
+        long seed = 42;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (String arg : args) {
+                if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                    throw new IllegalArgumentException("Expected --name=value: " + arg);
+                }
+                String name = arg.substring(2, arg.indexOf('='));
+                String value = arg.substring(arg.indexOf('=') + 1);
+                switch (name) {
+                    case "clients": options.clients = Integer.parseInt(value); break;
+                    case "days": options.days = Integer.parseInt(value); break;
+                    case "launchesPerDay": options.launchesPerDay = Double.parseDouble(value); break;
+                    case "intervalMinutes": options.intervalMinutes = Long.parseLong(value); break;
+                    case "bucketMinutes": options.bucketMinutes = Long.parseLong(value); break;
+                    case "threads": options.threads = Integer.parseInt(value); break;
+                    case "serverThreads": options.serverThreads = Integer.parseInt(value); break;
+                    case "latencyMillis": options.latencyMillis = Long.parseLong(value); break;
+                    case "jitterMillis": options.jitterMillis = Long.parseLong(value); break;
+                    case "errorRate": options.errorRate = Double.parseDouble(value); break;
+                    case "timeoutRate": options.timeoutRate = Double.parseDouble(value); break;
+                    case "retryAfterSeconds": options.retryAfterSeconds = Integer.parseInt(value); break;
+                    case "clientTimeoutMillis": options.clientTimeoutMillis = Integer.parseInt(value); break;
+                    case "minCheckIntervalMinutes": options.minCheckIntervalMinutes = Long.parseLong(value); break;
+                    case "checkSampleRate": options.checkSampleRate = Double.parseDouble(value); break;
+                    case "coldStart": options.coldStart = Boolean.parseBoolean(value); break;
+                    case "keepAlive": options.keepAlive = Boolean.parseBoolean(value); break;
+                    case "seed": options.seed = Long.parseLong(value); break;
+                    default: throw new IllegalArgumentException("Unknown option: " + name);
+                }
+            }
+            return options;
+        }
+    }
+
+    /**
+     * State one install keeps between checks, as SirenStateStore and the disk cache would
+     */
+    private static final class Client implements SirenBackoff.Store {
+        final long installSeed;
+        final SirenVersion version;
+        final long versionCode;
+        final int sdkInt;
+        final String country;
+        final SirenManifestCache cache;
+        final SirenManifestLoader loader;
+        final SirenBackoff backoff;
+        long lastCheck;
+        long minCheckIntervalMillis;
+        double checkSampleRate = 1;
+        private int mConsecutiveFailures;
+        private long mNextAttemptAt;
+
+        Client(Random random, File cacheDirectory, int timeoutMillis) {
+            installSeed = random.nextLong();
+            int installed = random.nextInt(INSTALLED_VERSIONS.length);
+            version = SirenVersion.parse(INSTALLED_VERSIONS[installed]);
+            versionCode = INSTALLED_VERSION_CODES[installed];
+            sdkInt = 21 + random.nextInt(14);
+            country = COUNTRIES[random.nextInt(COUNTRIES.length)];
+            cache = new SirenManifestCache(cacheDirectory);
+            loader = new SirenManifestLoader(cache, PACKAGE_NAME, SirenManifestLoader.MAX_BODY_BYTES, timeoutMillis);
+            backoff = new SirenBackoff(this, new Random(installSeed));
+        }
+
+        @Override
+        public int getConsecutiveFailures() {
+            return mConsecutiveFailures;
+        }
+
+        @Override
+        public long getNextAttemptAt() {
+            return mNextAttemptAt;
+        }
+
+        @Override
+        public void setBackoff(int consecutiveFailures, long nextAttemptAt) {
+            mConsecutiveFailures = consecutiveFailures;
+            mNextAttemptAt = nextAttemptAt;
+        }
+    }
+
+    private static final class Launch {
+        final Client client;
+        final long time;
+
+        Launch(Client client, long time) {
+            this.client = client;
+            this.time = time;
+        }
+    }
+
+    /**
+     * Outcomes of the checks, shared by all client threads
+     */
+    private static final class Tally {
+        long launches;
+        long notDue;
+        long sampledOut;
+        long timeouts;
+        long ioErrors;
+        final Map<SirenCheckDecision, Long> decisions = new EnumMap<>(SirenCheckDecision.class);
+        private long[] mLatencies = new long[1024];
+        private int mLatencyCount;
+
+        synchronized void decided(SirenCheckDecision decision) {
+            Long count = decisions.get(decision);
+            decisions.put(decision, count == null ? 1 : count + 1);
+        }
+
+        synchronized void latency(long nanos) {
+            if (mLatencyCount == mLatencies.length) {
+                mLatencies = Arrays.copyOf(mLatencies, mLatencyCount * 2);
+            }
+            mLatencies[mLatencyCount++] = nanos;
+        }
+
+        synchronized long[] sortedLatencies() {
+            long[] sorted = Arrays.copyOf(mLatencies, mLatencyCount);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    private final Options mOptions;
+    private final FleetServer mServer;
+    private final String mUrl;
+    private final long mIntervalMillis;
+    private final SirenAlertTypeResolver mAlertTypeResolver = new SirenAlertTypeResolver();
+    private final Tally mTally = new Tally();
+
+    private FleetSimulation(Options options, FleetServer server) {
+        this.mOptions = options;
+        this.mServer = server;
+        this.mUrl = server.getUrl();
+        this.mIntervalMillis = TimeUnit.MINUTES.toMillis(options.intervalMinutes);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        if (!options.keepAlive) {
+            // every install is a separate device with its own connections
+            System.setProperty("http.keepAlive", "false");
+        }
+        FleetServer server = new FleetServer(document(options), options.serverThreads, options.latencyMillis,
+                options.jitterMillis, options.errorRate, options.timeoutRate, options.clientTimeoutMillis * 2L,
+                options.retryAfterSeconds, options.seed);
+        File cacheRoot = Files.createTempDirectory("siren-fleet").toFile();
+        server.start();
+        try {
+            new FleetSimulation(options, server).run(cacheRoot);
+        } finally {
+            server.stop();
+            delete(cacheRoot);
+        }
+    }
+
+    static String document(Options options) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"").append(PACKAGE_NAME).append("\":{")
+                .append("\"minVersionName\":\"2.1.0\",\"enable\":true,\"force\":false,")
+                .append("\"updateUrl\":\"https://example.com/app\",")
+                .append('"').append(Constants.JSON_MIN_CHECK_INTERVAL_MINUTES).append("\":").append(options.minCheckIntervalMinutes).append(',')
+                .append('"').append(Constants.JSON_CHECK_SAMPLE_RATE).append("\":").append(options.checkSampleRate).append(',')
+                .append('"').append(Constants.JSON_RULES).append("\":[")
+                .append("{\"").append(Constants.JSON_RULE_MAX_SDK).append("\":22,\"force\":true},")
+                .append("{\"").append(Constants.JSON_RULE_COUNTRIES).append("\":[\"IN\"],\"minVersionName\":\"2.0.0\"}")
+                .append("]}}");
+        return sb.toString();
+    }
+
+    private void run(File cacheRoot) throws InterruptedException {
+        long bucketMillis = TimeUnit.MINUTES.toMillis(mOptions.bucketMinutes);
+        int bucketCount = (int) ((mOptions.days * DAY + bucketMillis - 1) / bucketMillis);
+        List<List<Launch>> buckets = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(new ArrayList<Launch>());
+        }
+        Random random = new Random(mOptions.seed);
+        long end = START + mOptions.days * DAY;
+        double meanGapMillis = DAY / mOptions.launchesPerDay;
+        for (int i = 0; i < mOptions.clients; i++) {
+            Client client = new Client(random, new File(cacheRoot, String.valueOf(i)), mOptions.clientTimeoutMillis);
+            if (!mOptions.coldStart) {
+                // checked during the previous period and kept the document
+                client.lastCheck = START - 1;
+                client.cache.put(mUrl, SirenManifestDocument.json(document(mOptions)), mServer.getETag(), null);
+            }
+            // launches of each install are a Poisson process; a client's launches stay in order within a bucket
+            for (long time = START + (long) (-Math.log(1 - random.nextDouble()) * meanGapMillis); time < end;
+                 time += (long) (-Math.log(1 - random.nextDouble()) * meanGapMillis)) {
+                buckets.get((int) ((time - START) / bucketMillis)).add(new Launch(client, time));
+            }
+        }
+
+        System.out.println(String.format(Locale.US, "%d installs, %d days, %.1f launches per day, check interval %d min, server %s",
+                mOptions.clients, mOptions.days, mOptions.launchesPerDay, mOptions.intervalMinutes, mUrl));
+        System.out.println(String.format(Locale.US, "%-12s %9s %9s %8s %8s %8s %8s %12s",
+                "time", "requests", "req/s", "200", "304", "503", "dropped", "bytes"));
+        ExecutorService executor = Executors.newFixedThreadPool(mOptions.threads);
+        long wallStart = System.nanoTime();
+        long[] previous = snapshot();
+        long peakRequests = 0;
+        try {
+            for (int b = 0; b < bucketCount; b++) {
+                runBucket(executor, buckets.get(b));
+                buckets.set(b, null);
+                long[] current = snapshot();
+                long requests = current[0] - previous[0];
+                peakRequests = Math.max(peakRequests, requests);
+                long bucketStart = b * bucketMillis;
+                System.out.println(String.format(Locale.US, "day %d %02d:%02d %9d %9.2f %8d %8d %8d %8d %12d",
+                        bucketStart / DAY, bucketStart % DAY / HOUR, bucketStart % HOUR / MINUTE,
+                        requests, requests * 1000.0 / bucketMillis, current[1] - previous[1], current[2] - previous[2],
+                        current[3] - previous[3], current[4] - previous[4], current[5] - previous[5]));
+                previous = current;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        report(peakRequests, bucketMillis, System.nanoTime() - wallStart);
+    }
+
+    /**
+     * Runs the launches of one bucket, every install on its own task so that its checks stay in order
+     */
+    private void runBucket(ExecutorService executor, final List<Launch> launches) throws InterruptedException {
+        List<int[]> runs = new ArrayList<>();
+        for (int start = 0; start < launches.size(); ) {
+            int next = start + 1;
+            while (next < launches.size() && launches.get(next).client == launches.get(start).client) {
+                next++;
+            }
+            runs.add(new int[]{start, next});
+            start = next;
+        }
+        final CountDownLatch done = new CountDownLatch(runs.size());
+        for (final int[] run : runs) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = run[0]; i < run[1]; i++) {
+                            check(launches.get(i).client, launches.get(i).time);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        done.await();
+    }
+
+    /**
+     * The check Siren runs on an app launch, with the time of the launch in place of the clock: the steps of
+     * {@code Siren.isCheckDue} and {@code Siren.prepareResult}, keeping what they store in the {@link Client}
+     */
+    private void check(Client client, long now) {
+        synchronized (mTally) {
+            mTally.launches++;
+        }
+        long interval = Math.max(mIntervalMillis, client.minCheckIntervalMillis);
+        long offset = SirenCheckSchedule.installOffset(client.installSeed, interval);
+        if (interval > 0 && client.lastCheck != 0 && !SirenCheckSchedule.isDue(interval, offset, client.lastCheck, now)) {
+            synchronized (mTally) {
+                mTally.notDue++;
+            }
+            return;
+        }
+        if (client.checkSampleRate < 1 && !SirenCheckSchedule.isSampled(client.installSeed, interval, offset, now, client.checkSampleRate)) {
+            synchronized (mTally) {
+                mTally.sampledOut++;
+            }
+            return;
+        }
+        if (!client.backoff.allowsAttempt(now)) {
+            mTally.decided(SirenCheckDecision.BACKED_OFF);
+            return;
+        }
+
+        SirenTransferMetrics transfer = new SirenTransferMetrics(mUrl);
+        SirenManifestDocument document;
+        long started = System.nanoTime();
+        try {
+            document = client.loader.load(mUrl, NOT_CANCELLED, transfer);
+        } catch (SocketTimeoutException e) {
+            mTally.latency(System.nanoTime() - started);
+            synchronized (mTally) {
+                mTally.timeouts++;
+            }
+            failed(client, now, 0);
+            return;
+        } catch (IOException | GeneralSecurityException e) {
+            mTally.latency(System.nanoTime() - started);
+            synchronized (mTally) {
+                mTally.ioErrors++;
+            }
+            failed(client, now, 0);
+            return;
+        }
+        mTally.latency(System.nanoTime() - started);
+        if (document == null) {
+            failed(client, now, transfer.retryAfterMillis);
+            return;
+        }
+        client.backoff.onSuccess();
+
+        SirenManifestEntry entry;
+        try {
+            entry = document.parse(PACKAGE_NAME);
+        } catch (JSONException e) {
+            mTally.decided(SirenCheckDecision.FAILED);
+            return;
+        }
+        client.minCheckIntervalMillis = SirenCheckSchedule.clampMinCheckInterval(entry.minCheckIntervalMillis);
+        client.checkSampleRate = SirenCheckSchedule.clampSampleRate(entry.checkSampleRate);
+        if (entry.rules != null) {
+            entry.applyRules(client.sdkInt, client.country, client.versionCode);
+        }
+        mTally.decided(decide(client, entry, now));
+    }
+
+    private void failed(Client client, long now, long retryAfterMillis) {
+        client.backoff.onFailure(now, retryAfterMillis);
+        mTally.decided(SirenCheckDecision.FAILED);
+    }
+
+    /**
+     * {@code Siren.checkVersionName}, for the {@link #document} which has no version code and is never skipped
+     */
+    private SirenCheckDecision decide(Client client, SirenManifestEntry entry, long now) {
+        if (entry.minVersionName == null) {
+            return SirenCheckDecision.UP_TO_DATE;
+        }
+        client.lastCheck = now;
+        if (!entry.enable) {
+            return SirenCheckDecision.DISABLED;
+        }
+        SirenAlertType alertType = mAlertTypeResolver.forVersionName(SirenVersion.parse(entry.minVersionName), client.version, entry.force);
+        return alertType == null ? SirenCheckDecision.UP_TO_DATE : SirenCheckDecision.ALERT_SHOWN;
+    }
+
+    /**
+     * @return requests, 200, 304, 503, dropped requests and bytes served so far
+     */
+    private long[] snapshot() {
+        return new long[]{mServer.requests.get(), mServer.ok.get(), mServer.notModified.get(), mServer.errors.get(),
+                mServer.hangs.get(), mServer.bytesServed.get()};
+    }
+
+    private void report(long peakRequests, long bucketMillis, long wallNanos) {
+        long[] totals = snapshot();
+        long[] latencies = mTally.sortedLatencies();
+        System.out.println();
+        System.out.println(String.format(Locale.US, "requests %d, peak %.2f req/s, mean %.2f req/s, body bytes served %d",
+                totals[0], peakRequests * 1000.0 / bucketMillis, totals[0] * 1000.0 / (mOptions.days * DAY), totals[5]));
+        System.out.println(String.format(Locale.US, "launches %d, not due %d, sampled out %d, client timeouts %d, other I/O errors %d",
+                mTally.launches, mTally.notDue, mTally.sampledOut, mTally.timeouts, mTally.ioErrors));
+        System.out.println("decisions " + mTally.decisions);
+        if (latencies.length > 0) {
+            System.out.println(String.format(Locale.US, "client latency ms: p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f",
+                    percentileMillis(latencies, 0.5), percentileMillis(latencies, 0.9), percentileMillis(latencies, 0.99),
+                    percentileMillis(latencies, 0.999), latencies[latencies.length - 1] / 1e6));
+        }
+        System.out.println(String.format(Locale.US, "simulated in %.1f s", wallNanos / 1e9));
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+}
@@ -4,6 +4,13 @@ final class Constants {
 
     static final String PREFERENCES_LAST_CHECK_DATE = "last_check_date";
     static final String PREFERENCES_SKIPPED_VERSION = "skipped_version";
+    static final String PREFERENCES_CONSECUTIVE_FAILURES = "consecutive_failures";
+    static final String PREFERENCES_NEXT_ATTEMPT_AT = "next_attempt_at";
+    static final String PREFERENCES_INSTALL_SEED = "install_seed";
+    static final String PREFERENCES_MIN_CHECK_INTERVAL = "min_check_interval";
+    static final String PREFERENCES_CHECK_SAMPLE_RATE = "check_sample_rate";
+    static final String PREFERENCES_MIGRATED = "migrated_from_default_preferences";
+    static final String PREFERENCES_FILE_NAME = "com.eggheadgames.siren";
 
     static final String JSON_MIN_VERSION_CODE = "minVersionCode";
     static final String JSON_MIN_VERSION_NAME = "minVersionName";
@@ -14,4 +21,34 @@ final class Constants {
 
     static final String JSON_UPDATE_URL = "updateUrl";
 
+    static final String JSON_MIN_CHECK_INTERVAL_MINUTES = "minCheckIntervalMinutes";
+    static final String JSON_CHECK_SAMPLE_RATE = "checkSampleRate";
+
+    static final String JSON_RULES = "rules";
+    static final String JSON_RULE_MIN_SDK = "minSdk";
+    static final String JSON_RULE_MAX_SDK = "maxSdk";
+    static final String JSON_RULE_COUNTRIES = "countries";
+    static final String JSON_RULE_MIN_INSTALLED_VERSION_CODE = "minInstalledVersionCode";
+    static final String JSON_RULE_MAX_INSTALLED_VERSION_CODE = "maxInstalledVersionCode";
+
+    static final String JSON_INDEX = "$index";
+    static final String JSON_INDEX_TEMPLATE = "template";
+    static final String JSON_INDEX_PACKAGES = "packages";
+    static final String URL_PACKAGE_NAME_PLACEHOLDER = "{packageName}";
+
+    static final String HEADER_ETAG = "ETag";
+    static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    static final String HEADER_ACCEPT = "Accept";
+    static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    static final String HEADER_RETRY_AFTER = "Retry-After";
+    static final String ENCODING_GZIP = "gzip";
+
+    static final String MANIFEST_CACHE_DIRECTORY = "siren";
+
+    static final int PREFETCH_JOB_ID = 0x51BE4;
+    static final String PREFETCH_EXTRA_URL = "com.eggheadgames.siren.APP_DESCRIPTION_URL";
+
 }
@@ -0,0 +1,7 @@
+package com.eggheadgames.siren;
+
+@SuppressWarnings("WeakerAccess")
+public interface ISirenMetricsListener {
+
+    void onVersionCheckCompleted(SirenCheckMetrics metrics);    // Called on the main thread after every version check that was not cancelled
+}
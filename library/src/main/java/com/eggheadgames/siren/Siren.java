@@ -2,22 +2,16 @@ package com.eggheadgames.siren;
 
 import android.app.Activity;
 import android.content.Context;
-import android.os.AsyncTask;
 
+import androidx.annotation.MainThread;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
 
 import org.json.JSONException;
-import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.lang.ref.WeakReference;
-import java.net.HttpURLConnection;
-import java.net.URL;
-
-import javax.net.ssl.HttpsURLConnection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  *JSON format should be the following
@@ -42,44 +36,45 @@ public class Siren {
     @VisibleForTesting
     protected static final Siren sirenInstance = new Siren();
     @VisibleForTesting
-    protected Context mApplicationContext;
-    private ISirenListener mSirenListener;
-    private WeakReference<Activity> mActivityRef;
+    protected volatile Context mApplicationContext;
 
     /**
-     * Determines alert type during version code verification
+     * Listener of the checks started without a {@link SirenCheckRequest}
      */
-    private SirenAlertType versionCodeUpdateAlertType = SirenAlertType.OPTION;
+    @Nullable private volatile ISirenListener mSirenListener;
+    @Nullable private volatile ISirenMetricsListener mMetricsListener;
 
     /**
-     * Determines the type of alert that should be shown for major version updates: A.b.c
+     * Replaced, never modified: a check reads it once when it starts, so it never sees half of a change made from
+     * another thread. The setters replace it under the instance lock, so concurrent changes are not lost.
      */
-    private SirenAlertType majorUpdateAlertType = SirenAlertType.OPTION;
+    private volatile SirenConfig mConfig = new SirenConfig.Builder().build();
 
     /**
-     * Determines the type of alert that should be shown for minor version updates: a.B.c
+     * Installed version name, parsed once
      */
-    private SirenAlertType minorUpdateAlertType  = SirenAlertType.OPTION;
+    @Nullable private volatile SirenVersion mCurrentVersion;
 
-    /**
-     Determines the type of alert that should be shown for minor patch updates: a.b.C
-     */
-    private SirenAlertType patchUpdateAlertType = SirenAlertType.OPTION;
+    @Nullable private volatile Prefetch mPrefetch;
 
     /**
-     Determines the type of alert that should be shown for revision updates: a.b.c.D
+     * Replaced, never modified, so readers on any thread see a complete state without locking
      */
-    private SirenAlertType revisionUpdateAlertType = SirenAlertType.OPTION;
+    @Nullable
+    private volatile SirenUpdateState mUpdateState;
 
     /**
-     Overrides the default localization of a user's device when presenting the update message and button titles in the alert.
-     */
-    private SirenSupportedLocales forceLanguageLocalization = null;
-    /**
-     * @param context - you should use an Application mApplicationContext here in order to not cause memory leaks
+     * @param context any context; the application context is kept, so the instance never holds on to an activity
      */
     public static Siren getInstance(Context context) {
-        sirenInstance.mApplicationContext = context;
+        if (sirenInstance.mApplicationContext == null) {
+            synchronized (Siren.class) {
+                if (sirenInstance.mApplicationContext == null) {
+                    Context applicationContext = context.getApplicationContext();
+                    sirenInstance.mApplicationContext = applicationContext != null ? applicationContext : context;
+                }
+            }
+        }
         return sirenInstance;
     }
 
@@ -88,279 +83,632 @@ public class Siren {
         // visible for testing
     }
 
-    public void checkVersion(Activity activity, SirenVersionCheckType versionCheckType, String appDescriptionUrl) {
+    /**
+     * @return handle that can cancel the check; checks for the same URL that overlap share a single download
+     */
+    public SirenCheckHandle checkVersion(Activity activity, SirenVersionCheckType versionCheckType, String appDescriptionUrl) {
+        return checkVersion(new SirenCheckRequest.Builder(appDescriptionUrl)
+                .setActivity(activity)
+                .setCheckType(versionCheckType)
+                .setListener(mSirenListener)
+                .build());
+    }
 
-        mActivityRef = new WeakReference<>(activity);
+    /**
+     * Checks at most once per {@code interval}. Each install checks at its own fixed point within the interval, so
+     * a fleet of installs spreads its checks evenly instead of all asking the server at the same time.
+     *
+     * @param interval 0 to check every time
+     * @return handle that can cancel the check; checks for the same URL that overlap share a single download
+     */
+    public SirenCheckHandle checkVersion(Activity activity, long interval, TimeUnit unit, String appDescriptionUrl) {
+        return checkVersion(new SirenCheckRequest.Builder(appDescriptionUrl)
+                .setActivity(activity)
+                .setInterval(interval, unit)
+                .setListener(mSirenListener)
+                .build());
+    }
 
-        if (getSirenHelper().isEmpty(appDescriptionUrl)) {
+    /**
+     * Checks with mirrors of the app description document. The first URL is asked first; whenever
+     * {@link #setHedgeDelay the hedge delay} passes without an answer, or a URL fails, the next one is asked as well.
+     * The first document describing this app is used and the other requests are cancelled.
+     *
+     * @param appDescriptionUrls the primary URL followed by its mirrors
+     */
+    public SirenCheckHandle checkVersion(Activity activity, SirenVersionCheckType versionCheckType, List<String> appDescriptionUrls) {
+        return checkVersion(new SirenCheckRequest.Builder(appDescriptionUrls)
+                .setActivity(activity)
+                .setCheckType(versionCheckType)
+                .setListener(mSirenListener)
+                .build());
+    }
+
+    /**
+     * Starts a check that reports to the request's own listener and shows the alert over its own activity. The
+     * configuration is taken once, when the check starts, so checks can be started from any thread without locking.
+     *
+     * @return handle that can cancel the check; checks for the same URL that overlap share a single download
+     */
+    public SirenCheckHandle checkVersion(final SirenCheckRequest request) {
+        if (!hasValidUrls(request.getAppDescriptionUrls())) {
             getSirenHelper().logError(getClass().getSimpleName(), "Please make sure you set correct path to app version description document");
-            return;
+            return SirenCheckHandle.completed();
         }
 
-        if (versionCheckType == SirenVersionCheckType.IMMEDIATELY) {
-            performVersionCheck(appDescriptionUrl);
-        } else if (versionCheckType.getValue() <= getSirenHelper().getDaysSinceLastCheck(mApplicationContext)
-                ||getSirenHelper().getLastVerificationDate(mApplicationContext) == 0) {
-            performVersionCheck(appDescriptionUrl);
+        if (getSirenHelper().isStateLoaded()) {
+            return startIfDue(request);
         }
+        // the stored state is read from disk first, which is decided on the worker pool instead of the caller's thread
+        final SirenCheckHandle handle = SirenCheckHandle.deferred();
+        Runnable decision = new Runnable() {
+            @Override
+            public void run() {
+                getSirenHelper().reloadState(mApplicationContext);
+                handle.attach(startIfDue(request));
+            }
+        };
+        if (!getSirenHelper().getManifestFetcher(mApplicationContext).runInBackground(decision)) {
+            decision.run();
+        }
+        return handle;
     }
 
-    public void setMajorUpdateAlertType(@SuppressWarnings("SameParameterValue") SirenAlertType majorUpdateAlertType) {
-        this.majorUpdateAlertType = majorUpdateAlertType;
+    private SirenCheckHandle startIfDue(SirenCheckRequest request) {
+        if (isCheckDue(request.getIntervalMillis())) {
+            return performVersionCheck(request);
+        }
+        return SirenCheckHandle.completed();
     }
 
-    public void setMinorUpdateAlertType(SirenAlertType minorUpdateAlertType) {
-        this.minorUpdateAlertType = minorUpdateAlertType;
+    private boolean hasValidUrls(List<String> appDescriptionUrls) {
+        if (appDescriptionUrls.isEmpty()) {
+            return false;
+        }
+        for (String appDescriptionUrl : appDescriptionUrls) {
+            if (appDescriptionUrl == null || getSirenHelper().isEmpty(appDescriptionUrl)) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    public void setPatchUpdateAlertType(SirenAlertType patchUpdateAlertType) {
-        this.patchUpdateAlertType = patchUpdateAlertType;
+    /**
+     * Replaces the configuration of the checks started from now on; running checks keep the one they started with
+     */
+    public synchronized void setConfig(SirenConfig config) {
+        mConfig = config;
     }
 
-    public void setRevisionUpdateAlertType(SirenAlertType revisionUpdateAlertType) {
-        this.revisionUpdateAlertType = revisionUpdateAlertType;
+    public SirenConfig getConfig() {
+        return mConfig;
     }
 
-    public void setSirenListener(ISirenListener sirenListener) {
-        this.mSirenListener = sirenListener;
+    public synchronized void setMajorUpdateAlertType(@SuppressWarnings("SameParameterValue") SirenAlertType majorUpdateAlertType) {
+        mConfig = mConfig.buildUpon().setMajorUpdateAlertType(majorUpdateAlertType).build();
     }
 
-    public void setVersionCodeUpdateAlertType(SirenAlertType versionCodeUpdateAlertType) {
-        this.versionCodeUpdateAlertType = versionCodeUpdateAlertType;
+    public synchronized void setMinorUpdateAlertType(SirenAlertType minorUpdateAlertType) {
+        mConfig = mConfig.buildUpon().setMinorUpdateAlertType(minorUpdateAlertType).build();
     }
 
-    public void setLanguageLocalization(SirenSupportedLocales localization) {
-        forceLanguageLocalization = localization;
+    public synchronized void setPatchUpdateAlertType(SirenAlertType patchUpdateAlertType) {
+        mConfig = mConfig.buildUpon().setPatchUpdateAlertType(patchUpdateAlertType).build();
     }
 
-    @VisibleForTesting
-    protected void performVersionCheck(String appDescriptionUrl) {
-        new LoadJsonTask().execute(appDescriptionUrl);
+    public synchronized void setRevisionUpdateAlertType(SirenAlertType revisionUpdateAlertType) {
+        mConfig = mConfig.buildUpon().setRevisionUpdateAlertType(revisionUpdateAlertType).build();
     }
 
-    @VisibleForTesting
-    protected void handleVerificationResults(String json) {
-        try {
-            JSONObject rootJson = new JSONObject(json);
+    /**
+     * @param sirenListener listener of the checks started without a {@link SirenCheckRequest}
+     */
+    public void setSirenListener(@Nullable ISirenListener sirenListener) {
+        this.mSirenListener = sirenListener;
+    }
 
-            if (rootJson.isNull(getSirenHelper().getPackageName(mApplicationContext))) {
-                throw new JSONException("field not found");
-            } else {
-                JSONObject appJson = rootJson.getJSONObject(getSirenHelper().getPackageName(mApplicationContext));
+    /**
+     * @param metricsListener receives phase timings and the outcome of every version check
+     */
+    public void setMetricsListener(@Nullable ISirenMetricsListener metricsListener) {
+        this.mMetricsListener = metricsListener;
+    }
 
-                //version name have higher priority then version code
-                if (checkVersionName(appJson)) {
-                    return;
-                }
+    public synchronized void setVersionCodeUpdateAlertType(SirenAlertType versionCodeUpdateAlertType) {
+        mConfig = mConfig.buildUpon().setVersionCodeUpdateAlertType(versionCodeUpdateAlertType).build();
+    }
 
-                checkVersionCode(appJson);
-            }
+    /**
+     * Overrides the default localization of a user's device when presenting the update message and button titles in the alert.
+     */
+    public synchronized void setLanguageLocalization(SirenSupportedLocales localization) {
+        mConfig = mConfig.buildUpon().setLanguageLocalization(localization).build();
+    }
 
-        } catch (JSONException e) {
-            e.printStackTrace();
-            if (mSirenListener != null) {
-                mSirenListener.onError(e);
-            }
-        }
+    /**
+     * @param delay how long a check with mirrors waits for a URL before also asking the next one; about the 95th
+     *              percentile of check latency keeps the extra requests to a few percent. Defaults to 2 seconds.
+     */
+    public synchronized void setHedgeDelay(long delay, TimeUnit unit) {
+        mConfig = mConfig.buildUpon().setHedgeDelay(delay, unit).build();
     }
 
-    @VisibleForTesting
-    protected SirenAlertWrapper getAlertWrapper(SirenAlertType alertType, String appVersion, @Nullable String updateUrl) {
-        Activity activity = mActivityRef.get();
-        return new SirenAlertWrapper(activity, mSirenListener, alertType, appVersion, updateUrl, forceLanguageLocalization, getSirenHelper());
+    /**
+     * Decides right away from the last downloaded app description document, as long as it is not older than
+     * {@code maxAge}, and asks the server in the background. The user is only prompted again if the server's answer
+     * changes the outcome, for example when a forced update was published in the meantime. When the server can't be
+     * reached, the decision made from the older copy stands and {@link ISirenListener#onError} is not called.
+     * <p>
+     * Without a downloaded copy, the snapshot set with {@link #setBundledManifest} is used the same way.
+     *
+     * @param maxAge 0 to always wait for the server, the default
+     */
+    public synchronized void setMaxStaleAge(long maxAge, TimeUnit unit) {
+        mConfig = mConfig.buildUpon().setMaxStaleAge(maxAge, unit).build();
     }
 
-    protected SirenHelper getSirenHelper() {
-        return SirenHelper.getInstance();
+    /**
+     * @param assetPath path, within the app's assets, of a copy of the app description document (JSON or binary) to
+     *                  decide from until the first download, see {@link #setMaxStaleAge}; its age is counted from the
+     *                  last update of the app. Null to not use one.
+     */
+    public void setBundledManifest(@Nullable String assetPath) {
+        getSirenHelper().getManifestFetcher(mApplicationContext)
+                .setBundledManifest(assetPath == null ? null : new SirenBundledManifest(mApplicationContext.getApplicationContext(), assetPath));
     }
 
-    private boolean checkVersionName(JSONObject appJson) throws JSONException{
-        if (appJson.isNull(Constants.JSON_MIN_VERSION_NAME)) {
-            return false;
+    /**
+     * For apps that start Siren in more than one process. A check then waits while another process of the app is
+     * downloading the same app description document, and decides from the copy that process stored instead of
+     * downloading it again. The same goes for a copy stored by another process within the check's interval. The
+     * processes also share when they last checked, the version the user skipped and the backoff after failures. Call it
+     * in every process, before the first check.
+     */
+    public void setMultiProcess(boolean enabled) {
+        getSirenHelper().setMultiProcess(mApplicationContext, enabled);
+    }
+
+    /**
+     * Returns the outcome of the latest check that evaluated an app description document in this process, e.g. to
+     * show an update badge or to block flows while an update is forced. It does no I/O and takes no lock, so it can
+     * be called from any thread as often as needed; call {@link #checkVersion} to refresh it.
+     *
+     * @return null until a check evaluated a document
+     */
+    @Nullable
+    public SirenUpdateState getUpdateState() {
+        return mUpdateState;
+    }
+
+    /**
+     * Downloads the app description document periodically with JobScheduler. Checks for the same URL then decide
+     * right away from the downloaded copy, and only ask the server themselves, in the background, when that copy is
+     * older than {@code interval}. Call it on every launch; an existing schedule for the same URL is kept.
+     *
+     * @param interval at least 15 minutes
+     */
+    public void enablePrefetch(String appDescriptionUrl, long interval, TimeUnit unit) {
+        if (getSirenHelper().isEmpty(appDescriptionUrl)) {
+            getSirenHelper().logError(getClass().getSimpleName(), "Please make sure you set correct path to app version description document");
+            return;
         }
-        getSirenHelper().setLastVerificationDate(mApplicationContext);
+        long intervalMillis = SirenPrefetchJobService.schedule(mApplicationContext, appDescriptionUrl, unit.toMillis(interval));
+        mPrefetch = new Prefetch(appDescriptionUrl, intervalMillis);
+    }
 
-        // If no config found, assume version check is enabled
-        Boolean versionCheckEnabled = appJson.has(Constants.JSON_ENABLE_VERSION_CHECK) ? appJson.getBoolean(Constants.JSON_ENABLE_VERSION_CHECK) : true;
-        if (!versionCheckEnabled) {
+    public void disablePrefetch() {
+        SirenPrefetchJobService.cancel(mApplicationContext);
+        mPrefetch = null;
+    }
+
+    /**
+     * The app description document can lengthen the interval and sample installs, to shed load without a release
+     */
+    private boolean isCheckDue(long intervalMillis) {
+        long interval = Math.max(intervalMillis, getSirenHelper().getMinCheckIntervalMillis(mApplicationContext));
+        if (interval > 0 && getSirenHelper().getLastVerificationDate(mApplicationContext) != 0
+                && !getSirenHelper().isCheckDue(mApplicationContext, interval)) {
             return false;
         }
+        return !getSirenHelper().isSampledOut(mApplicationContext, interval);
+    }
 
-        // If no config found, assume force update = false
-        Boolean forceUpdateEnabled = appJson.has(Constants.JSON_FORCE_ALERT_TYPE) ? appJson.getBoolean(Constants.JSON_FORCE_ALERT_TYPE) : false;
-        String minVersionName = appJson.getString(Constants.JSON_MIN_VERSION_NAME);
-        String currentVersionName = getSirenHelper().getVersionName(mApplicationContext);
+    @VisibleForTesting
+    protected SirenCheckHandle performVersionCheck(SirenCheckRequest request) {
+        SirenConfig config = resolveConfig(request);
+        List<String> appDescriptionUrls = request.getAppDescriptionUrls();
+        Prefetch prefetch = mPrefetch;
+        long maxCacheAgeMillis = prefetch != null && appDescriptionUrls.get(0).equals(prefetch.url)
+                ? prefetch.intervalMillis : SirenFetcher.NETWORK_FIRST;
+        // with several processes, one download per interval is enough for all of them
+        long sharedMaxAgeMillis = Math.max(request.getIntervalMillis(), getSirenHelper().getMinCheckIntervalMillis(mApplicationContext));
+        return getSirenHelper().getManifestFetcher(mApplicationContext).fetch(appDescriptionUrls, config.hedgeDelayMillis,
+                maxCacheAgeMillis, config.maxStaleAgeMillis, sharedMaxAgeMillis, new VersionCheck(request, config));
+    }
 
-        if (getSirenHelper().isEmpty(minVersionName) || getSirenHelper().isEmpty(currentVersionName) || getSirenHelper().isVersionSkippedByUser(mApplicationContext, minVersionName)) {
-            return false;
+    @VisibleForTesting
+    protected void handleVerificationResults(SirenCheckRequest request, String json) {
+        deliverResult(request, prepareResult(request, resolveConfig(request), SirenManifestDocument.json(json), false), null);
+    }
+
+    private SirenConfig resolveConfig(SirenCheckRequest request) {
+        SirenConfig config = request.getConfig();
+        return config != null ? config : mConfig;
+    }
+
+    /**
+     * Receives the document of one check: a stale copy first if the fetch handed one out, then the server's answer.
+     * Callbacks and {@link #deliver} run on the main thread.
+     */
+    private final class VersionCheck implements SirenFetcher.Callback {
+        private final SirenCheckRequest mRequest;
+        private final SirenConfig mCheckConfig;
+
+        /**
+         * A stale copy was received and its result is not delivered yet
+         */
+        private boolean mStalePending;
+        @Nullable private CheckResult mStaleResult;
+        @Nullable private SirenAlertWrapper mStaleAlert;
+        @Nullable private Runnable mRevalidation;
+
+        VersionCheck(SirenCheckRequest request, SirenConfig config) {
+            this.mRequest = request;
+            this.mCheckConfig = config;
         }
 
-        SirenAlertType alertType = null;
-        String[] minVersionNumbers = minVersionName.split("\\.");
-        String[] currentVersionNumbers = currentVersionName.split("\\.");
-        //noinspection ConstantConditions
-        if (minVersionNumbers != null && currentVersionNumbers != null
-                && minVersionNumbers.length == currentVersionNumbers.length) {
-
-            Boolean versionUpdateDetected = false;
-            for (Integer index = 0; index < Math.min(minVersionNumbers.length, currentVersionNumbers.length); index++) {
-                Integer compareResult = checkVersionDigit(minVersionNumbers, currentVersionNumbers, index);
-                if (compareResult == 1) {
-                    versionUpdateDetected = true;
-                    if (forceUpdateEnabled) {
-                        alertType = SirenAlertType.FORCE;
+        @Override
+        public void onFetched(@Nullable final SirenManifestDocument document, final SirenTransferMetrics transfer) {
+            if (transfer.stale) {
+                if (document != null && !document.isEmpty()) {
+                    mStalePending = true;
+                    handleVerificationResultsInBackground(document, transfer);
+                }
+                return;
+            }
+            afterStaleResult(new Runnable() {
+                @Override
+                public void run() {
+                    if (transfer.source == SirenCheckMetrics.Source.NONE) {
+                        reportMetrics(transfer, 0, 0, SirenCheckDecision.BACKED_OFF);
+                    } else if (document == null || document.isEmpty()) {
+                        onFailed(new NullPointerException(), transfer);
                     } else {
-                        switch (index) {
-                            case 0: alertType = majorUpdateAlertType; break;
-                            case 1: alertType = minorUpdateAlertType; break;
-                            case 2: alertType = patchUpdateAlertType; break;
-                            case 3: alertType = revisionUpdateAlertType; break;
-                            default: alertType = SirenAlertType.OPTION; break;
-                        }
+                        handleVerificationResultsInBackground(document, transfer);
                     }
-                    break;
-                } else if (compareResult == -1) {
-                    return false;
                 }
+            });
+        }
+
+        @Override
+        public void onFetchFailed(final Exception e, final SirenTransferMetrics transfer) {
+            afterStaleResult(new Runnable() {
+                @Override
+                public void run() {
+                    onFailed(e, transfer);
+                }
+            });
+        }
+
+        /**
+         * The server's answer can arrive while the stale copy is still being parsed; it is handled once that is done
+         */
+        private void afterStaleResult(Runnable revalidation) {
+            if (mStalePending) {
+                mRevalidation = revalidation;
+            } else {
+                revalidation.run();
             }
+        }
 
-            @Nullable String updateUrl = null;
+        private void onFailed(Exception e, SirenTransferMetrics transfer) {
+            // a decision made from a stale copy stands when the server can't be reached
+            ISirenListener listener = mRequest.getListener();
+            if (mStaleResult == null && listener != null) {
+                listener.onError(e);
+            }
+            reportMetrics(transfer, 0, 0, SirenCheckDecision.FAILED);
+        }
 
-            if (!appJson.isNull(Constants.JSON_UPDATE_URL)) {
-                updateUrl = appJson.getString(Constants.JSON_UPDATE_URL);
+        /**
+         * Parses, decides and prepares the alert on a worker thread, so the main thread only shows the result
+         */
+        private void handleVerificationResultsInBackground(final SirenManifestDocument document, final SirenTransferMetrics transfer) {
+            final SirenFetcher fetcher = getSirenHelper().getManifestFetcher(mApplicationContext);
+            boolean scheduled = fetcher.runInBackground(new Runnable() {
+                @Override
+                public void run() {
+                    final CheckResult result = prepareResult(mRequest, mCheckConfig, document, transfer.stale);
+                    fetcher.runOnCallbackThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            deliver(result, transfer);
+                        }
+                    });
+                }
+            });
+            if (!scheduled) {
+                deliver(prepareResult(mRequest, mCheckConfig, document, transfer.stale), transfer);
             }
+        }
 
-            if (versionUpdateDetected) {
-                showAlert(minVersionName, updateUrl, alertType);
-                return true;
+        @MainThread
+        private void deliver(CheckResult result, SirenTransferMetrics transfer) {
+            if (transfer.stale) {
+                if (result.error != null) {
+                    // an unusable copy decides nothing, the server's answer is handled as if there was none
+                    reportMetrics(transfer, result.parseNanos, result.decisionNanos, result.decision);
+                } else {
+                    mStaleResult = result;
+                    mStaleAlert = deliverResult(mRequest, result, transfer);
+                }
+                mStalePending = false;
+                if (mRevalidation != null) {
+                    Runnable revalidation = mRevalidation;
+                    mRevalidation = null;
+                    revalidation.run();
+                }
+            } else if (mStaleResult != null && result.hasSameOutcome(mStaleResult)) {
+                // the user already saw this outcome
+                publishState(result);
+                reportMetrics(transfer, result.parseNanos, result.decisionNanos, result.decision);
+            } else if (mStaleResult != null && result.error != null) {
+                // like an unreachable server, an unusable answer leaves the stale copy's decision standing
+                reportMetrics(transfer, result.parseNanos, result.decisionNanos, result.decision);
+            } else {
+                if (mStaleAlert != null) {
+                    // the server's answer replaces the alert of the stale copy, or closes it if no update is needed
+                    mStaleAlert.dismiss();
+                    mStaleAlert = null;
+                }
+                deliverResult(mRequest, result, transfer);
             }
         }
-        return false;
     }
 
-    private int checkVersionDigit(String[] minVersionNumbers, String[] currentVersionNumbers, int digitIndex) {
-        if (minVersionNumbers.length > digitIndex) {
-            if (getSirenHelper().isGreater(minVersionNumbers[digitIndex], currentVersionNumbers[digitIndex])) {
-                return 1;
-            } else if (getSirenHelper().isEquals(minVersionNumbers[digitIndex], currentVersionNumbers[digitIndex])) {
-                return 0;
+    /**
+     * @param stale true for a stale or bundled copy, which decides what to show but is not remembered as a check
+     */
+    @WorkerThread
+    private CheckResult prepareResult(SirenCheckRequest request, SirenConfig config, SirenManifestDocument document, boolean stale) {
+        CheckResult result = new CheckResult();
+        result.stale = stale;
+        long parseStart = System.nanoTime();
+        SirenManifestEntry appEntry;
+        try {
+            appEntry = document.parse(getSirenHelper().getPackageName(mApplicationContext));
+        } catch (JSONException e) {
+            e.printStackTrace();
+            result.error = e;
+            result.decision = SirenCheckDecision.FAILED;
+            result.parseNanos = System.nanoTime() - parseStart;
+            return result;
+        }
+        long decisionStart = System.nanoTime();
+        if (!stale) {
+            getSirenHelper().setCheckPolicy(mApplicationContext, appEntry.minCheckIntervalMillis, appEntry.checkSampleRate);
+        }
+        if (appEntry.rules != null) {
+            SirenAppInfo appInfo = getSirenHelper().getAppInfo(mApplicationContext);
+            appEntry.applyRules(appInfo.sdkInt, appInfo.country, appInfo.versionCode);
+        }
+
+        //version name have higher priority then version code
+        SirenCheckDecision decision = checkVersionName(request, config, appEntry, result);
+        if (decision != SirenCheckDecision.ALERT_SHOWN) {
+            SirenCheckDecision versionCodeDecision = checkVersionCode(request, config, appEntry, result);
+            if (versionCodeDecision != null) {
+                decision = versionCodeDecision;
+            } else if (decision == null) {
+                decision = SirenCheckDecision.UP_TO_DATE;
             }
         }
-        return -1;
+        result.decision = decision;
+        result.state = new SirenUpdateState(decision, getRequiredVersion(appEntry, result), result.alertType, appEntry.updateUrl,
+                System.currentTimeMillis());
+        result.parseNanos = decisionStart - parseStart;
+        result.decisionNanos = System.nanoTime() - decisionStart;
+        return result;
     }
 
-    @SuppressWarnings("UnusedReturnValue")
-    private boolean checkVersionCode(JSONObject appJson) throws JSONException{
-        if (!appJson.isNull(Constants.JSON_MIN_VERSION_CODE)) {
-            int minAppVersionCode = appJson.getInt(Constants.JSON_MIN_VERSION_CODE);
-            // If no config found, assume version check is enabled
-            Boolean versionCheckEnabled = appJson.has(Constants.JSON_ENABLE_VERSION_CHECK) ? appJson.getBoolean(Constants.JSON_ENABLE_VERSION_CHECK) : true;
-            if (!versionCheckEnabled) {
-                return false;
+    /**
+     * @return the version the decision was made for, the version name if the document has one
+     */
+    @Nullable
+    private static String getRequiredVersion(SirenManifestEntry appEntry, CheckResult result) {
+        if (result.alertVersion != null) {
+            return result.alertVersion;
+        }
+        if (appEntry.minVersionName != null) {
+            return appEntry.minVersionName;
+        }
+        return appEntry.hasMinVersionCode ? String.valueOf(appEntry.minVersionCode) : null;
+    }
+
+    private void publishState(CheckResult result) {
+        if (result.state != null) {
+            mUpdateState = result.state;
+        }
+    }
+
+    /**
+     * @return the alert that was shown, if any
+     */
+    @MainThread
+    @Nullable
+    private SirenAlertWrapper deliverResult(SirenCheckRequest request, CheckResult result, @Nullable SirenTransferMetrics transfer) {
+        // published before the listener is called, so it sees the new state
+        publishState(result);
+        ISirenListener listener = request.getListener();
+        SirenAlertWrapper alertWrapper = null;
+        long alertShowNanos = 0;
+        if (result.error != null) {
+            if (listener != null) {
+                listener.onError(result.error);
+            }
+        } else if (result.messageWithoutAlert != null) {
+            if (listener != null) {
+                listener.onDetectNewVersionWithoutAlert(result.messageWithoutAlert);
             }
+        } else if (result.alert != null) {
+            alertWrapper = getAlertWrapper(request, result.alert);
+            alertWrapper.show();
+            alertShowNanos = alertWrapper.getShowNanos();
+        }
+        reportMetrics(transfer, result.parseNanos, result.decisionNanos, alertShowNanos, result.decision);
+        return alertWrapper;
+    }
+
+    private void reportMetrics(@Nullable SirenTransferMetrics transfer, long parseNanos, long decisionNanos, SirenCheckDecision decision) {
+        reportMetrics(transfer, parseNanos, decisionNanos, 0, decision);
+    }
+
+    private void reportMetrics(@Nullable SirenTransferMetrics transfer, long parseNanos, long decisionNanos, long alertShowNanos,
+                               SirenCheckDecision decision) {
+        ISirenMetricsListener metricsListener = mMetricsListener;
+        if (metricsListener != null && transfer != null) {
+            metricsListener.onVersionCheckCompleted(new SirenCheckMetrics(transfer, parseNanos, decisionNanos, alertShowNanos, decision));
+        }
+    }
 
-            // If no config found, assume force update = false
-            Boolean forceUpdateEnabled = appJson.has(Constants.JSON_FORCE_ALERT_TYPE) ? appJson.getBoolean(Constants.JSON_FORCE_ALERT_TYPE) : false;
+    @VisibleForTesting
+    SirenAlertWrapper getAlertWrapper(SirenCheckRequest request, SirenAlertViewModel viewModel) {
+        return new SirenAlertWrapper(request.getActivity(), request.getListener(), viewModel, getSirenHelper());
+    }
+
+    protected SirenHelper getSirenHelper() {
+        return SirenHelper.getInstance();
+    }
 
-            //save last successful verification date
+    /**
+     * @return null if the document has no minVersionName
+     */
+    @Nullable
+    private SirenCheckDecision checkVersionName(SirenCheckRequest request, SirenConfig config, SirenManifestEntry appEntry,
+                                                CheckResult result) {
+        if (appEntry.minVersionName == null) {
+            return null;
+        }
+        if (!result.stale) {
             getSirenHelper().setLastVerificationDate(mApplicationContext);
+        }
 
-            @Nullable String updateUrl = null;
+        if (!appEntry.enable) {
+            return SirenCheckDecision.DISABLED;
+        }
 
-            if (!appJson.isNull(Constants.JSON_UPDATE_URL)) {
-                updateUrl = appJson.getString(Constants.JSON_UPDATE_URL);
-            }
+        boolean forceUpdateEnabled = appEntry.force;
+        String minVersionName = appEntry.minVersionName;
+        String currentVersionName = getSirenHelper().getVersionName(mApplicationContext);
 
-            if (getSirenHelper().getVersionCode(mApplicationContext) < minAppVersionCode
-                    && !getSirenHelper().isVersionSkippedByUser(mApplicationContext, String.valueOf(minAppVersionCode))) {
-                showAlert(String.valueOf(minAppVersionCode), updateUrl, forceUpdateEnabled ? SirenAlertType.FORCE : versionCodeUpdateAlertType);
-                return true;
-            }
+        if (getSirenHelper().isEmpty(minVersionName) || getSirenHelper().isEmpty(currentVersionName)) {
+            return SirenCheckDecision.UP_TO_DATE;
+        }
+
+        SirenAlertType alertType = config.alertTypeResolver.forVersionName(SirenVersion.parse(minVersionName), getCurrentVersion(currentVersionName), forceUpdateEnabled);
+        if (alertType == null) {
+            return SirenCheckDecision.UP_TO_DATE;
+        }
+        if (getSirenHelper().isVersionSkippedByUser(mApplicationContext, minVersionName)) {
+            return SirenCheckDecision.SKIPPED;
         }
-        return false;
+        prepareAlert(request, config, result, minVersionName, appEntry.updateUrl, alertType);
+        return SirenCheckDecision.ALERT_SHOWN;
     }
 
-    private void showAlert(String appVersion, @Nullable String updateUrl, SirenAlertType alertType) {
-        if (alertType == SirenAlertType.NONE) {
-            if (mSirenListener != null) {
-                mSirenListener.onDetectNewVersionWithoutAlert(getSirenHelper().getAlertMessage(mApplicationContext, appVersion, forceLanguageLocalization));
-            }
-        } else {
-            getAlertWrapper(alertType, appVersion, updateUrl).show();
+    private SirenVersion getCurrentVersion(String currentVersionName) {
+        SirenVersion currentVersion = mCurrentVersion;
+        if (currentVersion == null || !currentVersion.getName().equals(currentVersionName)) {
+            currentVersion = SirenVersion.parse(currentVersionName);
+            mCurrentVersion = currentVersion;
         }
+        return currentVersion;
     }
 
-    private static class LoadJsonTask extends AsyncTask<String, Void, String> {
+    /**
+     * @return null if the document has no minVersionCode
+     */
+    @Nullable
+    private SirenCheckDecision checkVersionCode(SirenCheckRequest request, SirenConfig config, SirenManifestEntry appEntry,
+                                                CheckResult result) {
+        if (!appEntry.hasMinVersionCode) {
+            return null;
+        }
+        long minAppVersionCode = appEntry.minVersionCode;
+        if (!appEntry.enable) {
+            return SirenCheckDecision.DISABLED;
+        }
 
-        @Override
-        protected String doInBackground(String... params) {
-            HttpURLConnection connection = null;
-            try {
-                TLSSocketFactory TLSSocketFactory = new TLSSocketFactory();
-                URL url = new URL(params[0]);
-                connection = (HttpURLConnection) url.openConnection();
-                connection.setRequestMethod("GET");
-                connection.setUseCaches(false);
-                connection.setAllowUserInteraction(false);
-                connection.setConnectTimeout(10000);
-                connection.setReadTimeout(10000);
-                if ("https".equalsIgnoreCase(url.getProtocol())) {
-                    ((HttpsURLConnection)connection).setSSLSocketFactory(TLSSocketFactory);
-                }
-                connection.connect();
-                int status = connection.getResponseCode();
-
-                switch (status) {
-                    case 200:
-                    case 201:
-                        BufferedReader br = new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF-8"));
-                        StringBuilder sb = new StringBuilder();
-                        String line;
-                        while ((line = br.readLine()) != null) {
-                            if (isCancelled()) {
-                                br.close();
-                                connection.disconnect();
-                                return null;
-                            }
-                            sb.append(line).append('\n');
-                        }
-                        br.close();
-                        return sb.toString();
-                    default: /* ignore unsuccessful results */
-                }
+        //save last successful verification date
+        if (!result.stale) {
+            getSirenHelper().setLastVerificationDate(mApplicationContext);
+        }
 
-            } catch (IOException ex) {
-                ex.printStackTrace();
-                if (Siren.sirenInstance.mSirenListener != null) {
-                    Siren.sirenInstance.mSirenListener.onError(ex);
-                }
+        SirenAlertType alertType = config.alertTypeResolver.forVersionCode(minAppVersionCode, getSirenHelper().getVersionCode(mApplicationContext), appEntry.force);
+        if (alertType == null) {
+            return SirenCheckDecision.UP_TO_DATE;
+        }
+        if (getSirenHelper().isVersionSkippedByUser(mApplicationContext, String.valueOf(minAppVersionCode))) {
+            return SirenCheckDecision.SKIPPED;
+        }
+        prepareAlert(request, config, result, String.valueOf(minAppVersionCode), appEntry.updateUrl, alertType);
+        return SirenCheckDecision.ALERT_SHOWN;
+    }
 
-            } catch (Exception ex) {
-              ex.printStackTrace();
-            } finally {
-                if (connection != null) {
-                    try {
-                        connection.disconnect();
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
-                        if (Siren.sirenInstance.mSirenListener != null) {
-                            Siren.sirenInstance.mSirenListener.onError(ex);
-                        }
-                    }
-                }
+    private void prepareAlert(SirenCheckRequest request, SirenConfig config, CheckResult result, String appVersion,
+                              @Nullable String updateUrl, SirenAlertType alertType) {
+        result.alertType = alertType;
+        result.alertVersion = appVersion;
+        if (alertType == SirenAlertType.NONE) {
+            if (request.getListener() != null) {
+                result.messageWithoutAlert = getSirenHelper().getAlertMessage(mApplicationContext, appVersion, config.languageLocalization);
             }
-            return null;
+        } else {
+            // the texts follow a locale the activity overrides for itself, as the alert is shown over it
+            Activity activity = request.getActivity();
+            result.alert = SirenAlertViewModel.create(activity != null ? activity : mApplicationContext, getSirenHelper(), alertType,
+                    appVersion, updateUrl, config.languageLocalization);
+        }
+    }
+
+    /**
+     * URL downloaded in the background, and how old its cached copy may get before a check refreshes it
+     */
+    private static final class Prefetch {
+        final String url;
+        final long intervalMillis;
+
+        Prefetch(String url, long intervalMillis) {
+            this.url = url;
+            this.intervalMillis = intervalMillis;
         }
+    }
 
-        @Override
-        protected void onPostExecute(String result) {
-            if (Siren.sirenInstance.getSirenHelper().isEmpty(result)) {
-                if (Siren.sirenInstance.mSirenListener != null) {
-                    Siren.sirenInstance.mSirenListener.onError(new NullPointerException());
-                }
-            } else {
-                Siren.sirenInstance.handleVerificationResults(result);
-            }
+    /**
+     * Outcome of a check, prepared on a worker thread and applied on the main thread
+     */
+    private static final class CheckResult {
+        SirenCheckDecision decision;
+        long parseNanos;
+        long decisionNanos;
+        @Nullable Exception error;
+        @Nullable String messageWithoutAlert;
+        @Nullable SirenAlertViewModel alert;
+        @Nullable SirenAlertType alertType;
+        @Nullable String alertVersion;
+        @Nullable SirenUpdateState state;
+
+        /**
+         * Made from a stale or bundled copy of the document
+         */
+        boolean stale;
+
+        /**
+         * @return true if both results lead to the same prompt, or to none
+         */
+        boolean hasSameOutcome(CheckResult other) {
+            return decision == other.decision && alertType == other.alertType
+                    && (alertVersion == null ? other.alertVersion == null : alertVersion.equals(other.alertVersion));
         }
     }
 }
@@ -0,0 +1,89 @@
+package com.eggheadgames.siren;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Maps a detected update to the alert type configured for it. Immutable, so checks on any thread can share it.
+ */
+final class SirenAlertTypeResolver {
+
+    /**
+     * Determines alert type during version code verification
+     */
+    final SirenAlertType versionCodeUpdateAlertType;
+
+    /**
+     * Determines the type of alert that should be shown for major version updates: A.b.c
+     */
+    final SirenAlertType majorUpdateAlertType;
+
+    /**
+     * Determines the type of alert that should be shown for minor version updates: a.B.c
+     */
+    final SirenAlertType minorUpdateAlertType;
+
+    /**
+     Determines the type of alert that should be shown for minor patch updates: a.b.C
+     */
+    final SirenAlertType patchUpdateAlertType;
+
+    /**
+     Determines the type of alert that should be shown for revision updates: a.b.c.D
+     */
+    final SirenAlertType revisionUpdateAlertType;
+
+    /**
+     * Shows {@link SirenAlertType#OPTION} for every kind of update
+     */
+    SirenAlertTypeResolver() {
+        this(SirenAlertType.OPTION, SirenAlertType.OPTION, SirenAlertType.OPTION, SirenAlertType.OPTION, SirenAlertType.OPTION);
+    }
+
+    SirenAlertTypeResolver(SirenAlertType versionCodeUpdateAlertType, SirenAlertType majorUpdateAlertType,
+                           SirenAlertType minorUpdateAlertType, SirenAlertType patchUpdateAlertType,
+                           SirenAlertType revisionUpdateAlertType) {
+        this.versionCodeUpdateAlertType = versionCodeUpdateAlertType;
+        this.majorUpdateAlertType = majorUpdateAlertType;
+        this.minorUpdateAlertType = minorUpdateAlertType;
+        this.patchUpdateAlertType = patchUpdateAlertType;
+        this.revisionUpdateAlertType = revisionUpdateAlertType;
+    }
+
+    /**
+     * @return the alert type, or null if {@code currentVersion} is not older than {@code minVersion}
+     */
+    @Nullable
+    SirenAlertType forVersionName(@NonNull SirenVersion minVersion, @NonNull SirenVersion currentVersion, boolean force) {
+        int updatedSegment = minVersion.firstGreaterSegment(currentVersion);
+        if (updatedSegment < 0) {
+            return null;
+        }
+        return force ? SirenAlertType.FORCE : forSegment(updatedSegment);
+    }
+
+    /**
+     * @return the alert type, or null if {@code currentVersionCode} is not older than {@code minVersionCode}
+     */
+    @Nullable
+    SirenAlertType forVersionCode(long minVersionCode, long currentVersionCode, boolean force) {
+        if (currentVersionCode >= minVersionCode) {
+            return null;
+        }
+        return force ? SirenAlertType.FORCE : versionCodeUpdateAlertType;
+    }
+
+    /**
+     * @param segment index of the most significant version segment that changed
+     */
+    @NonNull
+    SirenAlertType forSegment(int segment) {
+        switch (segment) {
+            case 0: return majorUpdateAlertType;
+            case 1: return minorUpdateAlertType;
+            case 2: return patchUpdateAlertType;
+            case 3: return revisionUpdateAlertType;
+            default: return SirenAlertType.OPTION;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.eggheadgames.siren;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Everything the update dialog shows, resolved off the main thread, so that {@link SirenAlertWrapper#show()} only
+ * inflates the layout and binds these values.
+ */
+final class SirenAlertViewModel {
+
+    final SirenAlertType alertType;
+    final String minAppVersion;
+    @Nullable final String updateUrl;
+    final String title;
+    final String message;
+    final String updateLabel;
+    final String nextTimeLabel;
+    final String skipLabel;
+
+    private SirenAlertViewModel(SirenAlertType alertType, String minAppVersion, @Nullable String updateUrl,
+                                String title, String message, String updateLabel, String nextTimeLabel, String skipLabel) {
+        this.alertType = alertType;
+        this.minAppVersion = minAppVersion;
+        this.updateUrl = updateUrl;
+        this.title = title;
+        this.message = message;
+        this.updateLabel = updateLabel;
+        this.nextTimeLabel = nextTimeLabel;
+        this.skipLabel = skipLabel;
+    }
+
+    /**
+     * @param locale overrides the device language, or null
+     */
+    @NonNull
+    @WorkerThread
+    static SirenAlertViewModel create(Context context, SirenHelper sirenHelper, SirenAlertType alertType, String minAppVersion,
+                                      @Nullable String updateUrl, @Nullable SirenSupportedLocales locale) {
+        return new SirenAlertViewModel(alertType, minAppVersion, updateUrl,
+                sirenHelper.getLocalizedString(context, R.string.update_available, locale),
+                sirenHelper.getAlertMessage(context, minAppVersion, locale),
+                sirenHelper.getLocalizedString(context, R.string.siren_update, locale),
+                sirenHelper.getLocalizedString(context, R.string.next_time, locale),
+                sirenHelper.getLocalizedString(context, R.string.skip_this_version, locale));
+    }
+
+    /**
+     * @return true if the update button opens the store
+     */
+    boolean opensStore() {
+        return alertType == SirenAlertType.FORCE || alertType == SirenAlertType.OPTION || alertType == SirenAlertType.SKIP;
+    }
+
+    boolean showsNextTime() {
+        return alertType == SirenAlertType.OPTION || alertType == SirenAlertType.SKIP;
+    }
+
+    boolean showsSkip() {
+        return alertType == SirenAlertType.SKIP;
+    }
+}
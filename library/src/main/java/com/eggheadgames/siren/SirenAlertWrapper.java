@@ -3,7 +3,6 @@ package com.eggheadgames.siren;
 import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.app.AlertDialog;
-import android.os.Build;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.Button;
@@ -22,6 +21,9 @@ public class SirenAlertWrapper {
     @Nullable private final String mUpdateUrl;
     private final SirenSupportedLocales mLocale;
     private final SirenHelper mSirenHelper;
+    @Nullable private SirenAlertViewModel mViewModel;
+    @Nullable private AlertDialog mDialog;
+    private long mShowNanos;
 
     public SirenAlertWrapper(Activity activity, ISirenListener sirenListener, SirenAlertType sirenAlertType,
                              String minAppVersion, @Nullable String updateUrl, SirenSupportedLocales locale, SirenHelper sirenHelper) {
@@ -34,29 +36,64 @@ public class SirenAlertWrapper {
         this.mActivityRef = new WeakReference<>(activity);
     }
 
+    /**
+     * @param viewModel texts and buttons of the dialog, prepared on a background thread
+     */
+    SirenAlertWrapper(Activity activity, ISirenListener sirenListener, SirenAlertViewModel viewModel, SirenHelper sirenHelper) {
+        this(activity, sirenListener, viewModel.alertType, viewModel.minAppVersion, viewModel.updateUrl, null, sirenHelper);
+        this.mViewModel = viewModel;
+    }
+
 
     public void show() {
+        long start = System.nanoTime();
         Activity activity = mActivityRef.get();
         if (activity == null) {
             if (mSirenListener != null) {
                 mSirenListener.onError(new NullPointerException("activity reference is null"));
             }
         } else if (!activity.isDestroyed()) {
+            SirenAlertViewModel viewModel = mViewModel;
+            if (viewModel == null) {
+                viewModel = SirenAlertViewModel.create(activity, mSirenHelper, mSirenAlertType, mMinAppVersion, mUpdateUrl, mLocale);
+                mViewModel = viewModel;
+            }
 
-            AlertDialog alertDialog = initDialog(activity);
-            setupDialog(alertDialog, this.mUpdateUrl);
+            AlertDialog alertDialog = initDialog(activity, viewModel);
+            setupDialog(alertDialog, viewModel);
+            mDialog = alertDialog;
 
             if (mSirenListener != null) {
                 mSirenListener.onShowUpdateDialog();
             }
         }
+        mShowNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Closes the dialog opened by {@link #show()} if the user has not closed it yet, e.g. when a newer result replaces it
+     */
+    void dismiss() {
+        AlertDialog dialog = mDialog;
+        mDialog = null;
+        Activity activity = mActivityRef.get();
+        if (dialog != null && dialog.isShowing() && activity != null && !activity.isDestroyed()) {
+            dialog.dismiss();
+        }
+    }
+
+    /**
+     * @return main thread time taken by the last {@link #show()}
+     */
+    long getShowNanos() {
+        return mShowNanos;
     }
 
     @SuppressLint("InflateParams")
-    private AlertDialog initDialog(Activity activity) {
+    private AlertDialog initDialog(Activity activity, SirenAlertViewModel viewModel) {
         AlertDialog.Builder alertBuilder = new AlertDialog.Builder(activity);
 
-        alertBuilder.setTitle(mSirenHelper.getLocalizedString(mActivityRef.get(), R.string.update_available, mLocale));
+        alertBuilder.setTitle(viewModel.title);
         alertBuilder.setCancelable(false);
 
         View dialogView = LayoutInflater.from(activity).inflate(R.layout.siren_dialog, null);
@@ -68,21 +105,19 @@ public class SirenAlertWrapper {
         return alertDialog;
     }
 
-    private void setupDialog(final AlertDialog dialog, @Nullable String updateUrl) {
+    private void setupDialog(final AlertDialog dialog, final SirenAlertViewModel viewModel) {
         TextView message = (TextView) dialog.findViewById(R.id.tvSirenAlertMessage);
         Button update = (Button) dialog.findViewById(R.id.btnSirenUpdate);
         Button nextTime = (Button) dialog.findViewById(R.id.btnSirenNextTime);
         final Button skip = (Button) dialog.findViewById(R.id.btnSirenSkip);
 
-        update.setText(mSirenHelper.getLocalizedString(mActivityRef.get(), R.string.siren_update, mLocale));
-        nextTime.setText(mSirenHelper.getLocalizedString(mActivityRef.get(), R.string.next_time, mLocale));
-        skip.setText(mSirenHelper.getLocalizedString(mActivityRef.get(), R.string.skip_this_version, mLocale));
+        update.setText(viewModel.updateLabel);
+        nextTime.setText(viewModel.nextTimeLabel);
+        skip.setText(viewModel.skipLabel);
 
-        message.setText(mSirenHelper.getAlertMessage(mActivityRef.get(), mMinAppVersion, mLocale));
+        message.setText(viewModel.message);
 
-        if (mSirenAlertType == SirenAlertType.FORCE
-                || mSirenAlertType == SirenAlertType.OPTION
-                || mSirenAlertType == SirenAlertType.SKIP) {
+        if (viewModel.opensStore()) {
             update.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
@@ -90,13 +125,12 @@ public class SirenAlertWrapper {
                         mSirenListener.onLaunchGooglePlay();
                     }
                     dialog.dismiss();
-                    mSirenHelper.openGooglePlay(mActivityRef.get(), updateUrl);
+                    mSirenHelper.openGooglePlay(mActivityRef.get(), viewModel.updateUrl);
                 }
             });
         }
 
-        if (mSirenAlertType == SirenAlertType.OPTION
-                || mSirenAlertType == SirenAlertType.SKIP) {
+        if (viewModel.showsNextTime()) {
             nextTime.setVisibility(View.VISIBLE);
             nextTime.setOnClickListener(new View.OnClickListener() {
                 @Override
@@ -108,7 +142,7 @@ public class SirenAlertWrapper {
                 }
             });
         }
-        if (mSirenAlertType == SirenAlertType.SKIP) {
+        if (viewModel.showsSkip()) {
             skip.setVisibility(View.VISIBLE);
             skip.setOnClickListener(new View.OnClickListener() {
                 @Override
@@ -117,7 +151,7 @@ public class SirenAlertWrapper {
                         mSirenListener.onSkipVersion();
                     }
 
-                    mSirenHelper.setVersionSkippedByUser(mActivityRef.get(), mMinAppVersion);
+                    mSirenHelper.setVersionSkippedByUser(mActivityRef.get(), viewModel.minAppVersion);
                     dialog.dismiss();
                 }
             });
@@ -0,0 +1,54 @@
+package com.eggheadgames.siren;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.util.Locale;
+
+/**
+ * Snapshot of the installed package, read once per process.
+ * The package manager lookup is a binder call to the system, and the values cannot change while the process lives.
+ * The API level and country that {@link SirenRuleIndex rules} target are kept with it.
+ */
+final class SirenAppInfo {
+
+    final String packageName;
+    final long versionCode;
+    final String versionName;
+    final int sdkInt;
+
+    /**
+     * Country of the default locale when the process started, empty if it has none
+     */
+    final String country;
+
+    SirenAppInfo(String packageName, long versionCode, String versionName, int sdkInt, String country) {
+        this.packageName = packageName;
+        this.versionCode = versionCode;
+        this.versionName = versionName;
+        this.sdkInt = sdkInt;
+        this.country = country;
+    }
+
+    @NonNull
+    @WorkerThread
+    @SuppressWarnings("deprecation")
+    static SirenAppInfo load(Context context) {
+        String packageName = context.getPackageName();
+        String country = Locale.getDefault().getCountry();
+        try {
+            PackageInfo packageInfo = context.getPackageManager().getPackageInfo(packageName, 0);
+            long versionCode = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P ? packageInfo.getLongVersionCode() : packageInfo.versionCode;
+            return new SirenAppInfo(packageName, versionCode, packageInfo.versionName == null ? "" : packageInfo.versionName,
+                    Build.VERSION.SDK_INT, country);
+        } catch (PackageManager.NameNotFoundException e) {
+            e.printStackTrace();
+            return new SirenAppInfo(packageName, 0, "", Build.VERSION.SDK_INT, country);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.eggheadgames.siren;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers failed downloads across checks and app launches, so that a server having an incident is not asked again
+ * on every check.
+ * <p>
+ * Every consecutive failure doubles the wait before the next download, from 30 seconds up to 6 hours; only a random
+ * part of the wait is used, so clients that failed together don't come back together. A longer Retry-After sent by the
+ * server, typically with 429 or 503, is honored. After {@value #CIRCUIT_BREAKER_THRESHOLD} consecutive failures the
+ * circuit opens: nothing is downloaded for at least an hour, then a single download probes the server and reopens the
+ * circuit if it fails too.
+ */
+class SirenBackoff {
+
+    /**
+     * Persists the backoff state; implemented by {@link SirenStateStore}
+     */
+    interface Store {
+        int getConsecutiveFailures();
+
+        long getNextAttemptAt();
+
+        void setBackoff(int consecutiveFailures, long nextAttemptAt);
+    }
+
+    static final long BASE_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    static final long MAX_DELAY_MILLIS = TimeUnit.HOURS.toMillis(6);
+    static final int CIRCUIT_BREAKER_THRESHOLD = 5;
+    static final long CIRCUIT_COOLDOWN_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Longer Retry-After values are capped, and a stored wait longer than this means the clock was set back
+     */
+    static final long MAX_RETRY_AFTER_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final Store mStore;
+    private final Random mRandom;
+
+    SirenBackoff(Store store, Random random) {
+        this.mStore = store;
+        this.mRandom = random;
+    }
+
+    @WorkerThread
+    synchronized boolean allowsAttempt(long now) {
+        long nextAttemptAt = mStore.getNextAttemptAt();
+        return now >= nextAttemptAt || nextAttemptAt - now > MAX_RETRY_AFTER_MILLIS;
+    }
+
+    @WorkerThread
+    synchronized void onSuccess() {
+        if (mStore.getConsecutiveFailures() != 0 || mStore.getNextAttemptAt() != 0) {
+            mStore.setBackoff(0, 0);
+        }
+    }
+
+    /**
+     * @param retryAfterMillis the wait the server asked for, or 0
+     */
+    @WorkerThread
+    synchronized void onFailure(long now, long retryAfterMillis) {
+        int failures = mStore.getConsecutiveFailures() + 1;
+        long exponential = BASE_DELAY_MILLIS << Math.min(failures - 1, 20);
+        long capped = Math.min(exponential, MAX_DELAY_MILLIS);
+        long delay = capped / 2 + (long) (mRandom.nextDouble() * (capped / 2));
+        if (failures >= CIRCUIT_BREAKER_THRESHOLD) {
+            delay = Math.max(delay, CIRCUIT_COOLDOWN_MILLIS + (long) (mRandom.nextDouble() * (CIRCUIT_COOLDOWN_MILLIS / 4)));
+        }
+        delay = Math.max(delay, Math.min(retryAfterMillis, MAX_RETRY_AFTER_MILLIS));
+        mStore.setBackoff(failures, now + delay);
+    }
+
+    /**
+     * Copies the current state into the metrics reported for a check
+     */
+    @WorkerThread
+    synchronized void describe(SirenTransferMetrics transfer) {
+        transfer.consecutiveFailures = mStore.getConsecutiveFailures();
+        transfer.nextAttemptAtMillis = mStore.getNextAttemptAt();
+        transfer.circuitOpen = transfer.consecutiveFailures >= CIRCUIT_BREAKER_THRESHOLD;
+    }
+
+    /**
+     * @param value delay in seconds or an HTTP date
+     * @return the wait in milliseconds, or 0 if there is none
+     */
+    static long parseRetryAfter(@Nullable String value, long now) {
+        if (value == null) {
+            return 0;
+        }
+        String trimmed = value.trim();
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(trimmed)));
+        } catch (NumberFormatException e) {
+            // not a number of seconds, try a date
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return Math.max(0, format.parse(trimmed).getTime() - now);
+        } catch (ParseException e) {
+            return 0;
+        }
+    }
+}
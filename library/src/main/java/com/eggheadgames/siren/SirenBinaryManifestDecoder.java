@@ -0,0 +1,175 @@
+package com.eggheadgames.siren;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONException;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reader for the compact binary encoding of the app description document
+ * (content type {@value SirenManifestDocument#BINARY_CONTENT_TYPE}).
+ * <p>
+ * All integers are big-endian and strings are UTF-8:
+ * <pre>
+ * magic      4 bytes  "SIRN"
+ * version    u8       1
+ * count      u16      number of package entries
+ * entries:
+ *   name     u16 length + bytes   package name
+ *   fields   u16 length + bytes   sequence of fields
+ * field:
+ *   tag      u8       1 minVersionName, 2 minVersionCode, 3 enable, 4 force, 5 updateUrl,
+ *                     6 minCheckIntervalMinutes, 7 checkSampleRate, 8 rules
+ *   value    u16 length + bytes   string, 8 byte signed integer, 8 byte IEEE 754 double (checkSampleRate)
+ *                                 or 1 byte boolean; rules are the same JSON array as in the JSON encoding
+ * </pre>
+ * Entries of other packages and fields with unknown tags are skipped by their length, so the matching entry is
+ * decoded straight into its fields.
+ */
+final class SirenBinaryManifestDecoder {
+
+    static final byte[] MAGIC = {'S', 'I', 'R', 'N'};
+    static final int VERSION = 1;
+
+    static final int TAG_MIN_VERSION_NAME = 1;
+    static final int TAG_MIN_VERSION_CODE = 2;
+    static final int TAG_ENABLE = 3;
+    static final int TAG_FORCE = 4;
+    static final int TAG_UPDATE_URL = 5;
+    static final int TAG_MIN_CHECK_INTERVAL_MINUTES = 6;
+    static final int TAG_CHECK_SAMPLE_RATE = 7;
+    static final int TAG_RULES = 8;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final byte[] mBytes;
+    private int mPos;
+
+    private SirenBinaryManifestDecoder(byte[] bytes) {
+        this.mBytes = bytes;
+    }
+
+    /**
+     * @return the entry of {@code packageName}
+     * @throws JSONException if the document is malformed or the package is not described;
+     *                       the same exception the JSON encoding reports
+     */
+    @NonNull
+    static SirenManifestEntry decode(byte[] bytes, String packageName) throws JSONException {
+        return new SirenBinaryManifestDecoder(bytes).readDocument(packageName.getBytes(UTF_8));
+    }
+
+    private SirenManifestEntry readDocument(byte[] packageName) throws JSONException {
+        require(MAGIC.length + 1);
+        for (byte b : MAGIC) {
+            if (mBytes[mPos++] != b) {
+                throw new JSONException("Not a binary app description document");
+            }
+        }
+        int version = mBytes[mPos++] & 0xFF;
+        if (version != VERSION) {
+            throw new JSONException("Unsupported binary app description version " + version);
+        }
+        int count = readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            int nameLength = readUnsignedShort();
+            require(nameLength);
+            boolean matches = regionEquals(mPos, nameLength, packageName);
+            mPos += nameLength;
+            int fieldsLength = readUnsignedShort();
+            require(fieldsLength);
+            if (matches) {
+                return readEntry(mPos + fieldsLength);
+            }
+            mPos += fieldsLength;
+        }
+        throw new JSONException("field not found");
+    }
+
+    private SirenManifestEntry readEntry(int end) throws JSONException {
+        SirenManifestEntry entry = new SirenManifestEntry();
+        while (mPos < end) {
+            require(1);
+            int tag = mBytes[mPos++] & 0xFF;
+            int length = readUnsignedShort();
+            if (mPos + length > end) {
+                throw new JSONException("Truncated field " + tag);
+            }
+            switch (tag) {
+                case TAG_MIN_VERSION_NAME:
+                    entry.minVersionName = new String(mBytes, mPos, length, UTF_8);
+                    break;
+                case TAG_MIN_VERSION_CODE:
+                    entry.minVersionCode = readLong(length);
+                    entry.hasMinVersionCode = true;
+                    break;
+                case TAG_ENABLE:
+                    entry.enable = readBoolean(length);
+                    break;
+                case TAG_FORCE:
+                    entry.force = readBoolean(length);
+                    break;
+                case TAG_UPDATE_URL:
+                    entry.updateUrl = new String(mBytes, mPos, length, UTF_8);
+                    break;
+                case TAG_MIN_CHECK_INTERVAL_MINUTES:
+                    entry.minCheckIntervalMillis = TimeUnit.MINUTES.toMillis(readLong(length));
+                    break;
+                case TAG_CHECK_SAMPLE_RATE:
+                    entry.checkSampleRate = Double.longBitsToDouble(readLong(length));
+                    break;
+                case TAG_RULES:
+                    entry.rules = SirenRuleIndex.forSource(new String(mBytes, mPos, length, UTF_8));
+                    break;
+                default: /* fields added by later versions of the format */
+            }
+            mPos += length;
+        }
+        return entry;
+    }
+
+    private long readLong(int length) throws JSONException {
+        if (length != 8) {
+            throw new JSONException("Expected 8 bytes for a number field, got " + length);
+        }
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (mBytes[mPos + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private boolean readBoolean(int length) throws JSONException {
+        if (length != 1) {
+            throw new JSONException("Expected 1 byte for a boolean field, got " + length);
+        }
+        return mBytes[mPos] != 0;
+    }
+
+    private int readUnsignedShort() throws JSONException {
+        require(2);
+        int value = ((mBytes[mPos] & 0xFF) << 8) | (mBytes[mPos + 1] & 0xFF);
+        mPos += 2;
+        return value;
+    }
+
+    private boolean regionEquals(int offset, int length, byte[] other) {
+        if (length != other.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (mBytes[offset + i] != other[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void require(int length) throws JSONException {
+        if (mPos + length > mBytes.length) {
+            throw new JSONException("Truncated binary app description document at " + mPos);
+        }
+    }
+}
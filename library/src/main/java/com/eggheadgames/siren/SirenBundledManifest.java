@@ -0,0 +1,102 @@
+package com.eggheadgames.siren;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Copy of the app description document shipped in the app's assets, used for the first decisions when nothing was
+ * downloaded yet. JSON and binary documents are told apart by their content.
+ * <p>
+ * The snapshot is as old as the installed APK: its age is counted from the package's last update, so it stops being
+ * used once it is older than the stale limit the app allows.
+ */
+class SirenBundledManifest {
+
+    private final Context mContext;
+    private final String mAssetPath;
+    private boolean mLoaded;
+    @Nullable private SirenManifestCache.Entry mEntry;
+
+    /**
+     * @param context the application context
+     */
+    SirenBundledManifest(Context context, String assetPath) {
+        this.mContext = context;
+        this.mAssetPath = assetPath;
+    }
+
+    /**
+     * @return the snapshot, read once per process, or null if the asset is missing or unreadable
+     */
+    @Nullable
+    @WorkerThread
+    synchronized SirenManifestCache.Entry get() {
+        if (!mLoaded) {
+            mLoaded = true;
+            mEntry = load();
+        }
+        return mEntry;
+    }
+
+    @Nullable
+    private SirenManifestCache.Entry load() {
+        InputStream in = null;
+        try {
+            in = openAsset(mAssetPath);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            byte[] body = out.toByteArray();
+            return new SirenManifestCache.Entry(new SirenManifestDocument(body, isBinary(body)), null, null, getPackageUpdateTime());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // nothing left to read
+                }
+            }
+        }
+    }
+
+    @VisibleForTesting
+    InputStream openAsset(String assetPath) throws IOException {
+        return mContext.getAssets().open(assetPath);
+    }
+
+    @VisibleForTesting
+    long getPackageUpdateTime() {
+        try {
+            return mContext.getPackageManager().getPackageInfo(mContext.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    private static boolean isBinary(byte[] body) {
+        if (body.length < SirenBinaryManifestDecoder.MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < SirenBinaryManifestDecoder.MAGIC.length; i++) {
+            if (body[i] != SirenBinaryManifestDecoder.MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,13 @@
+package com.eggheadgames.siren;
+
+/**
+ * Outcome of a version check, as reported to {@link ISirenMetricsListener}.
+ */
+public enum SirenCheckDecision {
+    UP_TO_DATE,             //The installed version satisfies the app description document
+    ALERT_SHOWN,            //An update was detected and the alert was shown, or onDetectNewVersionWithoutAlert() was called for SirenAlertType.NONE
+    SKIPPED,                //An update was detected, but the user chose to skip that version
+    DISABLED,               //The app description document disabled the check with "enable": false
+    FAILED,                 //The document could not be downloaded or parsed; onError() was called
+    BACKED_OFF              //Recent checks failed, so the server was not asked until SirenCheckMetrics.getNextAttemptAtMillis()
+}
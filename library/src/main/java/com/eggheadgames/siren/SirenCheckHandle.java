@@ -0,0 +1,88 @@
+package com.eggheadgames.siren;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Handle of a version check started by {@link Siren#checkVersion}.
+ * Cancelling it stops the result from being delivered to this caller; the download itself is aborted
+ * once no other caller is waiting for the same app description document.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class SirenCheckHandle {
+
+    @Nullable final SirenFetcher.Fetch mFetch;
+    @Nullable final SirenFetcher.Callback mCallback;
+    private volatile boolean mCancelled;
+    private volatile boolean mDone;
+
+    /**
+     * Handle of the check once a {@link #deferred()} one has decided to start it
+     */
+    @Nullable private SirenCheckHandle mStarted;
+
+    SirenCheckHandle(@Nullable SirenFetcher.Fetch fetch, @Nullable SirenFetcher.Callback callback) {
+        this.mFetch = fetch;
+        this.mCallback = callback;
+    }
+
+    /**
+     * @return a handle for a check that did not need a download
+     */
+    static SirenCheckHandle completed() {
+        SirenCheckHandle handle = new SirenCheckHandle(null, null);
+        handle.mDone = true;
+        return handle;
+    }
+
+    /**
+     * @return a handle for a check that is decided on a worker thread, see {@link #attach}
+     */
+    static SirenCheckHandle deferred() {
+        return new SirenCheckHandle(null, null);
+    }
+
+    /**
+     * Hands the check over to the handle it was started with; a cancel that came first is passed on
+     */
+    void attach(SirenCheckHandle started) {
+        synchronized (this) {
+            mStarted = started;
+            if (!mCancelled) {
+                return;
+            }
+        }
+        started.cancel();
+    }
+
+    public void cancel() {
+        SirenCheckHandle started;
+        synchronized (this) {
+            if (mDone || mCancelled) {
+                return;
+            }
+            mCancelled = true;
+            started = mStarted;
+        }
+        if (mFetch != null) {
+            mFetch.onHandleCancelled(this);
+        }
+        if (started != null) {
+            started.cancel();
+        }
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * @return true once the result of the check has been delivered
+     */
+    public synchronized boolean isDone() {
+        return mDone || mStarted != null && mStarted.isDone();
+    }
+
+    void markDone() {
+        mDone = true;
+    }
+}
@@ -0,0 +1,178 @@
+package com.eggheadgames.siren;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Timings and outcome of a single version check. Durations are in nanoseconds and are 0 for phases that did not run.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class SirenCheckMetrics {
+
+    /**
+     * Where the app description document came from
+     */
+    public enum Source {
+        NETWORK,                //Downloaded from the server
+        NOT_MODIFIED,           //The server answered 304 and the cached copy was used
+        CACHE,                  //The cached copy was used without asking the server (see Siren.enablePrefetch() and Siren.setMaxStaleAge())
+        BUNDLED,                //Nothing was cached yet and the snapshot bundled with the app was used (see Siren.setBundledManifest())
+        SHARED,                 //Another process of the app had just downloaded the document (see Siren.setMultiProcess())
+        NONE                    //The server was not asked because recent checks failed (see SirenCheckDecision.BACKED_OFF)
+    }
+
+    private final SirenTransferMetrics mTransfer;
+    private final long mParseNanos;
+    private final long mDecisionNanos;
+    private final long mAlertShowNanos;
+    private final SirenCheckDecision mDecision;
+
+    SirenCheckMetrics(SirenTransferMetrics transfer, long parseNanos, long decisionNanos, long alertShowNanos, SirenCheckDecision decision) {
+        this.mTransfer = transfer;
+        this.mParseNanos = parseNanos;
+        this.mDecisionNanos = decisionNanos;
+        this.mAlertShowNanos = alertShowNanos;
+        this.mDecision = decision;
+    }
+
+    /**
+     * @return the URL the document came from; the mirror that answered first when checking mirrors
+     */
+    @NonNull
+    public String getUrl() {
+        return mTransfer.url;
+    }
+
+    @NonNull
+    public Source getSource() {
+        return mTransfer.source;
+    }
+
+    /**
+     * @return the HTTP status of the response, or 0 if the server was not asked or did not answer
+     */
+    public int getHttpStatus() {
+        return mTransfer.httpStatus;
+    }
+
+    /**
+     * @return time to resolve the host and open the TCP connection; includes the TLS handshake when the platform
+     * does not open the secure socket on top of a connected one
+     */
+    public long getConnectNanos() {
+        return mTransfer.connectNanos;
+    }
+
+    /**
+     * @return time of the TLS handshake; 0 when an open connection to the server was reused
+     */
+    public long getTlsHandshakeNanos() {
+        return mTransfer.tlsNanos;
+    }
+
+    /**
+     * @return true if the TLS handshake resumed a session negotiated by an earlier check
+     */
+    public boolean isTlsSessionResumed() {
+        return mTransfer.tlsSessionResumed;
+    }
+
+    /**
+     * @return time from the connection being established to the response headers being received
+     */
+    public long getFirstByteNanos() {
+        return mTransfer.firstByteNanos;
+    }
+
+    public long getDownloadNanos() {
+        return mTransfer.downloadNanos;
+    }
+
+    /**
+     * @return size of the response body read from the network
+     */
+    public long getBytesTransferred() {
+        return mTransfer.bytesTransferred;
+    }
+
+    /**
+     * @return true if the primary URL was too slow or failed, and a mirror was asked as well
+     */
+    public boolean isHedged() {
+        return mTransfer.hedged;
+    }
+
+    /**
+     * @return true if the decision was made from an older copy of the document while the server is asked in the
+     * background; the revalidated result is reported as another check
+     */
+    public boolean isStale() {
+        return mTransfer.stale;
+    }
+
+    /**
+     * @return downloads that failed in a row, counting this check's
+     */
+    public int getConsecutiveFailures() {
+        return mTransfer.consecutiveFailures;
+    }
+
+    /**
+     * @return wall clock time ({@link System#currentTimeMillis()}) before which checks don't ask the server,
+     * or 0 if the last download succeeded
+     */
+    public long getNextAttemptAtMillis() {
+        return mTransfer.nextAttemptAtMillis;
+    }
+
+    /**
+     * @return true if so many downloads failed in a row that checks stay away from the server for a cooldown window
+     */
+    public boolean isCircuitOpen() {
+        return mTransfer.circuitOpen;
+    }
+
+    public long getParseNanos() {
+        return mParseNanos;
+    }
+
+    /**
+     * @return time spent comparing versions and preparing the alert texts, off the main thread
+     */
+    public long getDecisionNanos() {
+        return mDecisionNanos;
+    }
+
+    /**
+     * @return main thread time spent inflating and showing the alert dialog
+     */
+    public long getAlertShowNanos() {
+        return mAlertShowNanos;
+    }
+
+    @NonNull
+    public SirenCheckDecision getDecision() {
+        return mDecision;
+    }
+
+    @Override
+    public String toString() {
+        return "SirenCheckMetrics{url=" + getUrl()
+                + ", source=" + getSource()
+                + ", httpStatus=" + getHttpStatus()
+                + ", connectNanos=" + getConnectNanos()
+                + ", tlsHandshakeNanos=" + getTlsHandshakeNanos()
+                + ", tlsSessionResumed=" + isTlsSessionResumed()
+                + ", firstByteNanos=" + getFirstByteNanos()
+                + ", downloadNanos=" + getDownloadNanos()
+                + ", bytesTransferred=" + getBytesTransferred()
+                + ", hedged=" + isHedged()
+                + ", stale=" + isStale()
+                + ", consecutiveFailures=" + getConsecutiveFailures()
+                + ", nextAttemptAtMillis=" + getNextAttemptAtMillis()
+                + ", circuitOpen=" + isCircuitOpen()
+                + ", parseNanos=" + mParseNanos
+                + ", decisionNanos=" + mDecisionNanos
+                + ", alertShowNanos=" + mAlertShowNanos
+                + ", decision=" + mDecision + '}';
+    }
+}
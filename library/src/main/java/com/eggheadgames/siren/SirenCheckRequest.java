@@ -0,0 +1,133 @@
+package com.eggheadgames.siren;
+
+import android.app.Activity;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One version check, passed to {@link Siren#checkVersion(SirenCheckRequest)}. It carries its own listener and
+ * activity, so checks started from different threads or screens never see each other's callbacks.
+ * Instances are immutable.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class SirenCheckRequest {
+
+    private final WeakReference<Activity> mActivityRef;
+    private final List<String> mAppDescriptionUrls;
+    private final long mIntervalMillis;
+    @Nullable private final ISirenListener mListener;
+    @Nullable private final SirenConfig mConfig;
+
+    private SirenCheckRequest(Builder builder) {
+        this.mActivityRef = new WeakReference<>(builder.mActivity);
+        this.mAppDescriptionUrls = builder.mAppDescriptionUrls;
+        this.mIntervalMillis = builder.mIntervalMillis;
+        this.mListener = builder.mListener;
+        this.mConfig = builder.mConfig;
+    }
+
+    /**
+     * @return null once the activity was garbage collected
+     */
+    @Nullable
+    public Activity getActivity() {
+        return mActivityRef.get();
+    }
+
+    /**
+     * @return the primary URL followed by its mirrors
+     */
+    @NonNull
+    public List<String> getAppDescriptionUrls() {
+        return mAppDescriptionUrls;
+    }
+
+    public long getIntervalMillis() {
+        return mIntervalMillis;
+    }
+
+    @Nullable
+    public ISirenListener getListener() {
+        return mListener;
+    }
+
+    /**
+     * @return null to use the configuration of {@link Siren} when the check starts
+     */
+    @Nullable
+    public SirenConfig getConfig() {
+        return mConfig;
+    }
+
+    /**
+     * Not thread safe; build the request on one thread and share the result.
+     */
+    public static final class Builder {
+        private final List<String> mAppDescriptionUrls;
+        @Nullable private Activity mActivity;
+        private long mIntervalMillis;
+        @Nullable private ISirenListener mListener;
+        @Nullable private SirenConfig mConfig;
+
+        public Builder(String appDescriptionUrl) {
+            this(Collections.singletonList(appDescriptionUrl));
+        }
+
+        /**
+         * @param appDescriptionUrls the primary URL followed by its mirrors, see
+         *                           {@link Siren#checkVersion(Activity, SirenVersionCheckType, List)}
+         */
+        public Builder(List<String> appDescriptionUrls) {
+            mAppDescriptionUrls = Collections.unmodifiableList(new ArrayList<>(appDescriptionUrls));
+        }
+
+        /**
+         * @param activity shows the alert; only weakly referenced
+         */
+        public Builder setActivity(@Nullable Activity activity) {
+            mActivity = activity;
+            return this;
+        }
+
+        public Builder setCheckType(SirenVersionCheckType versionCheckType) {
+            mIntervalMillis = versionCheckType.getIntervalMillis();
+            return this;
+        }
+
+        /**
+         * @param interval 0 to check every time, the default; see {@link Siren#checkVersion(Activity, long, TimeUnit, String)}
+         */
+        public Builder setInterval(long interval, TimeUnit unit) {
+            mIntervalMillis = unit.toMillis(interval);
+            return this;
+        }
+
+        /**
+         * @param listener receives the callbacks of this check only, null for none
+         */
+        public Builder setListener(@Nullable ISirenListener listener) {
+            mListener = listener;
+            return this;
+        }
+
+        /**
+         * @param config replaces the configuration of {@link Siren} for this check, null to use it
+         */
+        public Builder setConfig(@Nullable SirenConfig config) {
+            mConfig = config;
+            return this;
+        }
+
+        @NonNull
+        public SirenCheckRequest build() {
+            return new SirenCheckRequest(this);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.eggheadgames.siren;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when periodic checks are due.
+ * <p>
+ * Time is cut into periods of the check interval, shifted by an offset that is fixed for each install, and one check
+ * is due per period. Installs are spread evenly across the interval instead of all becoming due at local midnight.
+ * <p>
+ * With a sample rate below 1, only that fraction of installs checks in a period. Which installs check changes from
+ * one period to the next, so every install still sees the document, and learns about a new rate, now and then.
+ */
+final class SirenCheckSchedule {
+
+    /**
+     * Server values are limited, so that a mistake in the document cannot stop checks for good
+     */
+    static final long MAX_MIN_CHECK_INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(30);
+    static final double MIN_SAMPLE_RATE = 0.01;
+
+    private SirenCheckSchedule() {
+        // no instances
+    }
+
+    /**
+     * @param installSeed random number chosen once per install
+     * @return the install's offset within the interval
+     */
+    static long installOffset(long installSeed, long intervalMillis) {
+        if (intervalMillis <= 0) {
+            return 0;
+        }
+        return (installSeed % intervalMillis + intervalMillis) % intervalMillis;
+    }
+
+    /**
+     * @param lastCheckMillis time of the last successful check, or 0 if there was none
+     * @return true if no check was made in the current period; also when the clock was set back before the last check
+     */
+    static boolean isDue(long intervalMillis, long offsetMillis, long lastCheckMillis, long nowMillis) {
+        if (intervalMillis <= 0 || lastCheckMillis <= 0 || nowMillis < lastCheckMillis) {
+            return true;
+        }
+        return period(nowMillis, intervalMillis, offsetMillis) > period(lastCheckMillis, intervalMillis, offsetMillis);
+    }
+
+    /**
+     * @return true if the install checks in the period that contains {@code nowMillis}
+     */
+    static boolean isSampled(long installSeed, long intervalMillis, long offsetMillis, long nowMillis, double sampleRate) {
+        if (sampleRate >= 1) {
+            return true;
+        }
+        long period = intervalMillis <= 0 ? nowMillis : period(nowMillis, intervalMillis, offsetMillis);
+        // SplitMix64 finalizer: turns seed and period into an evenly distributed fraction
+        long z = installSeed + period * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return (z >>> 11) * 0x1.0p-53 < sampleRate;
+    }
+
+    static long clampMinCheckInterval(long minCheckIntervalMillis) {
+        return Math.max(0, Math.min(minCheckIntervalMillis, MAX_MIN_CHECK_INTERVAL_MILLIS));
+    }
+
+    static double clampSampleRate(double sampleRate) {
+        if (Double.isNaN(sampleRate)) {
+            return 1;
+        }
+        return Math.max(MIN_SAMPLE_RATE, Math.min(sampleRate, 1));
+    }
+
+    private static long period(long timeMillis, long intervalMillis, long offsetMillis) {
+        return (timeMillis - offsetMillis) / intervalMillis;
+    }
+}
@@ -0,0 +1,132 @@
+package com.eggheadgames.siren;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings a version check decides and prompts with. Instances are immutable: a check takes the configuration once
+ * when it starts and uses it to the end, so changing it from another thread never mixes old and new settings.
+ * <p>
+ * Set it with {@link Siren#setConfig}, or for a single check with {@link SirenCheckRequest.Builder#setConfig}.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class SirenConfig {
+
+    final SirenAlertTypeResolver alertTypeResolver;
+    @Nullable final SirenSupportedLocales languageLocalization;
+    final long hedgeDelayMillis;
+    final long maxStaleAgeMillis;
+
+    private SirenConfig(Builder builder) {
+        this.alertTypeResolver = new SirenAlertTypeResolver(builder.mVersionCodeUpdateAlertType, builder.mMajorUpdateAlertType,
+                builder.mMinorUpdateAlertType, builder.mPatchUpdateAlertType, builder.mRevisionUpdateAlertType);
+        this.languageLocalization = builder.mLanguageLocalization;
+        this.hedgeDelayMillis = builder.mHedgeDelayMillis;
+        this.maxStaleAgeMillis = builder.mMaxStaleAgeMillis;
+    }
+
+    /**
+     * @return a builder starting from this configuration
+     */
+    @NonNull
+    public Builder buildUpon() {
+        return new Builder(this);
+    }
+
+    @Override
+    public String toString() {
+        return "SirenConfig{versionCode=" + alertTypeResolver.versionCodeUpdateAlertType
+                + ", major=" + alertTypeResolver.majorUpdateAlertType
+                + ", minor=" + alertTypeResolver.minorUpdateAlertType
+                + ", patch=" + alertTypeResolver.patchUpdateAlertType
+                + ", revision=" + alertTypeResolver.revisionUpdateAlertType
+                + ", languageLocalization=" + languageLocalization
+                + ", hedgeDelayMillis=" + hedgeDelayMillis
+                + ", maxStaleAgeMillis=" + maxStaleAgeMillis + '}';
+    }
+
+    /**
+     * Not thread safe; build the configuration on one thread and share the result.
+     */
+    public static final class Builder {
+        private SirenAlertType mVersionCodeUpdateAlertType = SirenAlertType.OPTION;
+        private SirenAlertType mMajorUpdateAlertType = SirenAlertType.OPTION;
+        private SirenAlertType mMinorUpdateAlertType = SirenAlertType.OPTION;
+        private SirenAlertType mPatchUpdateAlertType = SirenAlertType.OPTION;
+        private SirenAlertType mRevisionUpdateAlertType = SirenAlertType.OPTION;
+        @Nullable private SirenSupportedLocales mLanguageLocalization;
+        private long mHedgeDelayMillis = SirenFetcher.DEFAULT_HEDGE_DELAY_MILLIS;
+        private long mMaxStaleAgeMillis = SirenFetcher.NO_STALE_COPY;
+
+        public Builder() {
+            // defaults: SirenAlertType.OPTION for every kind of update
+        }
+
+        private Builder(SirenConfig config) {
+            mVersionCodeUpdateAlertType = config.alertTypeResolver.versionCodeUpdateAlertType;
+            mMajorUpdateAlertType = config.alertTypeResolver.majorUpdateAlertType;
+            mMinorUpdateAlertType = config.alertTypeResolver.minorUpdateAlertType;
+            mPatchUpdateAlertType = config.alertTypeResolver.patchUpdateAlertType;
+            mRevisionUpdateAlertType = config.alertTypeResolver.revisionUpdateAlertType;
+            mLanguageLocalization = config.languageLocalization;
+            mHedgeDelayMillis = config.hedgeDelayMillis;
+            mMaxStaleAgeMillis = config.maxStaleAgeMillis;
+        }
+
+        public Builder setVersionCodeUpdateAlertType(SirenAlertType versionCodeUpdateAlertType) {
+            mVersionCodeUpdateAlertType = versionCodeUpdateAlertType;
+            return this;
+        }
+
+        public Builder setMajorUpdateAlertType(SirenAlertType majorUpdateAlertType) {
+            mMajorUpdateAlertType = majorUpdateAlertType;
+            return this;
+        }
+
+        public Builder setMinorUpdateAlertType(SirenAlertType minorUpdateAlertType) {
+            mMinorUpdateAlertType = minorUpdateAlertType;
+            return this;
+        }
+
+        public Builder setPatchUpdateAlertType(SirenAlertType patchUpdateAlertType) {
+            mPatchUpdateAlertType = patchUpdateAlertType;
+            return this;
+        }
+
+        public Builder setRevisionUpdateAlertType(SirenAlertType revisionUpdateAlertType) {
+            mRevisionUpdateAlertType = revisionUpdateAlertType;
+            return this;
+        }
+
+        /**
+         * @param localization overrides the device's locale for the alert texts, null to follow the device
+         */
+        public Builder setLanguageLocalization(@Nullable SirenSupportedLocales localization) {
+            mLanguageLocalization = localization;
+            return this;
+        }
+
+        /**
+         * @see Siren#setHedgeDelay
+         */
+        public Builder setHedgeDelay(long delay, TimeUnit unit) {
+            mHedgeDelayMillis = unit.toMillis(delay);
+            return this;
+        }
+
+        /**
+         * @see Siren#setMaxStaleAge
+         */
+        public Builder setMaxStaleAge(long maxAge, TimeUnit unit) {
+            mMaxStaleAgeMillis = unit.toMillis(maxAge);
+            return this;
+        }
+
+        @NonNull
+        public SirenConfig build() {
+            return new SirenConfig(this);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.eggheadgames.siren;
+
+import java.io.IOException;
+
+/**
+ * Passed to {@link ISirenListener#onError} when the server sends an app description document larger than
+ * Siren is willing to read, usually because the URL points to something else, like an error page or a download.
+ */
+@SuppressWarnings("WeakerAccess")
+public class SirenDocumentTooLargeException extends IOException {
+
+    private final int mMaxBytes;
+
+    SirenDocumentTooLargeException(String url, int maxBytes) {
+        super("App description document at " + url + " is larger than " + maxBytes + " bytes");
+        this.mMaxBytes = maxBytes;
+    }
+
+    /**
+     * @return the largest document, after decompression, that Siren reads
+     */
+    public int getMaxBytes() {
+        return mMaxBytes;
+    }
+}
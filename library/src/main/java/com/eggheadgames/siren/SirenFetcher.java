@@ -0,0 +1,636 @@
+package com.eggheadgames.siren;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs app description downloads on a small dedicated thread pool.
+ * Concurrent requests for the same URL share one download, whose result is delivered to every waiting caller
+ * on the callback executor (the main thread by default).
+ * <p>
+ * A check may name mirrors of the document: if the first URL has not answered within the hedge delay, the next one
+ * is asked as well, the first usable document wins and the other requests are cancelled.
+ * <p>
+ * With a {@link SirenBackoff}, downloads are skipped while it asks to wait; such fetches deliver no document and a
+ * {@link SirenCheckMetrics.Source#NONE} transfer.
+ * <p>
+ * A fetch that accepts stale copies first hands the newest cached copy, or the {@link SirenBundledManifest bundled
+ * snapshot} when nothing was cached yet, to its callers with a {@link SirenTransferMetrics#stale stale} transfer, and
+ * then delivers the revalidated result to the same callers.
+ * <p>
+ * With a {@link SirenProcessLock}, a download first waits for the processes of the app that are downloading the same
+ * document, and uses the copy they stored instead of asking the server again.
+ */
+class SirenFetcher implements SirenStateStore.BackgroundRunner {
+
+    interface Callback {
+        /**
+         * @param document the document, or null if the server did not return one
+         */
+        void onFetched(@Nullable SirenManifestDocument document, SirenTransferMetrics transfer);
+
+        void onFetchFailed(Exception e, SirenTransferMetrics transfer);
+    }
+
+    /**
+     * Always ask the server, the cached copy is only used to revalidate
+     */
+    static final long NETWORK_FIRST = -1;
+
+    /**
+     * Don't hand out a stale copy while asking the server
+     */
+    static final long NO_STALE_COPY = 0;
+
+    static final long DEFAULT_HEDGE_DELAY_MILLIS = 2000;
+
+    private static final int MAX_THREADS = 2;
+    private static final int MAX_QUEUED_FETCHES = 16;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Requests to mirrors that may run at once, across all checks
+     */
+    private static final int MAX_MIRROR_REQUESTS = 4;
+
+    private final SirenManifestLoader mLoader;
+    @Nullable private final SirenBackoff mBackoff;
+    private final ExecutorService mWorkerExecutor;
+    private final ExecutorService mMirrorExecutor;
+    private final Executor mCallbackExecutor;
+    private final Map<String, Fetch> mInFlight = new HashMap<>();
+    @Nullable private volatile SirenBundledManifest mBundledManifest;
+    @Nullable private volatile SirenProcessLock mProcessLock;
+
+    SirenFetcher(SirenManifestLoader loader, SirenBackoff backoff) {
+        this(loader, backoff, newWorkerExecutor(), newMirrorExecutor(), new MainThreadExecutor());
+    }
+
+    @VisibleForTesting
+    SirenFetcher(SirenManifestLoader loader, ExecutorService workerExecutor, Executor callbackExecutor) {
+        this(loader, null, workerExecutor, newMirrorExecutor(), callbackExecutor);
+    }
+
+    @VisibleForTesting
+    SirenFetcher(SirenManifestLoader loader, @Nullable SirenBackoff backoff, ExecutorService workerExecutor, ExecutorService mirrorExecutor,
+                 Executor callbackExecutor) {
+        this.mLoader = loader;
+        this.mBackoff = backoff;
+        this.mWorkerExecutor = workerExecutor;
+        this.mMirrorExecutor = mirrorExecutor;
+        this.mCallbackExecutor = callbackExecutor;
+    }
+
+    @NonNull
+    SirenCheckHandle fetch(String appDescriptionUrl, Callback callback) {
+        return fetch(appDescriptionUrl, NETWORK_FIRST, callback);
+    }
+
+    /**
+     * @param maxCacheAgeMillis if not {@link #NETWORK_FIRST}, a cached document is delivered right away; the server is
+     *                          only asked when the cached copy is older than this, and then only to refresh the cache
+     */
+    @NonNull
+    SirenCheckHandle fetch(String appDescriptionUrl, long maxCacheAgeMillis, Callback callback) {
+        return fetch(Collections.singletonList(appDescriptionUrl), DEFAULT_HEDGE_DELAY_MILLIS, maxCacheAgeMillis, callback);
+    }
+
+    /**
+     * @param appDescriptionUrls the document and its mirrors, in the order they are asked; checks with the same first
+     *                           URL share a download
+     * @param hedgeDelayMillis   how long to wait for an answer before also asking the next mirror
+     */
+    @NonNull
+    SirenCheckHandle fetch(List<String> appDescriptionUrls, long hedgeDelayMillis, long maxCacheAgeMillis, Callback callback) {
+        return fetch(appDescriptionUrls, hedgeDelayMillis, maxCacheAgeMillis, NO_STALE_COPY, callback);
+    }
+
+    /**
+     * @param maxStaleAgeMillis if not {@link #NO_STALE_COPY}, a copy up to this old is delivered first, and the callback
+     *                          is called again with the result of asking the server
+     */
+    @NonNull
+    SirenCheckHandle fetch(List<String> appDescriptionUrls, long hedgeDelayMillis, long maxCacheAgeMillis, long maxStaleAgeMillis,
+                           Callback callback) {
+        return fetch(appDescriptionUrls, hedgeDelayMillis, maxCacheAgeMillis, maxStaleAgeMillis, 0, callback);
+    }
+
+    /**
+     * @param sharedMaxAgeMillis with a {@link #setProcessLock process lock}, a copy stored by another process up to
+     *                           this long before the fetch started is used instead of downloading; copies stored while
+     *                           the fetch waited for the lock are always used
+     */
+    @NonNull
+    SirenCheckHandle fetch(List<String> appDescriptionUrls, long hedgeDelayMillis, long maxCacheAgeMillis, long maxStaleAgeMillis,
+                           long sharedMaxAgeMillis, Callback callback) {
+        String appDescriptionUrl = appDescriptionUrls.get(0);
+        SirenCheckHandle handle;
+        synchronized (this) {
+            Fetch fetch = mInFlight.get(appDescriptionUrl);
+            if (fetch == null) {
+                fetch = new Fetch(new ArrayList<>(appDescriptionUrls), hedgeDelayMillis, maxCacheAgeMillis, maxStaleAgeMillis,
+                        sharedMaxAgeMillis);
+                try {
+                    fetch.mFuture = mWorkerExecutor.submit(fetch);
+                } catch (final RejectedExecutionException e) {
+                    final SirenCheckHandle rejected = new SirenCheckHandle(null, callback);
+                    deliverFailure(appDescriptionUrl, rejected, e);
+                    return rejected;
+                }
+                mInFlight.put(appDescriptionUrl, fetch);
+            }
+            handle = new SirenCheckHandle(fetch, callback);
+            fetch.mWaiters.add(handle);
+        }
+        return handle;
+    }
+
+    /**
+     * @param bundledManifest used by fetches that accept stale copies when nothing is cached, or null
+     */
+    void setBundledManifest(@Nullable SirenBundledManifest bundledManifest) {
+        mBundledManifest = bundledManifest;
+    }
+
+    /**
+     * @param processLock coordinates downloads with the other processes of the app, or null to download right away
+     */
+    void setProcessLock(@Nullable SirenProcessLock processLock) {
+        mProcessLock = processLock;
+    }
+
+    /**
+     * Runs short background work, such as warming caches, on the worker pool.
+     */
+    @Override
+    public boolean runInBackground(Runnable runnable) {
+        try {
+            mWorkerExecutor.execute(runnable);
+            return true;
+        } catch (RejectedExecutionException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Runs {@code runnable} where callbacks are delivered, the main thread unless a test says otherwise
+     */
+    void runOnCallbackThread(Runnable runnable) {
+        mCallbackExecutor.execute(runnable);
+    }
+
+    @VisibleForTesting
+    synchronized boolean isInFlight(String appDescriptionUrl) {
+        return mInFlight.containsKey(appDescriptionUrl);
+    }
+
+    private void deliverFailure(final String url, final SirenCheckHandle handle, final Exception e) {
+        mCallbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!handle.isCancelled() && handle.mCallback != null) {
+                    handle.markDone();
+                    handle.mCallback.onFetchFailed(e, new SirenTransferMetrics(url));
+                }
+            }
+        });
+    }
+
+    private static ExecutorService newWorkerExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(MAX_QUEUED_FETCHES), new BackgroundThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Mirror requests only start when a worker is free to run them right away, otherwise they would wait behind
+     * the requests they are meant to overtake
+     */
+    private static ExecutorService newMirrorExecutor() {
+        return new ThreadPoolExecutor(0, MAX_MIRROR_REQUESTS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), new BackgroundThreadFactory());
+    }
+
+    /**
+     * A single download shared by every caller waiting for the same URL.
+     */
+    final class Fetch implements Runnable {
+        final String mUrl;
+        final List<String> mMirrorUrls;
+        final long mHedgeDelayMillis;
+        final long mMaxCacheAgeMillis;
+        final long mMaxStaleAgeMillis;
+        /**
+         * Copies stored by other processes since then are used instead of downloading
+         */
+        final long mSharedSinceMillis;
+        final List<SirenCheckHandle> mWaiters = new ArrayList<>();
+        Future<?> mFuture;
+        private final List<Request> mRequests = new ArrayList<>();
+        private volatile boolean mCancelled;
+
+        Fetch(List<String> mirrorUrls, long hedgeDelayMillis, long maxCacheAgeMillis, long maxStaleAgeMillis, long sharedMaxAgeMillis) {
+            this.mUrl = mirrorUrls.get(0);
+            this.mMirrorUrls = mirrorUrls;
+            this.mHedgeDelayMillis = hedgeDelayMillis;
+            this.mMaxCacheAgeMillis = maxCacheAgeMillis;
+            this.mMaxStaleAgeMillis = maxStaleAgeMillis;
+            this.mSharedSinceMillis = System.currentTimeMillis() - Math.max(sharedMaxAgeMillis, 0);
+        }
+
+        @Override
+        public void run() {
+            try {
+                fetch();
+            } catch (RuntimeException e) {
+                // the executor would keep it in the future nobody reads, leaving the url in flight for good
+                finish(null, e, new SirenTransferMetrics(mUrl));
+            }
+        }
+
+        private void fetch() {
+            if ((mMaxCacheAgeMillis != NETWORK_FIRST || mMaxStaleAgeMillis != NO_STALE_COPY) && serveCached()) {
+                return;
+            }
+            if (mBackoff != null && !mBackoff.allowsAttempt(System.currentTimeMillis())) {
+                SirenTransferMetrics transfer = new SirenTransferMetrics(mUrl);
+                transfer.source = SirenCheckMetrics.Source.NONE;
+                mBackoff.describe(transfer);
+                finish(null, null, transfer);
+                return;
+            }
+            SirenProcessLock processLock = mProcessLock;
+            SirenProcessLock.Held held = processLock == null ? null : processLock.acquire(mUrl);
+            try {
+                if (held != null && serveShared()) {
+                    return;
+                }
+                download();
+            } finally {
+                if (held != null) {
+                    held.release();
+                }
+            }
+        }
+
+        private void download() {
+            Request request;
+            if (mMirrorUrls.size() == 1) {
+                request = new Request(this, mUrl, null);
+                start(request, false);
+            } else {
+                request = runHedged();
+            }
+            if (request == null) {
+                finish(null, null, new SirenTransferMetrics(mUrl));
+            } else {
+                recordOutcome(request);
+                finish(request.mDocument, request.mError, request.mTransfer);
+            }
+        }
+
+        /**
+         * Called with the process lock held, so a process that downloaded this document meanwhile has stored it
+         *
+         * @return true if a copy stored recently enough by another process was delivered
+         */
+        private boolean serveShared() {
+            SirenManifestCache.Entry shared = null;
+            String sharedUrl = mUrl;
+            for (String url : mMirrorUrls) {
+                SirenManifestCache.Entry entry = mLoader.getCached(url);
+                if (entry != null && (shared == null || entry.storedAt > shared.storedAt)) {
+                    shared = entry;
+                    sharedUrl = url;
+                }
+            }
+            if (shared == null || shared.storedAt < mSharedSinceMillis) {
+                return false;
+            }
+            SirenTransferMetrics transfer = new SirenTransferMetrics(sharedUrl);
+            transfer.source = SirenCheckMetrics.Source.SHARED;
+            finish(shared.document, null, transfer);
+            return true;
+        }
+
+        private void recordOutcome(Request request) {
+            if (mBackoff == null || isCancelled()) {
+                return;
+            }
+            SirenTransferMetrics transfer = request.mTransfer;
+            if (request.mError == null && request.mDocument != null) {
+                mBackoff.onSuccess();
+            } else {
+                mBackoff.onFailure(System.currentTimeMillis(), transfer.retryAfterMillis);
+            }
+            mBackoff.describe(transfer);
+        }
+
+        /**
+         * Asks the next mirror whenever the hedge delay passes without an answer, or right away when every request
+         * so far has failed.
+         *
+         * @return the first request that returned a usable document, otherwise the last one that completed;
+         * null if the fetch was cancelled
+         */
+        @Nullable
+        private Request runHedged() {
+            BlockingQueue<Request> completed = new LinkedBlockingQueue<>();
+            int started = 0;
+            int finished = 0;
+            Request last = null;
+            try {
+                while (finished < mMirrorUrls.size()) {
+                    Request request;
+                    if (started == finished) {
+                        request = null;
+                    } else if (started < mMirrorUrls.size()) {
+                        request = completed.poll(mHedgeDelayMillis, TimeUnit.MILLISECONDS);
+                    } else {
+                        request = completed.take();
+                    }
+                    if (request == null) {
+                        if (isCancelled()) {
+                            return null;
+                        }
+                        start(new Request(this, mMirrorUrls.get(started), completed), true);
+                        started++;
+                        continue;
+                    }
+                    finished++;
+                    last = request;
+                    if (request.mError == null && mLoader.isUsable(request.mDocument)) {
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                return null;
+            } finally {
+                cancelRequests();
+            }
+            if (last != null && started > 1) {
+                last.mTransfer.hedged = true;
+            }
+            return last;
+        }
+
+        /**
+         * @param hedged run on the mirror pool if a thread is free, so this thread can keep timing the other mirrors
+         */
+        private void start(Request request, boolean hedged) {
+            synchronized (mRequests) {
+                mRequests.add(request);
+            }
+            if (hedged) {
+                try {
+                    mMirrorExecutor.execute(request);
+                    return;
+                } catch (RejectedExecutionException e) {
+                    // no free thread: ask this mirror without hedging it
+                }
+            }
+            request.run();
+        }
+
+        private void cancelRequests() {
+            List<Request> requests;
+            synchronized (mRequests) {
+                requests = new ArrayList<>(mRequests);
+            }
+            for (Request request : requests) {
+                request.cancel();
+            }
+        }
+
+        /**
+         * Hands the cached document to the callers waiting so far; callers that join while a stale copy is refreshed
+         * get the new one. Callers that accept stale copies keep waiting for the refreshed one as well.
+         *
+         * @return true if the cached document was fresh enough to skip the download
+         */
+        private boolean serveCached() {
+            SirenManifestCache.Entry cached = null;
+            String cachedUrl = mUrl;
+            for (String url : mMirrorUrls) {
+                SirenManifestCache.Entry entry = mLoader.getCached(url);
+                if (entry != null && (cached == null || entry.storedAt > cached.storedAt)) {
+                    cached = entry;
+                    cachedUrl = url;
+                }
+            }
+            SirenTransferMetrics transfer = new SirenTransferMetrics(cachedUrl);
+            transfer.source = SirenCheckMetrics.Source.CACHE;
+            SirenBundledManifest bundledManifest = mBundledManifest;
+            if (cached == null && mMaxStaleAgeMillis != NO_STALE_COPY && bundledManifest != null) {
+                cached = bundledManifest.get();
+                transfer.source = SirenCheckMetrics.Source.BUNDLED;
+            }
+            if (cached == null) {
+                return false;
+            }
+            long age = System.currentTimeMillis() - cached.storedAt;
+            if (mMaxCacheAgeMillis != NETWORK_FIRST && age <= mMaxCacheAgeMillis && transfer.source == SirenCheckMetrics.Source.CACHE) {
+                finish(cached.document, null, transfer);
+                return true;
+            }
+            if (mMaxStaleAgeMillis != NO_STALE_COPY && age <= mMaxStaleAgeMillis) {
+                transfer.stale = true;
+                List<SirenCheckHandle> waiters;
+                synchronized (SirenFetcher.this) {
+                    waiters = new ArrayList<>(mWaiters);
+                }
+                deliver(waiters, cached.document, null, transfer, false);
+            } else if (mMaxCacheAgeMillis != NETWORK_FIRST && transfer.source == SirenCheckMetrics.Source.CACHE) {
+                deliver(takeWaiters(), cached.document, null, transfer);
+            }
+            return false;
+        }
+
+        boolean isCancelled() {
+            return mCancelled || Thread.currentThread().isInterrupted();
+        }
+
+        void onHandleCancelled(SirenCheckHandle handle) {
+            synchronized (SirenFetcher.this) {
+                if (!mWaiters.remove(handle) || !mWaiters.isEmpty() || mInFlight.get(mUrl) != this) {
+                    return;
+                }
+                mInFlight.remove(mUrl);
+                mCancelled = true;
+            }
+            mFuture.cancel(true);
+            cancelRequests();
+        }
+
+        private void finish(@Nullable SirenManifestDocument document, @Nullable Exception error, SirenTransferMetrics transfer) {
+            List<SirenCheckHandle> waiters;
+            synchronized (SirenFetcher.this) {
+                if (mInFlight.get(mUrl) == this) {
+                    mInFlight.remove(mUrl);
+                }
+                waiters = takeWaiters();
+            }
+            if (mCancelled) {
+                return;
+            }
+            if (error != null) {
+                error.printStackTrace();
+            }
+            deliver(waiters, document, error, transfer);
+        }
+
+        private List<SirenCheckHandle> takeWaiters() {
+            synchronized (SirenFetcher.this) {
+                List<SirenCheckHandle> waiters = new ArrayList<>(mWaiters);
+                mWaiters.clear();
+                return waiters;
+            }
+        }
+
+        private void deliver(List<SirenCheckHandle> waiters, @Nullable SirenManifestDocument document, @Nullable Exception error,
+                             SirenTransferMetrics transfer) {
+            deliver(waiters, document, error, transfer, true);
+        }
+
+        /**
+         * @param done false if a newer result follows for these callers
+         */
+        private void deliver(final List<SirenCheckHandle> waiters, @Nullable final SirenManifestDocument document, @Nullable final Exception error,
+                             final SirenTransferMetrics transfer, final boolean done) {
+            if (waiters.isEmpty()) {
+                return;
+            }
+            mCallbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (SirenCheckHandle handle : waiters) {
+                        if (handle.isCancelled() || handle.mCallback == null) {
+                            continue;
+                        }
+                        if (done) {
+                            handle.markDone();
+                        }
+                        if (error == null) {
+                            handle.mCallback.onFetched(document, transfer);
+                        } else {
+                            handle.mCallback.onFetchFailed(error, transfer);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * One request to one mirror.
+     */
+    final class Request implements Runnable, SirenManifestLoader.Cancellation {
+        final String mUrl;
+        final SirenTransferMetrics mTransfer;
+        SirenManifestDocument mDocument;
+        Exception mError;
+        private final Fetch mFetch;
+        @Nullable private final BlockingQueue<Request> mCompleted;
+        private volatile boolean mCancelled;
+        private volatile HttpURLConnection mConnection;
+
+        /**
+         * @param completed receives the request once it is done, or null if the caller waits for it
+         */
+        Request(Fetch fetch, String url, @Nullable BlockingQueue<Request> completed) {
+            this.mFetch = fetch;
+            this.mUrl = url;
+            this.mTransfer = new SirenTransferMetrics(url);
+            this.mCompleted = completed;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!isCancelled()) {
+                    mDocument = mLoader.load(mUrl, this, mTransfer);
+                }
+            } catch (Exception e) {
+                mError = e;
+            }
+            if (mCompleted != null) {
+                mCompleted.add(this);
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mCancelled || mFetch.isCancelled();
+        }
+
+        @Override
+        public void onConnect(HttpURLConnection connection) {
+            mConnection = connection;
+            if (mCancelled) {
+                connection.disconnect();
+            }
+        }
+
+        /**
+         * Also disconnects, so a request stuck waiting for a slow server gives up its thread right away
+         */
+        void cancel() {
+            mCancelled = true;
+            HttpURLConnection connection = mConnection;
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private static class MainThreadExecutor implements Executor {
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            mHandler.post(command);
+        }
+    }
+
+    private static class BackgroundThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "Siren #" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -1,28 +1,40 @@
 package com.eggheadgames.siren;
 
 import android.app.Activity;
+import android.content.ComponentCallbacks;
 import android.content.Context;
 import android.content.Intent;
-import android.content.pm.PackageManager;
-import android.content.res.AssetManager;
+import android.content.SharedPreferences;
 import android.content.res.Configuration;
-import android.content.res.Resources;
 import android.net.Uri;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
 import android.text.TextUtils;
-import android.util.DisplayMetrics;
 import android.util.Log;
 
-import java.util.Calendar;
+import java.io.File;
+import java.util.EnumMap;
 import java.util.Locale;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.Random;
 
 class SirenHelper {
     private static final SirenHelper instance = new SirenHelper();
 
+    private SirenManifestCache manifestCache;
+    private SirenFetcher manifestFetcher;
+    private volatile SirenAppInfo appInfo;
+    private volatile SirenStateStore stateStore;
+    private volatile SirenSharedState sharedState;
+    private final Map<SirenSupportedLocales, Context> localizedContexts = new EnumMap<>(SirenSupportedLocales.class);
+    private boolean configurationCallbacksRegistered;
+    private long clockAnchorMillis;
+    private long clockAnchorElapsed;
+
     @NonNull
     public static SirenHelper getInstance() {
         return instance;
@@ -35,43 +47,188 @@ class SirenHelper {
     }
 
 
+    @NonNull
+    synchronized SirenManifestCache getManifestCache(Context context) {
+        if (manifestCache == null) {
+            manifestCache = new SirenManifestCache(getManifestCacheDirectory(context));
+        }
+        return manifestCache;
+    }
+
+    /**
+     * @return where downloaded documents are kept, shared by the processes of the app
+     */
+    @NonNull
+    File getManifestCacheDirectory(Context context) {
+        return new File(context.getCacheDir(), Constants.MANIFEST_CACHE_DIRECTORY);
+    }
+
+    @NonNull
+    synchronized SirenFetcher getManifestFetcher(Context context) {
+        if (manifestFetcher == null) {
+            // kept by the fetcher for good, so not the activity or job service that asked first
+            final Context applicationContext = context.getApplicationContext();
+            // the state store is created on first use, on the worker pool
+            SirenBackoff.Store backoffStore = new SirenBackoff.Store() {
+                @Override
+                public int getConsecutiveFailures() {
+                    return getStateStore(applicationContext).getConsecutiveFailures();
+                }
+
+                @Override
+                public long getNextAttemptAt() {
+                    return getStateStore(applicationContext).getNextAttemptAt();
+                }
+
+                @Override
+                public void setBackoff(int consecutiveFailures, long nextAttemptAt) {
+                    getStateStore(applicationContext).setBackoff(consecutiveFailures, nextAttemptAt);
+                }
+            };
+            manifestFetcher = new SirenFetcher(new SirenManifestLoader(getManifestCache(context), getPackageName(context)),
+                    new SirenBackoff(backoffStore, new Random()));
+        }
+        return manifestFetcher;
+    }
+
     String getPackageName(Context context) {
         return context.getPackageName();
     }
 
-    int getDaysSinceLastCheck(Context context) {
-        long lastCheckTimestamp = getLastVerificationDate(context);
+    @NonNull
+    SirenAppInfo getAppInfo(Context context) {
+        SirenAppInfo info = appInfo;
+        if (info == null) {
+            synchronized (this) {
+                info = appInfo;
+                if (info == null) {
+                    info = SirenAppInfo.load(context.getApplicationContext());
+                    appInfo = info;
+                }
+            }
+        }
+        return info;
+    }
 
-        if (lastCheckTimestamp > 0) {
-            return (int) (TimeUnit.MILLISECONDS.toDays(Calendar.getInstance().getTimeInMillis()) - TimeUnit.MILLISECONDS.toDays(lastCheckTimestamp));
-        } else {
-            return 0;
+    @NonNull
+    SirenStateStore getStateStore(Context context) {
+        SirenStateStore store = stateStore;
+        if (store == null) {
+            synchronized (this) {
+                store = stateStore;
+                if (store == null) {
+                    final Context applicationContext = context.getApplicationContext();
+                    // the default preferences are only loaded while there are values to move out of them
+                    SirenStateStore.LegacyPreferences legacyPreferences = new SirenStateStore.LegacyPreferences() {
+                        @Override
+                        public SharedPreferences get() {
+                            return PreferenceManager.getDefaultSharedPreferences(applicationContext);
+                        }
+                    };
+                    store = new SirenStateStore(applicationContext.getSharedPreferences(Constants.PREFERENCES_FILE_NAME, Context.MODE_PRIVATE),
+                            legacyPreferences, getManifestFetcher(context));
+                    stateStore = store;
+                }
+            }
         }
+        return store;
     }
 
-    int getVersionCode(Context context) {
-        try {
-            return context.getPackageManager().getPackageInfo(getPackageName(context), 0).versionCode;
-        } catch (PackageManager.NameNotFoundException e) {
-            e.printStackTrace();
-            return 0;
+    /**
+     * @return true once the stored state is in memory, so reading it does no disk work; never while other processes
+     * share it, as each check reads what they saved, see {@link #reloadState}
+     */
+    boolean isStateLoaded() {
+        return stateStore != null && sharedState == null;
+    }
+
+    /**
+     * Lets the processes of the app take turns downloading documents and share the stored state, see
+     * {@link Siren#setMultiProcess}. The state is shared by the next {@link #reloadState}.
+     */
+    void setMultiProcess(Context context, boolean enabled) {
+        SirenProcessLock processLock = enabled ? new SirenProcessLock(getManifestCacheDirectory(context)) : null;
+        getManifestFetcher(context).setProcessLock(processLock);
+        sharedState = processLock != null ? new SirenSharedState(getManifestCacheDirectory(context), processLock) : null;
+    }
+
+    /**
+     * Takes over the state other processes of the app saved since the last call, if they share it
+     */
+    @WorkerThread
+    void reloadState(Context context) {
+        SirenSharedState state = sharedState;
+        SirenStateStore store = getStateStore(context);
+        if (state != null || store.isShared()) {
+            store.reload(state);
+        }
+    }
+
+    /**
+     * @return true if no check was made yet in the install's current period of {@code intervalMillis}
+     */
+    boolean isCheckDue(Context context, long intervalMillis) {
+        SirenStateStore store = getStateStore(context);
+        long offset = SirenCheckSchedule.installOffset(store.getInstallSeed(), intervalMillis);
+        return SirenCheckSchedule.isDue(intervalMillis, offset, store.getLastCheckDate(), currentTimeMillis());
+    }
+
+    /**
+     * @return the shortest time between checks that the app description document asked for
+     */
+    long getMinCheckIntervalMillis(Context context) {
+        return getStateStore(context).getMinCheckIntervalMillis();
+    }
+
+    /**
+     * @return true if the app description document's sample rate leaves this install out of the current period
+     */
+    boolean isSampledOut(Context context, long intervalMillis) {
+        SirenStateStore store = getStateStore(context);
+        float sampleRate = store.getCheckSampleRate();
+        if (sampleRate >= 1) {
+            return false;
+        }
+        long offset = SirenCheckSchedule.installOffset(store.getInstallSeed(), intervalMillis);
+        return !SirenCheckSchedule.isSampled(store.getInstallSeed(), intervalMillis, offset, currentTimeMillis(), sampleRate);
+    }
+
+    /**
+     * Keeps the check interval and sample rate of the last app description document, within safe limits
+     */
+    void setCheckPolicy(Context context, long minCheckIntervalMillis, double checkSampleRate) {
+        getStateStore(context).setCheckPolicy(SirenCheckSchedule.clampMinCheckInterval(minCheckIntervalMillis),
+                (float) SirenCheckSchedule.clampSampleRate(checkSampleRate));
+    }
+
+    /**
+     * Wall clock time that advances with {@link SystemClock#elapsedRealtime()} once read, so clock changes while the
+     * app runs don't move checks
+     */
+    synchronized long currentTimeMillis() {
+        long elapsed = SystemClock.elapsedRealtime();
+        if (clockAnchorMillis == 0) {
+            clockAnchorMillis = System.currentTimeMillis();
+            clockAnchorElapsed = elapsed;
         }
+        return clockAnchorMillis + elapsed - clockAnchorElapsed;
+    }
+
+    long getVersionCode(Context context) {
+        return getAppInfo(context).versionCode;
     }
 
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
     boolean isVersionSkippedByUser(Context context, String minAppVersion) {
-        String skippedVersion = PreferenceManager.getDefaultSharedPreferences(context).getString(Constants.PREFERENCES_SKIPPED_VERSION, "");
-        return skippedVersion.equals(minAppVersion);
+        return getStateStore(context).getSkippedVersion().equals(minAppVersion);
     }
 
     void setLastVerificationDate(Context context) {
-        PreferenceManager.getDefaultSharedPreferences(context).edit()
-                .putLong(Constants.PREFERENCES_LAST_CHECK_DATE, Calendar.getInstance().getTimeInMillis())
-                .commit();
+        getStateStore(context).setLastCheckDate(currentTimeMillis());
     }
 
     long getLastVerificationDate(Context context) {
-        return PreferenceManager.getDefaultSharedPreferences(context).getLong(Constants.PREFERENCES_LAST_CHECK_DATE, 0);
+        return getStateStore(context).getLastCheckDate();
     }
 
     @NonNull
@@ -96,18 +253,44 @@ class SirenHelper {
         if (locale == null) {
             return context.getString(stringResource);
         } else {
-            Resources standardResources = context.getResources();
-            AssetManager assets = standardResources.getAssets();
-            DisplayMetrics metrics = standardResources.getDisplayMetrics();
-            Configuration defaultConfiguration = standardResources.getConfiguration();
-            Configuration newConfiguration = new Configuration(defaultConfiguration);
-            newConfiguration.locale = new Locale(locale.getLocale());
-            String string = new Resources(assets, metrics, newConfiguration).getString(stringResource);
-
-            //need to turn back the default locale
-            new Resources(assets, metrics, defaultConfiguration);
-            return string;
+            return getLocalizedContext(context, locale).getString(stringResource);
+        }
+    }
+
+    /**
+     * @return a context whose resources use {@code locale}; created once per locale and dropped on configuration changes.
+     * The app's own configuration is left untouched.
+     */
+    @NonNull
+    @VisibleForTesting
+    synchronized Context getLocalizedContext(Context context, SirenSupportedLocales locale) {
+        Context localizedContext = localizedContexts.get(locale);
+        if (localizedContext == null) {
+            Context applicationContext = context.getApplicationContext();
+            if (!configurationCallbacksRegistered) {
+                applicationContext.registerComponentCallbacks(new ComponentCallbacks() {
+                    @Override
+                    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+                        synchronized (SirenHelper.this) {
+                            localizedContexts.clear();
+                        }
+                    }
+
+                    @Override
+                    public void onLowMemory() {
+                        synchronized (SirenHelper.this) {
+                            localizedContexts.clear();
+                        }
+                    }
+                });
+                configurationCallbacksRegistered = true;
+            }
+            Configuration configuration = new Configuration(applicationContext.getResources().getConfiguration());
+            configuration.setLocale(new Locale(locale.getLocale()));
+            localizedContext = applicationContext.createConfigurationContext(configuration);
+            localizedContexts.put(locale, localizedContext);
         }
+        return localizedContext;
     }
 
 
@@ -129,26 +312,11 @@ class SirenHelper {
     }
 
     void setVersionSkippedByUser(Context context, String skippedVersion) {
-        PreferenceManager.getDefaultSharedPreferences(context).edit()
-                .putString(Constants.PREFERENCES_SKIPPED_VERSION, skippedVersion)
-                .commit();
+        getStateStore(context).setSkippedVersion(skippedVersion);
     }
 
     String getVersionName(Context context) {
-        try {
-            return context.getPackageManager().getPackageInfo(getPackageName(context), 0).versionName;
-        } catch (PackageManager.NameNotFoundException e) {
-            e.printStackTrace();
-            return "";
-        }
-    }
-
-    boolean isGreater(String first, String second) {
-        return TextUtils.isDigitsOnly(first) && TextUtils.isDigitsOnly(second) && Integer.parseInt(first) > Integer.parseInt(second);
-    }
-
-    boolean isEquals(String first, String second) {
-        return TextUtils.isDigitsOnly(first) && TextUtils.isDigitsOnly(second) && Integer.parseInt(first) == Integer.parseInt(second);
+        return getAppInfo(context).versionName;
     }
 
     boolean isEmpty(String appDescriptionUrl) {
@@ -0,0 +1,153 @@
+package com.eggheadgames.siren;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Persistent cache of downloaded app description documents.
+ * Each entry keeps the document together with the ETag / Last-Modified validators sent by the server,
+ * so the next check can be a conditional GET that is answered with an empty 304.
+ */
+class SirenManifestCache {
+
+    private static final int FORMAT_VERSION = 2;
+
+    private final File mDirectory;
+
+    SirenManifestCache(File directory) {
+        this.mDirectory = directory;
+    }
+
+    @Nullable
+    synchronized Entry get(String url) {
+        File file = fileFor(url);
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != FORMAT_VERSION || !url.equals(in.readUTF())) {
+                return null;
+            }
+            String eTag = emptyToNull(in.readUTF());
+            String lastModified = emptyToNull(in.readUTF());
+            long storedAt = in.readLong();
+            boolean binary = in.readBoolean();
+            int length = in.readInt();
+            if (length < 0 || length > file.length()) {
+                // damaged, read as a miss instead of allocating what the file claims
+                closeQuietly(in);
+                in = null;
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                return null;
+            }
+            byte[] body = new byte[length];
+            in.readFully(body);
+            return new Entry(new SirenManifestDocument(body, binary), eTag, lastModified, storedAt);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    synchronized void put(String url, SirenManifestDocument document, @Nullable String eTag, @Nullable String lastModified) {
+        write(url, new Entry(document, eTag, lastModified, System.currentTimeMillis()));
+    }
+
+    /**
+     * Marks a cached entry as revalidated by the server (HTTP 304).
+     */
+    synchronized void touch(String url, Entry entry) {
+        write(url, new Entry(entry.document, entry.eTag, entry.lastModified, System.currentTimeMillis()));
+    }
+
+    synchronized void remove(String url) {
+        //noinspection ResultOfMethodCallIgnored
+        fileFor(url).delete();
+    }
+
+    private void write(String url, Entry entry) {
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            return;
+        }
+        File target = fileFor(url);
+        File temp = null;
+        DataOutputStream out = null;
+        try {
+            // unique, so processes of the app writing the same document don't write into each other's file
+            temp = File.createTempFile(target.getName(), ".tmp", mDirectory);
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            byte[] body = entry.document.getBytes();
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(url);
+            out.writeUTF(entry.eTag == null ? "" : entry.eTag);
+            out.writeUTF(entry.lastModified == null ? "" : entry.lastModified);
+            out.writeLong(entry.storedAt);
+            out.writeBoolean(entry.document.isBinary());
+            out.writeInt(body.length);
+            out.write(body);
+            out.close();
+            out = null;
+            if (!temp.renameTo(target)) {
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (temp != null) {
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+            }
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    @NonNull
+    private File fileFor(String url) {
+        return new File(mDirectory, Integer.toHexString(url.hashCode()) + ".manifest");
+    }
+
+    @Nullable
+    private static String emptyToNull(String value) {
+        return value.length() == 0 ? null : value;
+    }
+
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+                // nothing to do
+            }
+        }
+    }
+
+    static final class Entry {
+        final SirenManifestDocument document;
+        @Nullable final String eTag;
+        @Nullable final String lastModified;
+        final long storedAt;
+
+        Entry(SirenManifestDocument document, @Nullable String eTag, @Nullable String lastModified, long storedAt) {
+            this.document = document;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.storedAt = storedAt;
+        }
+    }
+}
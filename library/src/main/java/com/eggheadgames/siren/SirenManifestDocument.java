@@ -0,0 +1,108 @@
+package com.eggheadgames.siren;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+
+import java.nio.charset.Charset;
+
+/**
+ * A downloaded app description document, either JSON or the compact binary encoding read by
+ * {@link SirenBinaryManifestDecoder}, kept as the bytes received from the server.
+ */
+final class SirenManifestDocument {
+
+    static final String JSON_CONTENT_TYPE = "application/json";
+    static final String BINARY_CONTENT_TYPE = "application/x-siren-manifest";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final byte[] mBytes;
+    private final boolean mBinary;
+    private volatile String mJson;
+
+    /**
+     * The loader parses a document before handing it out, so the version check reuses that parse
+     */
+    @Nullable private volatile Parsed mParsed;
+
+    SirenManifestDocument(byte[] bytes, boolean binary) {
+        this.mBytes = bytes;
+        this.mBinary = binary;
+    }
+
+    @NonNull
+    static SirenManifestDocument json(String json) {
+        SirenManifestDocument document = new SirenManifestDocument(json.getBytes(UTF_8), false);
+        document.mJson = json;
+        return document;
+    }
+
+    /**
+     * @return true for a response whose content type is the binary encoding
+     */
+    static boolean isBinaryContentType(@Nullable String contentType) {
+        return contentType != null && contentType.regionMatches(true, 0, BINARY_CONTENT_TYPE, 0, BINARY_CONTENT_TYPE.length());
+    }
+
+    @NonNull
+    byte[] getBytes() {
+        return mBytes;
+    }
+
+    boolean isBinary() {
+        return mBinary;
+    }
+
+    boolean isEmpty() {
+        return mBytes.length == 0;
+    }
+
+    /**
+     * @return the text of a JSON document, or null for a binary one
+     */
+    @Nullable
+    String getJson() {
+        if (mBinary) {
+            return null;
+        }
+        String json = mJson;
+        if (json == null) {
+            json = new String(mBytes, UTF_8);
+            mJson = json;
+        }
+        return json;
+    }
+
+    /**
+     * @return the entry of {@code packageName}, a copy of the one parsed first, as rules are applied to it in place
+     * @throws JSONException if the document is malformed or the package is not described
+     */
+    @NonNull
+    SirenManifestEntry parse(String packageName) throws JSONException {
+        Parsed parsed = mParsed;
+        if (parsed == null || !parsed.packageName.equals(packageName)) {
+            SirenManifestEntry entry;
+            if (mBinary) {
+                entry = SirenBinaryManifestDecoder.decode(mBytes, packageName);
+            } else {
+                //noinspection ConstantConditions
+                entry = SirenManifestParser.parse(getJson(), packageName);
+            }
+            parsed = new Parsed(packageName, entry);
+            mParsed = parsed;
+        }
+        return parsed.entry.copy();
+    }
+
+    private static final class Parsed {
+        final String packageName;
+        final SirenManifestEntry entry;
+
+        Parsed(String packageName, SirenManifestEntry entry) {
+            this.packageName = packageName;
+            this.entry = entry;
+        }
+    }
+}
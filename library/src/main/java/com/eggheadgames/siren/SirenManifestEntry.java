@@ -0,0 +1,70 @@
+package com.eggheadgames.siren;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Fields of a single package entry of the app description document.
+ */
+final class SirenManifestEntry {
+
+    @Nullable String minVersionName;
+    boolean hasMinVersionCode;
+    long minVersionCode;
+
+    /**
+     * If no config found, assume version check is enabled
+     */
+    boolean enable = true;
+
+    /**
+     * If no config found, assume force update = false
+     */
+    boolean force;
+
+    @Nullable String updateUrl;
+
+    /**
+     * Shortest time between checks the server asks for, 0 if it asks for none
+     */
+    long minCheckIntervalMillis;
+
+    /**
+     * Fraction of installs the server asks to check in each interval
+     */
+    double checkSampleRate = 1;
+
+    /**
+     * Targeted overrides of the fields above, or null if the entry has none
+     */
+    @Nullable SirenRuleIndex rules;
+
+    /**
+     * @return an entry with the same fields, so applying rules to it leaves this one untouched
+     */
+    SirenManifestEntry copy() {
+        SirenManifestEntry copy = new SirenManifestEntry();
+        copy.minVersionName = minVersionName;
+        copy.hasMinVersionCode = hasMinVersionCode;
+        copy.minVersionCode = minVersionCode;
+        copy.enable = enable;
+        copy.force = force;
+        copy.updateUrl = updateUrl;
+        copy.minCheckIntervalMillis = minCheckIntervalMillis;
+        copy.checkSampleRate = checkSampleRate;
+        copy.rules = rules;
+        return copy;
+    }
+
+    /**
+     * Applies the first rule that matches the device, if any
+     */
+    void applyRules(int sdkInt, String country, long installedVersionCode) {
+        if (rules == null) {
+            return;
+        }
+        SirenRuleIndex.Rule rule = rules.match(sdkInt, country, installedVersionCode);
+        if (rule != null) {
+            rule.applyTo(this);
+        }
+    }
+}
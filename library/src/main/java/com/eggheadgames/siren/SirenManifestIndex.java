@@ -0,0 +1,102 @@
+package com.eggheadgames.siren;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * Small document that points each package to its own shard of the app description document, so a client
+ * downloads only its own entry instead of the document shared by every app:
+ * <pre>
+ * {
+ *     "$index": {
+ *         "template": "https://example.com/siren/{packageName}.json",
+ *         "packages": { "com.example.app": "com.example.app-v2.json" }
+ *     }
+ * }
+ * </pre>
+ * {@code "$index"} must be the first key. Packages listed under {@code "packages"} take precedence over the template,
+ * and relative URLs are resolved against the URL of the index. Each shard uses the regular document format.
+ */
+final class SirenManifestIndex {
+
+    private SirenManifestIndex() {
+        // utility class
+    }
+
+    /**
+     * @return {@code url} with {@value Constants#URL_PACKAGE_NAME_PLACEHOLDER} replaced by {@code packageName}
+     */
+    static String expandTemplate(String url, String packageName) {
+        return url.contains(Constants.URL_PACKAGE_NAME_PLACEHOLDER)
+                ? url.replace(Constants.URL_PACKAGE_NAME_PLACEHOLDER, packageName) : url;
+    }
+
+    /**
+     * Checks only the start of the document, so that regular documents of any size are not parsed twice.
+     */
+    static boolean isIndex(SirenManifestDocument document) {
+        if (document.isBinary()) {
+            return false;
+        }
+        byte[] bytes = document.getBytes();
+        int pos = skipWhitespace(bytes, startsWithBom(bytes) ? 3 : 0);
+        if (pos >= bytes.length || bytes[pos] != '{') {
+            return false;
+        }
+        pos = skipWhitespace(bytes, pos + 1);
+        String key = "\"" + Constants.JSON_INDEX + "\"";
+        if (pos + key.length() > bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (bytes[pos + i] != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the URL of the shard describing {@code packageName}, or null if {@code document} is not an index
+     *         or does not point to a shard for the package
+     */
+    @Nullable
+    static String resolveShardUrl(SirenManifestDocument document, String indexUrl, String packageName) {
+        if (!isIndex(document)) {
+            return null;
+        }
+        try {
+            //noinspection ConstantConditions
+            JSONObject index = new JSONObject(document.getJson()).getJSONObject(Constants.JSON_INDEX);
+            JSONObject packages = index.optJSONObject(Constants.JSON_INDEX_PACKAGES);
+            String shardUrl = packages != null ? packages.optString(packageName, null) : null;
+            if (shardUrl == null) {
+                String template = index.optString(Constants.JSON_INDEX_TEMPLATE, null);
+                if (template == null) {
+                    return null;
+                }
+                shardUrl = expandTemplate(template, packageName);
+            }
+            return new URL(new URL(indexUrl), shardUrl).toString();
+        } catch (JSONException | MalformedURLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static boolean startsWithBom(byte[] bytes) {
+        return bytes.length >= 3 && (bytes[0] & 0xFF) == 0xEF && (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF;
+    }
+
+    private static int skipWhitespace(byte[] bytes, int pos) {
+        while (pos < bytes.length && (bytes[pos] == ' ' || bytes[pos] == '\t' || bytes[pos] == '\n' || bytes[pos] == '\r')) {
+            pos++;
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,327 @@
+package com.eggheadgames.siren;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import org.json.JSONException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import javax.net.ssl.HttpsURLConnection;
+
+/**
+ * Downloads the app description document, revalidating the copy kept in {@link SirenManifestCache}.
+ * <p>
+ * The URL may be a template containing {@value Constants#URL_PACKAGE_NAME_PLACEHOLDER}, or point to a
+ * {@link SirenManifestIndex}; in both cases only the shard describing this package is downloaded.
+ */
+class SirenManifestLoader {
+
+    interface Cancellation {
+        boolean isCancelled();
+
+        /**
+         * Called before each connection is opened, so that a cancellation from another thread can disconnect it
+         */
+        void onConnect(HttpURLConnection connection);
+    }
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Largest body, after decompression, that is read; anything bigger is not an app description document
+     */
+    static final int MAX_BODY_BYTES = 1024 * 1024;
+
+    /**
+     * Initial buffer size for a gzip body, relative to its compressed length
+     */
+    private static final int GZIP_SIZE_ESTIMATE = 4;
+
+    /**
+     * Connect and read timeout of each request
+     */
+    static final int TIMEOUT_MILLIS = 10000;
+
+    /**
+     * An index that is younger than this is used without asking the server
+     */
+    private static final long INDEX_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private final SirenManifestCache mManifestCache;
+    private final String mPackageName;
+    private final int mMaxBodyBytes;
+    private final int mTimeoutMillis;
+
+    /**
+     * @param packageName only documents that describe this package are cached
+     */
+    SirenManifestLoader(SirenManifestCache manifestCache, String packageName) {
+        this(manifestCache, packageName, MAX_BODY_BYTES);
+    }
+
+    SirenManifestLoader(SirenManifestCache manifestCache, String packageName, int maxBodyBytes) {
+        this(manifestCache, packageName, maxBodyBytes, TIMEOUT_MILLIS);
+    }
+
+    SirenManifestLoader(SirenManifestCache manifestCache, String packageName, int maxBodyBytes, int timeoutMillis) {
+        this.mManifestCache = manifestCache;
+        this.mPackageName = packageName;
+        this.mMaxBodyBytes = maxBodyBytes;
+        this.mTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return the cached document of this package, following a cached index to its shard
+     */
+    @Nullable
+    @WorkerThread
+    SirenManifestCache.Entry getCached(String appDescriptionUrl) {
+        String url = SirenManifestIndex.expandTemplate(appDescriptionUrl, mPackageName);
+        SirenManifestCache.Entry entry = mManifestCache.get(url);
+        String shardUrl = entry != null ? SirenManifestIndex.resolveShardUrl(entry.document, url, mPackageName) : null;
+        return shardUrl != null ? mManifestCache.get(shardUrl) : entry;
+    }
+
+    /**
+     * @param metrics receives the status, phase durations and size of the transfer
+     * @return the document, or null if the request was cancelled or the server answered with an unsuccessful status
+     */
+    @Nullable
+    @WorkerThread
+    SirenManifestDocument load(String appDescriptionUrl, Cancellation cancellation, SirenTransferMetrics metrics) throws IOException, GeneralSecurityException {
+        String url = SirenManifestIndex.expandTemplate(appDescriptionUrl, mPackageName);
+        SirenManifestCache.Entry cachedIndex = mManifestCache.get(url);
+        String shardUrl = null;
+        if (cachedIndex != null && System.currentTimeMillis() - cachedIndex.storedAt <= INDEX_MAX_AGE_MILLIS) {
+            shardUrl = SirenManifestIndex.resolveShardUrl(cachedIndex.document, url, mPackageName);
+        }
+        if (shardUrl == null) {
+            SirenManifestDocument document = download(url, cancellation, metrics);
+            shardUrl = document != null ? SirenManifestIndex.resolveShardUrl(document, url, mPackageName) : null;
+            if (shardUrl == null) {
+                // a regular document, or an index without a shard for this package, which fails to parse like any
+                // document that does not describe the package
+                return document;
+            }
+        }
+        return download(shardUrl, cancellation, metrics);
+    }
+
+    /**
+     * Phase durations and sizes are added to {@code metrics}, so an index and its shard are reported together.
+     */
+    @Nullable
+    private SirenManifestDocument download(String appDescriptionUrl, Cancellation cancellation, SirenTransferMetrics metrics) throws IOException, GeneralSecurityException {
+        HttpURLConnection connection = null;
+        boolean keepAlive = false;
+        try {
+            URL url = new URL(appDescriptionUrl);
+            SirenManifestCache.Entry cached = mManifestCache.get(appDescriptionUrl);
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("GET");
+            // HttpURLConnection's own cache is usually not installed; validators are handled by SirenManifestCache
+            connection.setUseCaches(false);
+            connection.setAllowUserInteraction(false);
+            connection.setConnectTimeout(mTimeoutMillis);
+            connection.setReadTimeout(mTimeoutMillis);
+            // setting Accept-Encoding ourselves turns off the platform's transparent gzip, so the body is inflated below
+            connection.setRequestProperty(Constants.HEADER_ACCEPT_ENCODING, Constants.ENCODING_GZIP);
+            connection.setRequestProperty(Constants.HEADER_ACCEPT,
+                    SirenManifestDocument.BINARY_CONTENT_TYPE + ", " + SirenManifestDocument.JSON_CONTENT_TYPE + ";q=0.9");
+            if (cached != null) {
+                if (cached.eTag != null) {
+                    connection.setRequestProperty(Constants.HEADER_IF_NONE_MATCH, cached.eTag);
+                }
+                if (cached.lastModified != null) {
+                    connection.setRequestProperty(Constants.HEADER_IF_MODIFIED_SINCE, cached.lastModified);
+                }
+            }
+            if ("https".equalsIgnoreCase(url.getProtocol())) {
+                // the shared factory keeps TLS sessions and pooled connections usable across checks
+                ((HttpsURLConnection)connection).setSSLSocketFactory(TLSSocketFactory.getSharedInstance());
+            }
+            cancellation.onConnect(connection);
+            TLSSocketFactory.takeLastHandshake();
+            long connectStart = System.nanoTime();
+            connection.connect();
+            long connected = System.nanoTime();
+            // no handshake means a pooled connection was reused, or the platform did its own layering
+            TLSSocketFactory.Handshake handshake = TLSSocketFactory.takeLastHandshake();
+            if (handshake != null) {
+                metrics.connectNanos += handshake.startedAtNanos - connectStart;
+                metrics.tlsNanos += connected - handshake.startedAtNanos;
+                metrics.tlsSessionResumed = handshake.isSessionResumed();
+            } else {
+                metrics.connectNanos += connected - connectStart;
+            }
+            int status = connection.getResponseCode();
+            long responded = System.nanoTime();
+            metrics.firstByteNanos += responded - connected;
+            metrics.httpStatus = status;
+
+            switch (status) {
+                case HttpURLConnection.HTTP_NOT_MODIFIED:
+                    if (cached != null) {
+                        metrics.source = SirenCheckMetrics.Source.NOT_MODIFIED;
+                        mManifestCache.touch(appDescriptionUrl, cached);
+                        keepAlive = releaseConnection(connection);
+                        return cached.document;
+                    }
+                    break;
+                case 200:
+                case 201:
+                    metrics.source = SirenCheckMetrics.Source.NETWORK;
+                    // getContentLength() is -1 when the length is unknown or does not fit an int
+                    int contentLength = connection.getContentLength();
+                    if (contentLength > mMaxBodyBytes) {
+                        throw new SirenDocumentTooLargeException(appDescriptionUrl, mMaxBodyBytes);
+                    }
+                    boolean gzip = Constants.ENCODING_GZIP.equalsIgnoreCase(connection.getHeaderField(Constants.HEADER_CONTENT_ENCODING));
+                    CountingInputStream counted = new CountingInputStream(connection.getInputStream());
+                    InputStream in = gzip ? new GZIPInputStream(counted) : counted;
+                    int expectedLength = contentLength < 0 ? BUFFER_SIZE
+                            : gzip ? (int) Math.min((long) contentLength * GZIP_SIZE_ESTIMATE, mMaxBodyBytes) : contentLength;
+                    byte[] body;
+                    try {
+                        body = readBody(in, expectedLength, appDescriptionUrl, cancellation);
+                    } finally {
+                        metrics.bytesTransferred += counted.mCount;
+                    }
+                    if (body == null) {
+                        in.close();
+                        return null;
+                    }
+                    // a fully read and closed response leaves the connection in the keep-alive pool
+                    in.close();
+                    keepAlive = true;
+                    metrics.downloadNanos += System.nanoTime() - responded;
+                    SirenManifestDocument document = new SirenManifestDocument(body,
+                            SirenManifestDocument.isBinaryContentType(connection.getContentType()));
+                    if (describesPackage(document, appDescriptionUrl)) {
+                        mManifestCache.put(appDescriptionUrl, document,
+                                connection.getHeaderField(Constants.HEADER_ETAG),
+                                connection.getHeaderField(Constants.HEADER_LAST_MODIFIED));
+                    }
+                    return document;
+                default: /* ignore unsuccessful results */
+                    metrics.retryAfterMillis = SirenBackoff.parseRetryAfter(connection.getHeaderField(Constants.HEADER_RETRY_AFTER),
+                            System.currentTimeMillis());
+            }
+        } finally {
+            if (connection != null && !keepAlive) {
+                connection.disconnect();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the whole body straight into one array, sized for {@code expectedLength} bytes, so that a body with a
+     * correct Content-Length is neither copied nor resized
+     *
+     * @return the body, or null if the request was cancelled
+     * @throws SirenDocumentTooLargeException as soon as the body grows beyond the maximum size
+     */
+    @Nullable
+    private byte[] readBody(InputStream in, int expectedLength, String url, Cancellation cancellation) throws IOException {
+        int maxBytes = mMaxBodyBytes;
+        byte[] body = new byte[Math.max(1, Math.min(expectedLength, maxBytes))];
+        int length = 0;
+        while (true) {
+            if (length == body.length) {
+                // a full buffer is often the whole body; only grow it when there is more
+                int next = in.read();
+                if (next == -1) {
+                    return body;
+                }
+                if (length == maxBytes) {
+                    throw new SirenDocumentTooLargeException(url, maxBytes);
+                }
+                body = Arrays.copyOf(body, (int) Math.min((long) length * 2, maxBytes));
+                body[length++] = (byte) next;
+                continue;
+            }
+            int read = in.read(body, length, body.length - length);
+            if (read == -1) {
+                return length == body.length ? body : Arrays.copyOf(body, length);
+            }
+            if (cancellation.isCancelled()) {
+                return null;
+            }
+            length += read;
+        }
+    }
+
+    /**
+     * Closes the empty body of a 304 so the connection can be pooled
+     *
+     * @return false if the connection has to be disconnected instead
+     */
+    private static boolean releaseConnection(HttpURLConnection connection) {
+        try {
+            connection.getInputStream().close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return true if a document returned by {@link #load} describes this package
+     */
+    boolean isUsable(@Nullable SirenManifestDocument document) {
+        return document != null && !document.isEmpty() && !SirenManifestIndex.isIndex(document) && parses(document);
+    }
+
+    private boolean describesPackage(SirenManifestDocument document, String url) {
+        if (SirenManifestIndex.isIndex(document)) {
+            return SirenManifestIndex.resolveShardUrl(document, url, mPackageName) != null;
+        }
+        return parses(document);
+    }
+
+    private boolean parses(SirenManifestDocument document) {
+        try {
+            document.parse(mPackageName);
+            return true;
+        } catch (JSONException e) {
+            return false;
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,559 @@
+package com.eggheadgames.siren;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming reader for the app description document.
+ * <p>
+ * Unlike {@link org.json.JSONObject} it does not build a tree of the whole document: entries of other
+ * packages are skipped character by character without being decoded, only the fields of the matching
+ * package entry are read, and parsing stops as soon as that entry is closed. Heap use therefore does not
+ * grow with the number of packages described in a shared document.
+ */
+final class SirenManifestParser {
+
+    private static final String[] ENTRY_FIELDS = {
+            Constants.JSON_MIN_VERSION_NAME,
+            Constants.JSON_MIN_VERSION_CODE,
+            Constants.JSON_ENABLE_VERSION_CHECK,
+            Constants.JSON_FORCE_ALERT_TYPE,
+            Constants.JSON_UPDATE_URL,
+            Constants.JSON_MIN_CHECK_INTERVAL_MINUTES,
+            Constants.JSON_CHECK_SAMPLE_RATE,
+            Constants.JSON_RULES
+    };
+    private static final int FIELD_MIN_VERSION_NAME = 0;
+    private static final int FIELD_MIN_VERSION_CODE = 1;
+    private static final int FIELD_ENABLE = 2;
+    private static final int FIELD_FORCE = 3;
+    private static final int FIELD_UPDATE_URL = 4;
+    private static final int FIELD_MIN_CHECK_INTERVAL = 5;
+    private static final int FIELD_CHECK_SAMPLE_RATE = 6;
+    private static final int FIELD_RULES = 7;
+
+    private static final String[] RULE_FIELDS = {
+            Constants.JSON_RULE_MIN_SDK,
+            Constants.JSON_RULE_MAX_SDK,
+            Constants.JSON_RULE_COUNTRIES,
+            Constants.JSON_RULE_MIN_INSTALLED_VERSION_CODE,
+            Constants.JSON_RULE_MAX_INSTALLED_VERSION_CODE,
+            Constants.JSON_MIN_VERSION_NAME,
+            Constants.JSON_MIN_VERSION_CODE,
+            Constants.JSON_ENABLE_VERSION_CHECK,
+            Constants.JSON_FORCE_ALERT_TYPE,
+            Constants.JSON_UPDATE_URL
+    };
+    private static final int RULE_MIN_SDK = 0;
+    private static final int RULE_MAX_SDK = 1;
+    private static final int RULE_COUNTRIES = 2;
+    private static final int RULE_MIN_INSTALLED_VERSION_CODE = 3;
+    private static final int RULE_MAX_INSTALLED_VERSION_CODE = 4;
+    private static final int RULE_MIN_VERSION_NAME = 5;
+    private static final int RULE_MIN_VERSION_CODE = 6;
+    private static final int RULE_ENABLE = 7;
+    private static final int RULE_FORCE = 8;
+    private static final int RULE_UPDATE_URL = 9;
+
+    private final String mJson;
+    private final int mLength;
+    private int mPos;
+
+    private SirenManifestParser(String json) {
+        this.mJson = json;
+        this.mLength = json.length();
+    }
+
+    /**
+     * @return the entry of {@code packageName}
+     * @throws JSONException if the document is malformed before the end of the entry, or the package is not described
+     */
+    @NonNull
+    static SirenManifestEntry parse(String json, String packageName) throws JSONException {
+        return new SirenManifestParser(json).readDocument(packageName);
+    }
+
+    /**
+     * @param json the text of a {@value Constants#JSON_RULES} array
+     * @return the rules in document order
+     * @throws JSONException if the rules are malformed
+     */
+    @NonNull
+    static List<SirenRuleIndex.Rule> parseRules(String json) throws JSONException {
+        SirenManifestParser parser = new SirenManifestParser(json);
+        List<SirenRuleIndex.Rule> rules = parser.readRules();
+        if (parser.mPos != parser.mLength) {
+            throw parser.syntaxError("Unexpected text after the rules");
+        }
+        return rules;
+    }
+
+    private SirenManifestEntry readDocument(String packageName) throws JSONException {
+        if (mLength > 0 && mJson.charAt(0) == '\uFEFF') {
+            mPos = 1;
+        }
+        if (nextClean() != '{') {
+            throw syntaxError("A JSONObject text must begin with '{'");
+        }
+        if (peekClean() == '}') {
+            throw new JSONException("field not found");
+        }
+        while (true) {
+            if (nextClean() != '"') {
+                throw syntaxError("Expected a key");
+            }
+            boolean match = readKeyEquals(packageName);
+            if (nextClean() != ':') {
+                throw syntaxError("Expected a ':' after a key");
+            }
+            if (match) {
+                if (peekClean() == 'n') {
+                    // same as JSONObject.isNull()
+                    throw new JSONException("field not found");
+                }
+                return readEntry();
+            }
+            skipValue();
+            char c = nextClean();
+            if (c == '}') {
+                throw new JSONException("field not found");
+            } else if (c != ',') {
+                throw syntaxError("Expected a ',' or '}'");
+            }
+        }
+    }
+
+    private SirenManifestEntry readEntry() throws JSONException {
+        if (nextClean() != '{') {
+            throw syntaxError("Package entry is not a JSONObject");
+        }
+        SirenManifestEntry entry = new SirenManifestEntry();
+        if (peekClean() == '}') {
+            mPos++;
+            return entry;
+        }
+        while (true) {
+            if (nextClean() != '"') {
+                throw syntaxError("Expected a key");
+            }
+            int field = readKeyIndex(ENTRY_FIELDS);
+            if (nextClean() != ':') {
+                throw syntaxError("Expected a ':' after a key");
+            }
+            switch (field) {
+                case FIELD_MIN_VERSION_NAME:
+                    entry.minVersionName = readStringOrToken();
+                    break;
+                case FIELD_MIN_VERSION_CODE:
+                    String code = readStringOrToken();
+                    entry.hasMinVersionCode = code != null;
+                    entry.minVersionCode = code == null ? 0 : toLong(code);
+                    break;
+                case FIELD_ENABLE:
+                    entry.enable = readBoolean(true);
+                    break;
+                case FIELD_FORCE:
+                    entry.force = readBoolean(false);
+                    break;
+                case FIELD_UPDATE_URL:
+                    entry.updateUrl = readStringOrToken();
+                    break;
+                case FIELD_MIN_CHECK_INTERVAL:
+                    String minutes = readStringOrToken();
+                    entry.minCheckIntervalMillis = minutes == null ? 0 : TimeUnit.MINUTES.toMillis(toLong(minutes));
+                    break;
+                case FIELD_CHECK_SAMPLE_RATE:
+                    String rate = readStringOrToken();
+                    entry.checkSampleRate = rate == null ? 1 : toDouble(rate);
+                    break;
+                case FIELD_RULES:
+                    entry.rules = readRulesSection();
+                    break;
+                default:
+                    skipValue();
+                    break;
+            }
+            char c = nextClean();
+            if (c == '}') {
+                return entry;
+            } else if (c != ',') {
+                throw syntaxError("Expected a ',' or '}'");
+            }
+        }
+    }
+
+    /**
+     * Skips the rules array and compiles its text, which is only parsed when it differs from the last one compiled
+     */
+    @Nullable
+    private SirenRuleIndex readRulesSection() throws JSONException {
+        int start = mPos;
+        if (peekClean() == 'n') {
+            readStringOrToken();
+            return null;
+        }
+        skipValue();
+        return SirenRuleIndex.forSource(mJson.substring(start, mPos).trim());
+    }
+
+    private List<SirenRuleIndex.Rule> readRules() throws JSONException {
+        if (nextClean() != '[') {
+            throw syntaxError("Rules are not a JSONArray");
+        }
+        List<SirenRuleIndex.Rule> rules = new ArrayList<>();
+        if (peekClean() == ']') {
+            mPos++;
+            return rules;
+        }
+        while (true) {
+            rules.add(readRule());
+            char c = nextClean();
+            if (c == ']') {
+                return rules;
+            } else if (c != ',') {
+                throw syntaxError("Expected a ',' or ']'");
+            }
+        }
+    }
+
+    private SirenRuleIndex.Rule readRule() throws JSONException {
+        if (nextClean() != '{') {
+            throw syntaxError("Rule is not a JSONObject");
+        }
+        SirenRuleIndex.Rule rule = new SirenRuleIndex.Rule();
+        if (peekClean() == '}') {
+            mPos++;
+            return rule;
+        }
+        while (true) {
+            if (nextClean() != '"') {
+                throw syntaxError("Expected a key");
+            }
+            int field = readKeyIndex(RULE_FIELDS);
+            if (nextClean() != ':') {
+                throw syntaxError("Expected a ':' after a key");
+            }
+            String value;
+            switch (field) {
+                case RULE_MIN_SDK:
+                    value = readStringOrToken();
+                    rule.minSdk = value == null ? Long.MIN_VALUE : toLong(value);
+                    break;
+                case RULE_MAX_SDK:
+                    value = readStringOrToken();
+                    rule.maxSdk = value == null ? Long.MAX_VALUE : toLong(value);
+                    break;
+                case RULE_COUNTRIES:
+                    rule.countries = readCountries();
+                    break;
+                case RULE_MIN_INSTALLED_VERSION_CODE:
+                    value = readStringOrToken();
+                    rule.minInstalledVersionCode = value == null ? Long.MIN_VALUE : toLong(value);
+                    break;
+                case RULE_MAX_INSTALLED_VERSION_CODE:
+                    value = readStringOrToken();
+                    rule.maxInstalledVersionCode = value == null ? Long.MAX_VALUE : toLong(value);
+                    break;
+                case RULE_MIN_VERSION_NAME:
+                    rule.minVersionName = readStringOrToken();
+                    break;
+                case RULE_MIN_VERSION_CODE:
+                    value = readStringOrToken();
+                    rule.hasMinVersionCode = value != null;
+                    rule.minVersionCode = value == null ? 0 : toLong(value);
+                    break;
+                case RULE_ENABLE:
+                    value = readStringOrToken();
+                    rule.enable = value == null ? null : toBoolean(value);
+                    break;
+                case RULE_FORCE:
+                    value = readStringOrToken();
+                    rule.force = value == null ? null : toBoolean(value);
+                    break;
+                case RULE_UPDATE_URL:
+                    rule.updateUrl = readStringOrToken();
+                    break;
+                default:
+                    skipValue();
+                    break;
+            }
+            char c = nextClean();
+            if (c == '}') {
+                return rule;
+            } else if (c != ',') {
+                throw syntaxError("Expected a ',' or '}'");
+            }
+        }
+    }
+
+    /**
+     * @return upper case country codes, or null for a JSON null
+     */
+    @Nullable
+    private String[] readCountries() throws JSONException {
+        char c = nextClean();
+        if (c == 'n') {
+            mPos--;
+            readToken();
+            return null;
+        }
+        if (c != '[') {
+            throw syntaxError("Countries are not a JSONArray");
+        }
+        List<String> countries = new ArrayList<>();
+        if (peekClean() == ']') {
+            mPos++;
+            return new String[0];
+        }
+        while (true) {
+            String country = readStringOrToken();
+            if (country != null) {
+                countries.add(country.toUpperCase(Locale.US));
+            }
+            c = nextClean();
+            if (c == ']') {
+                return countries.toArray(new String[countries.size()]);
+            } else if (c != ',') {
+                throw syntaxError("Expected a ',' or ']'");
+            }
+        }
+    }
+
+    /**
+     * Reads a string, number or literal value.
+     *
+     * @return the value as text or null for a JSON null
+     */
+    @Nullable
+    private String readStringOrToken() throws JSONException {
+        char c = nextClean();
+        if (c == '"') {
+            return readString();
+        }
+        if (c == '{' || c == '[') {
+            throw syntaxError("Expected a value, not a container");
+        }
+        mPos--;
+        String token = readToken();
+        return "null".equals(token) ? null : token;
+    }
+
+    private boolean readBoolean(boolean defaultValue) throws JSONException {
+        String value = readStringOrToken();
+        return value == null ? defaultValue : toBoolean(value);
+    }
+
+    private boolean toBoolean(String value) throws JSONException {
+        if ("true".equalsIgnoreCase(value)) {
+            return true;
+        } else if ("false".equalsIgnoreCase(value)) {
+            return false;
+        }
+        throw syntaxError("Expected a boolean, found " + value);
+    }
+
+    private long toLong(String value) throws JSONException {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            try {
+                return (long) Double.parseDouble(value);
+            } catch (NumberFormatException e2) {
+                throw syntaxError("Expected a number, found " + value);
+            }
+        }
+    }
+
+    private double toDouble(String value) throws JSONException {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw syntaxError("Expected a number, found " + value);
+        }
+    }
+
+    /**
+     * Compares the key that starts at the current position with {@code expected} without decoding it,
+     * and leaves the position after the closing quote.
+     */
+    private boolean readKeyEquals(String expected) throws JSONException {
+        int start = mPos;
+        int end = skipStringBody();
+        int length = end - start;
+        if (length == expected.length() && mJson.regionMatches(start, expected, 0, length)) {
+            return true;
+        }
+        for (int i = start; i < end; i++) {
+            if (mJson.charAt(i) == '\\') {
+                // escaped key: rare enough to decode it
+                mPos = start;
+                return expected.equals(readString());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Field names never need escaping, so an escaped key is treated as unknown.
+     */
+    private int readKeyIndex(String[] keys) throws JSONException {
+        int start = mPos;
+        int end = skipStringBody();
+        int length = end - start;
+        for (int i = 0; i < keys.length; i++) {
+            if (length == keys[i].length() && mJson.regionMatches(start, keys[i], 0, length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skips over a string whose opening quote has been consumed.
+     *
+     * @return position of the closing quote
+     */
+    private int skipStringBody() throws JSONException {
+        while (mPos < mLength) {
+            char c = mJson.charAt(mPos++);
+            if (c == '"') {
+                return mPos - 1;
+            } else if (c == '\\') {
+                mPos++;
+            }
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    private String readString() throws JSONException {
+        StringBuilder sb = null;
+        int start = mPos;
+        while (mPos < mLength) {
+            char c = mJson.charAt(mPos++);
+            if (c == '"') {
+                if (sb == null) {
+                    return mJson.substring(start, mPos - 1);
+                }
+                sb.append(mJson, start, mPos - 1);
+                return sb.toString();
+            } else if (c == '\\') {
+                if (sb == null) {
+                    sb = new StringBuilder();
+                }
+                sb.append(mJson, start, mPos - 1);
+                sb.append(readEscape());
+                start = mPos;
+            }
+        }
+        throw syntaxError("Unterminated string");
+    }
+
+    private char readEscape() throws JSONException {
+        if (mPos >= mLength) {
+            throw syntaxError("Unterminated escape sequence");
+        }
+        char c = mJson.charAt(mPos++);
+        switch (c) {
+            case 'b': return '\b';
+            case 't': return '\t';
+            case 'n': return '\n';
+            case 'f': return '\f';
+            case 'r': return '\r';
+            case 'u':
+                if (mPos + 4 > mLength) {
+                    throw syntaxError("Unterminated escape sequence");
+                }
+                try {
+                    char unicode = (char) Integer.parseInt(mJson.substring(mPos, mPos + 4), 16);
+                    mPos += 4;
+                    return unicode;
+                } catch (NumberFormatException e) {
+                    throw syntaxError("Illegal escape");
+                }
+            case '"':
+            case '\\':
+            case '/':
+                return c;
+            default:
+                throw syntaxError("Illegal escape");
+        }
+    }
+
+    private String readToken() throws JSONException {
+        int start = mPos;
+        while (mPos < mLength && !isDelimiter(mJson.charAt(mPos))) {
+            mPos++;
+        }
+        if (start == mPos) {
+            throw syntaxError("Missing value");
+        }
+        return mJson.substring(start, mPos);
+    }
+
+    private void skipValue() throws JSONException {
+        char c = nextClean();
+        if (c == '"') {
+            skipStringBody();
+        } else if (c == '{' || c == '[') {
+            skipContainer();
+        } else {
+            int start = --mPos;
+            while (mPos < mLength && !isDelimiter(mJson.charAt(mPos))) {
+                mPos++;
+            }
+            if (start == mPos) {
+                throw syntaxError("Missing value");
+            }
+        }
+    }
+
+    /**
+     * Skips a nested object or array whose opening bracket has been consumed.
+     */
+    private void skipContainer() throws JSONException {
+        int depth = 1;
+        while (mPos < mLength) {
+            char c = mJson.charAt(mPos++);
+            if (c == '"') {
+                skipStringBody();
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if ((c == '}' || c == ']') && --depth == 0) {
+                return;
+            }
+        }
+        throw syntaxError("Unterminated container");
+    }
+
+    private char nextClean() throws JSONException {
+        char c = peekClean();
+        mPos++;
+        return c;
+    }
+
+    private char peekClean() throws JSONException {
+        while (mPos < mLength) {
+            char c = mJson.charAt(mPos);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+            mPos++;
+        }
+        throw syntaxError("Unexpected end of document");
+    }
+
+    private static boolean isDelimiter(char c) {
+        return c == ',' || c == '}' || c == ']' || c == ':' || c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at character " + mPos);
+    }
+}
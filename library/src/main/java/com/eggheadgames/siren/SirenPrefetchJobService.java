@@ -0,0 +1,101 @@
+package com.eggheadgames.siren;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.PersistableBundle;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically downloads the app description document so that {@link Siren#checkVersion} can decide
+ * from the cached copy without waiting for the network.
+ */
+public class SirenPrefetchJobService extends JobService {
+
+    /**
+     * JobScheduler requires periodic jobs to run at most every 15 minutes
+     */
+    static final long MIN_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    private SirenCheckHandle mHandle;
+
+    /**
+     * Schedules the periodic download, keeping the existing schedule if it already downloads the same URL as often.
+     *
+     * @return the interval the job was scheduled with
+     */
+    static long schedule(Context context, String appDescriptionUrl, long intervalMillis) {
+        long interval = Math.max(intervalMillis, MIN_INTERVAL_MILLIS);
+        JobScheduler jobScheduler = getJobScheduler(context);
+        JobInfo pending = findPendingJob(jobScheduler);
+        if (pending != null && pending.getIntervalMillis() == interval
+                && appDescriptionUrl.equals(pending.getExtras().getString(Constants.PREFETCH_EXTRA_URL))) {
+            return interval;
+        }
+
+        PersistableBundle extras = new PersistableBundle();
+        extras.putString(Constants.PREFETCH_EXTRA_URL, appDescriptionUrl);
+        JobInfo jobInfo = new JobInfo.Builder(Constants.PREFETCH_JOB_ID, new ComponentName(context, SirenPrefetchJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setPeriodic(interval)
+                .setExtras(extras)
+                .build();
+        if (jobScheduler.schedule(jobInfo) != JobScheduler.RESULT_SUCCESS) {
+            SirenHelper.getInstance().logError(SirenPrefetchJobService.class.getSimpleName(), "Unable to schedule the app description prefetch");
+        }
+        return interval;
+    }
+
+    static void cancel(Context context) {
+        getJobScheduler(context).cancel(Constants.PREFETCH_JOB_ID);
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        String appDescriptionUrl = params.getExtras().getString(Constants.PREFETCH_EXTRA_URL);
+        if (SirenHelper.getInstance().isEmpty(appDescriptionUrl)) {
+            return false;
+        }
+        // the loader validates the document and only caches it if it describes this app
+        mHandle = SirenHelper.getInstance().getManifestFetcher(this).fetch(appDescriptionUrl, new SirenFetcher.Callback() {
+            @Override
+            public void onFetched(@Nullable SirenManifestDocument document, SirenTransferMetrics transfer) {
+                jobFinished(params, false);
+            }
+
+            @Override
+            public void onFetchFailed(Exception e, SirenTransferMetrics transfer) {
+                jobFinished(params, true);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        if (mHandle != null) {
+            mHandle.cancel();
+        }
+        return true;
+    }
+
+    private static JobScheduler getJobScheduler(Context context) {
+        return (JobScheduler) context.getApplicationContext().getSystemService(Context.JOB_SCHEDULER_SERVICE);
+    }
+
+    @Nullable
+    private static JobInfo findPendingJob(JobScheduler jobScheduler) {
+        for (JobInfo jobInfo : jobScheduler.getAllPendingJobs()) {
+            if (jobInfo.getId() == Constants.PREFETCH_JOB_ID) {
+                return jobInfo;
+            }
+        }
+        return null;
+    }
+}
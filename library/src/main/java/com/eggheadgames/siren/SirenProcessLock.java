@@ -0,0 +1,146 @@
+package com.eggheadgames.siren;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets the processes of an app take turns downloading the same app description document, with one lock file per
+ * URL next to the {@link SirenManifestCache cached documents}. The process holding the lock downloads and stores the
+ * document; the others wait for it and then read the stored copy instead of downloading it again. The
+ * {@link SirenSharedState shared state} is read and written under a lock of its own.
+ * <p>
+ * File locks are held per process, so threads of the same process also wait for each other here before asking
+ * for the file lock, whichever instance they use. The operating system releases the lock of a process that dies while
+ * holding it. A process that holds the lock for longer than a download may take is not waited for.
+ */
+class SirenProcessLock {
+
+    /**
+     * How long to wait for the lock, as long as a download may take
+     */
+    static final long TIMEOUT_MILLIS = SirenManifestLoader.TIMEOUT_MILLIS;
+    private static final long POLL_MILLIS = 50;
+
+    /**
+     * Paths of the lock files held by this process
+     */
+    private static final Set<String> sHeld = new HashSet<>();
+
+    private final File mDirectory;
+    private final long mTimeoutMillis;
+
+    SirenProcessLock(File directory) {
+        this(directory, TIMEOUT_MILLIS);
+    }
+
+    SirenProcessLock(File directory, long timeoutMillis) {
+        this.mDirectory = directory;
+        this.mTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Waits until no other process or thread holds the lock for {@code key}, e.g. the URL of a document.
+     *
+     * @return the held lock, or null if the wait was interrupted or timed out or the lock file can't be used; the
+     * caller then goes on without coordinating
+     */
+    @Nullable
+    @WorkerThread
+    Held acquire(String key) {
+        File lockFile = new File(mDirectory, Integer.toHexString(key.hashCode()) + ".lock");
+        String name = lockFile.getAbsolutePath();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mTimeoutMillis);
+        synchronized (sHeld) {
+            try {
+                while (sHeld.contains(name)) {
+                    long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remainingMillis <= 0) {
+                        return null;
+                    }
+                    sHeld.wait(remainingMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            sHeld.add(name);
+        }
+        RandomAccessFile file = null;
+        try {
+            if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+                throw new IOException("Can't create " + mDirectory);
+            }
+            file = new RandomAccessFile(lockFile, "rw");
+            // polled, as lock() waits for good on a process that hangs while holding it
+            FileLock lock = file.getChannel().tryLock();
+            while (lock == null) {
+                if (System.nanoTime() - deadline >= 0) {
+                    closeQuietly(file);
+                    release(name);
+                    return null;
+                }
+                Thread.sleep(POLL_MILLIS);
+                lock = file.getChannel().tryLock();
+            }
+            return new Held(name, file, lock);
+        } catch (IOException e) {
+            e.printStackTrace();
+            closeQuietly(file);
+            release(name);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            closeQuietly(file);
+            release(name);
+            return null;
+        }
+    }
+
+    private static void release(String name) {
+        synchronized (sHeld) {
+            sHeld.remove(name);
+            sHeld.notifyAll();
+        }
+    }
+
+    private static void closeQuietly(@Nullable RandomAccessFile file) {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException ignored) {
+                // nothing to do
+            }
+        }
+    }
+
+    static final class Held {
+        private final String mName;
+        private final RandomAccessFile mFile;
+        private final FileLock mLock;
+
+        private Held(String name, RandomAccessFile file, FileLock lock) {
+            this.mName = name;
+            this.mFile = file;
+            this.mLock = lock;
+        }
+
+        void release() {
+            try {
+                mLock.release();
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                closeQuietly(mFile);
+                SirenProcessLock.release(mName);
+            }
+        }
+    }
+}
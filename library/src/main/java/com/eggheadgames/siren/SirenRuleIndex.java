@@ -0,0 +1,229 @@
+package com.eggheadgames.siren;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The {@value Constants#JSON_RULES} section of a package entry, compiled for lookups by the device's fixed attributes:
+ * API level, country and installed version code.
+ * <p>
+ * Every attribute maps to a bit set of the rules it satisfies; for version ranges the boundaries of all rules cut the
+ * number line into segments, found by binary search. Matching ANDs the three sets word by word and takes the lowest
+ * bit, so a lookup costs a few array reads per 64 rules instead of a scan over every rule's conditions.
+ * <p>
+ * Compiling is done once per rules section: the last compiled section is kept and reused while the document sends
+ * the same rules.
+ */
+final class SirenRuleIndex {
+
+    /**
+     * Conditions and overrides of a single rule. Conditions that are not set match every device, overrides that are
+     * not set keep the value of the package entry.
+     */
+    static final class Rule {
+        long minSdk = Long.MIN_VALUE;
+        long maxSdk = Long.MAX_VALUE;
+        @Nullable String[] countries;
+        long minInstalledVersionCode = Long.MIN_VALUE;
+        long maxInstalledVersionCode = Long.MAX_VALUE;
+
+        @Nullable String minVersionName;
+        boolean hasMinVersionCode;
+        long minVersionCode;
+        @Nullable Boolean enable;
+        @Nullable Boolean force;
+        @Nullable String updateUrl;
+
+        void applyTo(SirenManifestEntry entry) {
+            if (minVersionName != null) {
+                entry.minVersionName = minVersionName;
+            }
+            if (hasMinVersionCode) {
+                entry.hasMinVersionCode = true;
+                entry.minVersionCode = minVersionCode;
+            }
+            if (enable != null) {
+                entry.enable = enable;
+            }
+            if (force != null) {
+                entry.force = force;
+            }
+            if (updateUrl != null) {
+                entry.updateUrl = updateUrl;
+            }
+        }
+    }
+
+    private static final Object sLock = new Object();
+    @Nullable private static String sLastSource;
+    @Nullable private static SirenRuleIndex sLastIndex;
+
+    private final Rule[] mRules;
+    private final RangeIndex mSdkIndex;
+    private final RangeIndex mVersionCodeIndex;
+    private final Map<String, long[]> mCountryIndex;
+    private final long[] mAnyCountry;
+
+    private SirenRuleIndex(Rule[] rules) {
+        this.mRules = rules;
+        int words = (rules.length + 63) / 64;
+        long[] minSdks = new long[rules.length];
+        long[] maxSdks = new long[rules.length];
+        long[] minVersionCodes = new long[rules.length];
+        long[] maxVersionCodes = new long[rules.length];
+        mAnyCountry = new long[words];
+        mCountryIndex = new HashMap<>();
+        for (int i = 0; i < rules.length; i++) {
+            Rule rule = rules[i];
+            minSdks[i] = rule.minSdk;
+            maxSdks[i] = rule.maxSdk;
+            minVersionCodes[i] = rule.minInstalledVersionCode;
+            maxVersionCodes[i] = rule.maxInstalledVersionCode;
+            if (rule.countries == null) {
+                setBit(mAnyCountry, i);
+            } else {
+                for (String country : rule.countries) {
+                    long[] bits = mCountryIndex.get(country);
+                    if (bits == null) {
+                        bits = new long[words];
+                        mCountryIndex.put(country, bits);
+                    }
+                    setBit(bits, i);
+                }
+            }
+        }
+        // rules without countries apply in every country
+        for (long[] bits : mCountryIndex.values()) {
+            for (int w = 0; w < words; w++) {
+                bits[w] |= mAnyCountry[w];
+            }
+        }
+        mSdkIndex = new RangeIndex(minSdks, maxSdks, words);
+        mVersionCodeIndex = new RangeIndex(minVersionCodes, maxVersionCodes, words);
+    }
+
+    /**
+     * @param source the text of the rules array, as sent by the server
+     * @return the compiled rules, reused if {@code source} did not change since the last call
+     * @throws JSONException if the rules are malformed
+     */
+    @NonNull
+    static SirenRuleIndex forSource(String source) throws JSONException {
+        synchronized (sLock) {
+            if (sLastIndex != null && source.equals(sLastSource)) {
+                return sLastIndex;
+            }
+        }
+        SirenRuleIndex index = compile(SirenManifestParser.parseRules(source));
+        synchronized (sLock) {
+            sLastSource = source;
+            sLastIndex = index;
+        }
+        return index;
+    }
+
+    @NonNull
+    static SirenRuleIndex compile(List<Rule> rules) {
+        return new SirenRuleIndex(rules.toArray(new Rule[rules.size()]));
+    }
+
+    int size() {
+        return mRules.length;
+    }
+
+    /**
+     * @param country ISO 3166 country code, case is ignored
+     * @return the first rule, in document order, that matches the device, or null
+     */
+    @Nullable
+    Rule match(int sdk, String country, long installedVersionCode) {
+        long[] sdkBits = mSdkIndex.get(sdk);
+        long[] versionCodeBits = mVersionCodeIndex.get(installedVersionCode);
+        long[] countryBits = mCountryIndex.get(country.toUpperCase(Locale.US));
+        if (countryBits == null) {
+            countryBits = mAnyCountry;
+        }
+        for (int w = 0; w < sdkBits.length; w++) {
+            long bits = sdkBits[w] & versionCodeBits[w] & countryBits[w];
+            if (bits != 0) {
+                return mRules[w * 64 + Long.numberOfTrailingZeros(bits)];
+            }
+        }
+        return null;
+    }
+
+    private static void setBit(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << (index & 63);
+    }
+
+    /**
+     * Rules satisfied by each segment between consecutive range boundaries
+     */
+    private static final class RangeIndex {
+        /**
+         * Segment i starts at mStarts[i - 1], segment 0 at Long.MIN_VALUE
+         */
+        private final long[] mStarts;
+        private final long[][] mSegments;
+
+        RangeIndex(long[] mins, long[] maxes, int words) {
+            long[] starts = new long[mins.length * 2];
+            int count = 0;
+            for (int i = 0; i < mins.length; i++) {
+                if (mins[i] != Long.MIN_VALUE) {
+                    starts[count++] = mins[i];
+                }
+                if (maxes[i] != Long.MAX_VALUE) {
+                    starts[count++] = maxes[i] + 1;
+                }
+            }
+            Arrays.sort(starts, 0, count);
+            int unique = 0;
+            for (int i = 0; i < count; i++) {
+                if (unique == 0 || starts[i] != starts[unique - 1]) {
+                    starts[unique++] = starts[i];
+                }
+            }
+            mStarts = Arrays.copyOf(starts, unique);
+            mSegments = new long[unique + 1][words];
+            for (int i = 0; i < mins.length; i++) {
+                if (mins[i] > maxes[i]) {
+                    continue;
+                }
+                int last = segmentOf(maxes[i]);
+                for (int segment = segmentOf(mins[i]); segment <= last; segment++) {
+                    setBit(mSegments[segment], i);
+                }
+            }
+        }
+
+        long[] get(long value) {
+            return mSegments[segmentOf(value)];
+        }
+
+        /**
+         * @return the number of boundaries at or below {@code value}
+         */
+        private int segmentOf(long value) {
+            int low = 0;
+            int high = mStarts.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (mStarts[mid] <= value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
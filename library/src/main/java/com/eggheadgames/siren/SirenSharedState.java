@@ -0,0 +1,127 @@
+package com.eggheadgames.siren;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Siren's state in a file next to the {@link SirenManifestCache cached documents}, for apps that run Siren in more
+ * than one process. Every access holds the {@link SirenProcessLock} of the file, and writes replace the file at once.
+ * Preferences are cached per process, so they can't be shared this way.
+ */
+class SirenSharedState {
+
+    static final String FILE_NAME = "state.properties";
+
+    private final File mDirectory;
+    private final SirenProcessLock mLock;
+
+    SirenSharedState(File directory, SirenProcessLock lock) {
+        this.mDirectory = directory;
+        this.mLock = lock;
+    }
+
+    /**
+     * Stores {@code changes}, and every value of {@code current} the file doesn't have yet, e.g. when the first process
+     * shares its state or the system cleared the cache directory.
+     *
+     * @return the state of all processes, or null if the file can't be read; the caller then keeps its own state
+     */
+    @Nullable
+    @WorkerThread
+    Properties sync(Map<String, String> changes, Map<String, String> current) {
+        SirenProcessLock.Held held = mLock.acquire(FILE_NAME);
+        try {
+            Properties state = read();
+            if (state == null) {
+                return null;
+            }
+            boolean changed = false;
+            for (Map.Entry<String, String> value : current.entrySet()) {
+                if (!state.containsKey(value.getKey()) && !changes.containsKey(value.getKey())) {
+                    state.setProperty(value.getKey(), value.getValue());
+                    changed = true;
+                }
+            }
+            for (Map.Entry<String, String> change : changes.entrySet()) {
+                changed |= !change.getValue().equals(state.setProperty(change.getKey(), change.getValue()));
+            }
+            if (changed) {
+                write(state);
+            }
+            return state;
+        } finally {
+            if (held != null) {
+                held.release();
+            }
+        }
+    }
+
+    @Nullable
+    private Properties read() {
+        Properties state = new Properties();
+        File file = new File(mDirectory, FILE_NAME);
+        if (!file.exists()) {
+            return state;
+        }
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(file));
+            state.load(in);
+            return state;
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void write(Properties state) {
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            return;
+        }
+        File temp = null;
+        OutputStream out = null;
+        try {
+            temp = File.createTempFile(FILE_NAME, ".tmp", mDirectory);
+            out = new BufferedOutputStream(new FileOutputStream(temp));
+            state.store(out, null);
+            out.close();
+            out = null;
+            if (!temp.renameTo(new File(mDirectory, FILE_NAME))) {
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (temp != null) {
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+            }
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+                // nothing to do
+            }
+        }
+    }
+}
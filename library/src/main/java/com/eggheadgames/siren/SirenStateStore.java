@@ -0,0 +1,367 @@
+package com.eggheadgames.siren;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Siren's own persisted state, kept in a small dedicated preferences file instead of the host app's default one.
+ * <p>
+ * Values are read from an in-memory copy. Writes update the copy and schedule one background flush;
+ * writes that happen before the flush runs are saved by that same flush. Only the values that were written are saved,
+ * and with a {@link SirenSharedState} they are also shared with the other processes of the app.
+ */
+class SirenStateStore implements SirenBackoff.Store {
+
+    interface BackgroundRunner {
+        /**
+         * @return false if the work could not be scheduled
+         */
+        boolean runInBackground(Runnable runnable);
+    }
+
+    interface LegacyPreferences {
+        /**
+         * @return the preferences older versions of the library wrote to; only asked for until their values are moved
+         */
+        SharedPreferences get();
+    }
+
+    private static final List<String> KEYS = Arrays.asList(Constants.PREFERENCES_LAST_CHECK_DATE,
+            Constants.PREFERENCES_SKIPPED_VERSION, Constants.PREFERENCES_CONSECUTIVE_FAILURES,
+            Constants.PREFERENCES_NEXT_ATTEMPT_AT, Constants.PREFERENCES_INSTALL_SEED,
+            Constants.PREFERENCES_MIN_CHECK_INTERVAL, Constants.PREFERENCES_CHECK_SAMPLE_RATE);
+
+    private final SharedPreferences mPreferences;
+    private final BackgroundRunner mBackgroundRunner;
+    private final AtomicBoolean mFlushScheduled = new AtomicBoolean();
+
+    /**
+     * Keys written since the last flush; guards the values, so reading the shared state never replaces one that is not saved yet
+     */
+    private final Set<String> mChanged = new HashSet<>();
+    @Nullable private volatile SirenSharedState mSharedState;
+
+    private volatile long mLastCheckDate;
+    private volatile String mSkippedVersion;
+    private volatile int mConsecutiveFailures;
+    private volatile long mNextAttemptAt;
+    private volatile long mInstallSeed;
+    private volatile long mMinCheckIntervalMillis;
+    private volatile float mCheckSampleRate;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            mFlushScheduled.set(false);
+            flush();
+        }
+    };
+
+    /**
+     * Loads the state, moving values written by older versions of the library out of the {@code legacyPreferences} on first use.
+     */
+    @WorkerThread
+    SirenStateStore(SharedPreferences preferences, LegacyPreferences legacyPreferences, BackgroundRunner backgroundRunner) {
+        this.mPreferences = preferences;
+        this.mBackgroundRunner = backgroundRunner;
+        if (!preferences.getBoolean(Constants.PREFERENCES_MIGRATED, false)) {
+            migrate(legacyPreferences.get());
+        }
+        mLastCheckDate = preferences.getLong(Constants.PREFERENCES_LAST_CHECK_DATE, 0);
+        mSkippedVersion = preferences.getString(Constants.PREFERENCES_SKIPPED_VERSION, "");
+        mConsecutiveFailures = preferences.getInt(Constants.PREFERENCES_CONSECUTIVE_FAILURES, 0);
+        mNextAttemptAt = preferences.getLong(Constants.PREFERENCES_NEXT_ATTEMPT_AT, 0);
+        mMinCheckIntervalMillis = preferences.getLong(Constants.PREFERENCES_MIN_CHECK_INTERVAL, 0);
+        mCheckSampleRate = preferences.getFloat(Constants.PREFERENCES_CHECK_SAMPLE_RATE, 1);
+        if (preferences.contains(Constants.PREFERENCES_INSTALL_SEED)) {
+            mInstallSeed = preferences.getLong(Constants.PREFERENCES_INSTALL_SEED, 0);
+        } else {
+            mInstallSeed = new Random().nextLong();
+            preferences.edit().putLong(Constants.PREFERENCES_INSTALL_SEED, mInstallSeed).apply();
+        }
+    }
+
+    long getLastCheckDate() {
+        return mLastCheckDate;
+    }
+
+    void setLastCheckDate(long lastCheckDate) {
+        synchronized (mChanged) {
+            mLastCheckDate = lastCheckDate;
+            mChanged.add(Constants.PREFERENCES_LAST_CHECK_DATE);
+        }
+        scheduleFlush();
+    }
+
+    @NonNull
+    String getSkippedVersion() {
+        return mSkippedVersion;
+    }
+
+    void setSkippedVersion(@NonNull String skippedVersion) {
+        synchronized (mChanged) {
+            mSkippedVersion = skippedVersion;
+            mChanged.add(Constants.PREFERENCES_SKIPPED_VERSION);
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * @return random number chosen on first use, which places this install's checks within their interval; the
+     * processes of an app sharing their state use the one chosen first
+     */
+    long getInstallSeed() {
+        return mInstallSeed;
+    }
+
+    /**
+     * @return shortest time between checks that the last app description document asked for
+     */
+    long getMinCheckIntervalMillis() {
+        return mMinCheckIntervalMillis;
+    }
+
+    /**
+     * @return fraction of installs that the last app description document asked to check in each interval
+     */
+    float getCheckSampleRate() {
+        return mCheckSampleRate;
+    }
+
+    void setCheckPolicy(long minCheckIntervalMillis, float checkSampleRate) {
+        synchronized (mChanged) {
+            if (minCheckIntervalMillis == mMinCheckIntervalMillis && checkSampleRate == mCheckSampleRate) {
+                return;
+            }
+            mMinCheckIntervalMillis = minCheckIntervalMillis;
+            mCheckSampleRate = checkSampleRate;
+            mChanged.add(Constants.PREFERENCES_MIN_CHECK_INTERVAL);
+            mChanged.add(Constants.PREFERENCES_CHECK_SAMPLE_RATE);
+        }
+        scheduleFlush();
+    }
+
+    @Override
+    public int getConsecutiveFailures() {
+        return mConsecutiveFailures;
+    }
+
+    @Override
+    public long getNextAttemptAt() {
+        return mNextAttemptAt;
+    }
+
+    @Override
+    public void setBackoff(int consecutiveFailures, long nextAttemptAt) {
+        synchronized (mChanged) {
+            mConsecutiveFailures = consecutiveFailures;
+            mNextAttemptAt = nextAttemptAt;
+            mChanged.add(Constants.PREFERENCES_CONSECUTIVE_FAILURES);
+            mChanged.add(Constants.PREFERENCES_NEXT_ATTEMPT_AT);
+        }
+        scheduleFlush();
+    }
+
+    boolean isShared() {
+        return mSharedState != null;
+    }
+
+    /**
+     * Shares the state with the other processes of the app, or stops sharing it with null, and takes over what they
+     * saved. The first process to share its state provides the values the others don't have yet.
+     */
+    @WorkerThread
+    synchronized void reload(@Nullable SirenSharedState sharedState) {
+        mSharedState = sharedState;
+        if (sharedState != null) {
+            Properties state = sharedState.sync(Collections.<String, String>emptyMap(), values(KEYS));
+            if (state != null) {
+                adopt(state);
+            }
+        }
+    }
+
+    private void migrate(SharedPreferences legacyPreferences) {
+        SharedPreferences.Editor editor = mPreferences.edit();
+        if (legacyPreferences.contains(Constants.PREFERENCES_LAST_CHECK_DATE)) {
+            editor.putLong(Constants.PREFERENCES_LAST_CHECK_DATE, legacyPreferences.getLong(Constants.PREFERENCES_LAST_CHECK_DATE, 0));
+        }
+        if (legacyPreferences.contains(Constants.PREFERENCES_SKIPPED_VERSION)) {
+            editor.putString(Constants.PREFERENCES_SKIPPED_VERSION, legacyPreferences.getString(Constants.PREFERENCES_SKIPPED_VERSION, ""));
+        }
+        editor.putBoolean(Constants.PREFERENCES_MIGRATED, true).commit();
+        legacyPreferences.edit()
+                .remove(Constants.PREFERENCES_LAST_CHECK_DATE)
+                .remove(Constants.PREFERENCES_SKIPPED_VERSION)
+                .apply();
+    }
+
+    private void scheduleFlush() {
+        if (mFlushScheduled.compareAndSet(false, true) && !mBackgroundRunner.runInBackground(mFlush)) {
+            mFlushScheduled.set(false);
+            // setters are called from the main thread too, apply() leaves the disk write to the preferences' own thread;
+            // the shared state is locked and written by the next flush instead
+            SharedPreferences.Editor editor = mPreferences.edit();
+            synchronized (mChanged) {
+                put(editor, mChanged);
+                if (mSharedState == null) {
+                    mChanged.clear();
+                }
+            }
+            editor.apply();
+        }
+    }
+
+    private synchronized void flush() {
+        Set<String> changed;
+        synchronized (mChanged) {
+            if (mChanged.isEmpty()) {
+                return;
+            }
+            changed = new HashSet<>(mChanged);
+            mChanged.clear();
+        }
+        SharedPreferences.Editor editor = mPreferences.edit();
+        put(editor, changed);
+        editor.commit();
+        SirenSharedState sharedState = mSharedState;
+        if (sharedState != null) {
+            Properties state = sharedState.sync(values(changed), values(KEYS));
+            if (state != null) {
+                adopt(state);
+            }
+        }
+    }
+
+    /**
+     * Takes over the values saved by other processes, except those written here and not saved yet
+     */
+    private void adopt(Properties state) {
+        SharedPreferences.Editor editor = mPreferences.edit();
+        synchronized (mChanged) {
+            Set<String> adopted = new HashSet<>();
+            for (String key : KEYS) {
+                String value = state.getProperty(key);
+                if (value != null && !mChanged.contains(key) && !value.equals(valueOf(key)) && setValue(key, value)) {
+                    adopted.add(key);
+                }
+            }
+            if (adopted.isEmpty()) {
+                return;
+            }
+            // kept in the preferences too, e.g. for the same install seed if the app stops sharing the state
+            put(editor, adopted);
+        }
+        editor.apply();
+    }
+
+    private Map<String, String> values(Collection<String> keys) {
+        Map<String, String> values = new HashMap<>();
+        for (String key : keys) {
+            values.put(key, valueOf(key));
+        }
+        return values;
+    }
+
+    private String valueOf(String key) {
+        switch (key) {
+            case Constants.PREFERENCES_LAST_CHECK_DATE:
+                return String.valueOf(mLastCheckDate);
+            case Constants.PREFERENCES_SKIPPED_VERSION:
+                return mSkippedVersion;
+            case Constants.PREFERENCES_CONSECUTIVE_FAILURES:
+                return String.valueOf(mConsecutiveFailures);
+            case Constants.PREFERENCES_NEXT_ATTEMPT_AT:
+                return String.valueOf(mNextAttemptAt);
+            case Constants.PREFERENCES_INSTALL_SEED:
+                return String.valueOf(mInstallSeed);
+            case Constants.PREFERENCES_MIN_CHECK_INTERVAL:
+                return String.valueOf(mMinCheckIntervalMillis);
+            case Constants.PREFERENCES_CHECK_SAMPLE_RATE:
+                return String.valueOf(mCheckSampleRate);
+            default:
+                throw new IllegalArgumentException(key);
+        }
+    }
+
+    /**
+     * @return false if {@code value} is malformed
+     */
+    private boolean setValue(String key, String value) {
+        try {
+            switch (key) {
+                case Constants.PREFERENCES_LAST_CHECK_DATE:
+                    mLastCheckDate = Long.parseLong(value);
+                    return true;
+                case Constants.PREFERENCES_SKIPPED_VERSION:
+                    mSkippedVersion = value;
+                    return true;
+                case Constants.PREFERENCES_CONSECUTIVE_FAILURES:
+                    mConsecutiveFailures = Integer.parseInt(value);
+                    return true;
+                case Constants.PREFERENCES_NEXT_ATTEMPT_AT:
+                    mNextAttemptAt = Long.parseLong(value);
+                    return true;
+                case Constants.PREFERENCES_INSTALL_SEED:
+                    mInstallSeed = Long.parseLong(value);
+                    return true;
+                case Constants.PREFERENCES_MIN_CHECK_INTERVAL:
+                    mMinCheckIntervalMillis = Long.parseLong(value);
+                    return true;
+                case Constants.PREFERENCES_CHECK_SAMPLE_RATE:
+                    mCheckSampleRate = Float.parseFloat(value);
+                    return true;
+                default:
+                    return false;
+            }
+        } catch (NumberFormatException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private void put(SharedPreferences.Editor editor, Collection<String> keys) {
+        for (String key : keys) {
+            switch (key) {
+                case Constants.PREFERENCES_LAST_CHECK_DATE:
+                    editor.putLong(key, mLastCheckDate);
+                    break;
+                case Constants.PREFERENCES_SKIPPED_VERSION:
+                    editor.putString(key, mSkippedVersion);
+                    break;
+                case Constants.PREFERENCES_CONSECUTIVE_FAILURES:
+                    editor.putInt(key, mConsecutiveFailures);
+                    break;
+                case Constants.PREFERENCES_NEXT_ATTEMPT_AT:
+                    editor.putLong(key, mNextAttemptAt);
+                    break;
+                case Constants.PREFERENCES_INSTALL_SEED:
+                    editor.putLong(key, mInstallSeed);
+                    break;
+                case Constants.PREFERENCES_MIN_CHECK_INTERVAL:
+                    editor.putLong(key, mMinCheckIntervalMillis);
+                    break;
+                case Constants.PREFERENCES_CHECK_SAMPLE_RATE:
+                    editor.putFloat(key, mCheckSampleRate);
+                    break;
+                default:
+                    throw new IllegalArgumentException(key);
+            }
+        }
+    }
+}
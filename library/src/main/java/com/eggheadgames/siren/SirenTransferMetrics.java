@@ -0,0 +1,34 @@
+package com.eggheadgames.siren;
+
+/**
+ * Network side of a check, filled in by {@link SirenManifestLoader} on the worker thread
+ * and read once the result has been handed to the callback executor.
+ * Checks that share a download share its transfer metrics.
+ */
+final class SirenTransferMetrics {
+    final String url;
+    SirenCheckMetrics.Source source = SirenCheckMetrics.Source.NETWORK;
+    int httpStatus;
+    long connectNanos;
+    long tlsNanos;
+    boolean tlsSessionResumed;
+    long firstByteNanos;
+    long downloadNanos;
+    long bytesTransferred;
+    boolean hedged;
+    /**
+     * The document is an older copy handed out while the server is asked; the revalidated result follows
+     */
+    boolean stale;
+    /**
+     * Retry-After of an unsuccessful response, in milliseconds
+     */
+    long retryAfterMillis;
+    int consecutiveFailures;
+    long nextAttemptAtMillis;
+    boolean circuitOpen;
+
+    SirenTransferMetrics(String url) {
+        this.url = url;
+    }
+}
@@ -0,0 +1,89 @@
+package com.eggheadgames.siren;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Outcome of the latest evaluated version check, as returned by {@link Siren#getUpdateState()}.
+ * Instances are immutable, so they can be read from any thread.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class SirenUpdateState {
+
+    private final SirenCheckDecision mDecision;
+    @Nullable private final String mRequiredVersion;
+    @Nullable private final SirenAlertType mAlertType;
+    @Nullable private final String mUpdateUrl;
+    private final long mEvaluatedAtMillis;
+
+    SirenUpdateState(SirenCheckDecision decision, @Nullable String requiredVersion, @Nullable SirenAlertType alertType,
+                     @Nullable String updateUrl, long evaluatedAtMillis) {
+        this.mDecision = decision;
+        this.mRequiredVersion = requiredVersion;
+        this.mAlertType = alertType;
+        this.mUpdateUrl = updateUrl;
+        this.mEvaluatedAtMillis = evaluatedAtMillis;
+    }
+
+    /**
+     * @return {@link SirenCheckDecision#ALERT_SHOWN} also covers {@link SirenAlertType#NONE}, where no alert is shown
+     */
+    @NonNull
+    public SirenCheckDecision getDecision() {
+        return mDecision;
+    }
+
+    /**
+     * @return true if the installed version is older than the required one, including versions the user chose to skip
+     */
+    public boolean isUpdateAvailable() {
+        return mDecision == SirenCheckDecision.ALERT_SHOWN || mDecision == SirenCheckDecision.SKIPPED;
+    }
+
+    /**
+     * @return the minimum version name, or version code, required by the app description document
+     */
+    @Nullable
+    public String getRequiredVersion() {
+        return mRequiredVersion;
+    }
+
+    /**
+     * @return the alert type for the available update, or null if there is none or the user skipped it
+     */
+    @Nullable
+    public SirenAlertType getAlertType() {
+        return mAlertType;
+    }
+
+    /**
+     * @return true if the user can't continue without updating
+     */
+    public boolean isForced() {
+        return mAlertType == SirenAlertType.FORCE;
+    }
+
+    /**
+     * @return the store URL from the document, or null to open the app's Play Store page
+     */
+    @Nullable
+    public String getUpdateUrl() {
+        return mUpdateUrl;
+    }
+
+    /**
+     * @return wall clock time ({@link System#currentTimeMillis()}) of the evaluation
+     */
+    public long getEvaluatedAtMillis() {
+        return mEvaluatedAtMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "SirenUpdateState{decision=" + mDecision
+                + ", requiredVersion=" + mRequiredVersion
+                + ", alertType=" + mAlertType
+                + ", updateUrl=" + mUpdateUrl
+                + ", evaluatedAtMillis=" + mEvaluatedAtMillis + '}';
+    }
+}
@@ -0,0 +1,115 @@
+package com.eggheadgames.siren;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Version name parsed once into numeric segments: "2.1.0.3" becomes {2, 1, 0, 3}.
+ * <p>
+ * Only the leading digits of a segment are significant ("3-beta" is 3, "rc1" is 0), segments that overflow
+ * an int are clamped, and a missing segment counts as 0, so "1.2" and "1.2.0.0" are equal.
+ * Comparisons do not allocate.
+ */
+final class SirenVersion implements Comparable<SirenVersion> {
+
+    private final String mName;
+    private final int[] mSegments;
+
+    private SirenVersion(String name, int[] segments) {
+        this.mName = name;
+        this.mSegments = segments;
+    }
+
+    @NonNull
+    static SirenVersion parse(@NonNull String name) {
+        int count = 1;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) == '.') {
+                count++;
+            }
+        }
+        int[] segments = new int[count];
+        int segment = 0;
+        boolean leadingDigits = true;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '.') {
+                segment++;
+                leadingDigits = true;
+            } else if (leadingDigits && c >= '0' && c <= '9') {
+                int value = segments[segment];
+                segments[segment] = value > (Integer.MAX_VALUE - 9) / 10 ? Integer.MAX_VALUE : value * 10 + (c - '0');
+            } else {
+                leadingDigits = false;
+            }
+        }
+        return new SirenVersion(name, segments);
+    }
+
+    @NonNull
+    String getName() {
+        return mName;
+    }
+
+    int getSegmentCount() {
+        return mSegments.length;
+    }
+
+    /**
+     * @return the segment at {@code index}, 0 if this version has fewer segments
+     */
+    int getSegment(int index) {
+        return index < mSegments.length ? mSegments[index] : 0;
+    }
+
+    /**
+     * @return index of the most significant segment in which this version is greater than {@code other},
+     * or -1 if this version is not greater than {@code other}
+     */
+    int firstGreaterSegment(@NonNull SirenVersion other) {
+        int count = Math.max(mSegments.length, other.mSegments.length);
+        for (int i = 0; i < count; i++) {
+            int mine = getSegment(i);
+            int theirs = other.getSegment(i);
+            if (mine != theirs) {
+                return mine > theirs ? i : -1;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int compareTo(@NonNull SirenVersion other) {
+        int count = Math.max(mSegments.length, other.mSegments.length);
+        for (int i = 0; i < count; i++) {
+            int mine = getSegment(i);
+            int theirs = other.getSegment(i);
+            if (mine != theirs) {
+                return mine > theirs ? 1 : -1;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SirenVersion && compareTo((SirenVersion) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int last = mSegments.length - 1;
+        while (last > 0 && mSegments[last] == 0) {
+            last--;
+        }
+        int hash = 1;
+        for (int i = 0; i <= last; i++) {
+            hash = 31 * hash + mSegments[i];
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return mName;
+    }
+}
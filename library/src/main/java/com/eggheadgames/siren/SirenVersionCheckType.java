@@ -1,5 +1,7 @@
 package com.eggheadgames.siren;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Determines the frequency in which the the version check is performed
  */
@@ -19,4 +21,11 @@ public enum SirenVersionCheckType {
         return value;
     }
 
+    /**
+     * @return the check interval, 0 for {@link #IMMEDIATELY}
+     */
+    public long getIntervalMillis() {
+        return TimeUnit.DAYS.toMillis(value);
+    }
+
 }
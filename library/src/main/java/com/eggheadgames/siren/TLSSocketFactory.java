@@ -6,14 +6,31 @@ import java.net.Socket;
 import java.net.UnknownHostException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 
 public class TLSSocketFactory extends SSLSocketFactory {
 
+  /**
+   * Protocols we allow, newest first; only the ones the platform supports are enabled
+   */
+  private static final String[] ALLOWED_PROTOCOLS = {"TLSv1.3", "TLSv1.2", "TLSv1.1"};
+
+  private static TLSSocketFactory sharedInstance;
+
+  /**
+   * Handshake started by the last secure socket created on the calling thread
+   */
+  private static final ThreadLocal<Handshake> lastHandshake = new ThreadLocal<>();
+
   private final SSLSocketFactory internalSSLSocketFactory;
+  private volatile String[] enabledProtocols;
 
   public TLSSocketFactory() throws KeyManagementException, NoSuchAlgorithmException {
     SSLContext context = SSLContext.getInstance("TLS");
@@ -21,6 +38,27 @@ public class TLSSocketFactory extends SSLSocketFactory {
     internalSSLSocketFactory = context.getSocketFactory();
   }
 
+  /**
+   * One factory for the whole process, so that its session cache lets later connections resume TLS sessions
+   * and pooled connections to the same server can be reused.
+   */
+  static synchronized TLSSocketFactory getSharedInstance() throws KeyManagementException, NoSuchAlgorithmException {
+    if (sharedInstance == null) {
+      sharedInstance = new TLSSocketFactory();
+    }
+    return sharedInstance;
+  }
+
+  /**
+   * @return the handshake started by the last secure socket this thread layered over a connected socket, or null;
+   * clears it so that the next connection on this thread starts fresh
+   */
+  static Handshake takeLastHandshake() {
+    Handshake handshake = lastHandshake.get();
+    lastHandshake.remove();
+    return handshake;
+  }
+
   @Override
   public String[] getDefaultCipherSuites() {
     return internalSSLSocketFactory.getDefaultCipherSuites();
@@ -33,7 +71,13 @@ public class TLSSocketFactory extends SSLSocketFactory {
 
   @Override
   public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
-    return enableTLSOnSocket(internalSSLSocketFactory.createSocket(s, host, port, autoClose));
+    long startedAtNanos = System.nanoTime();
+    long startedAtMillis = System.currentTimeMillis();
+    Socket socket = enableTLSOnSocket(internalSSLSocketFactory.createSocket(s, host, port, autoClose));
+    if (socket instanceof SSLSocket) {
+      lastHandshake.set(new Handshake((SSLSocket) socket, startedAtNanos, startedAtMillis));
+    }
+    return socket;
   }
 
   @Override
@@ -58,12 +102,47 @@ public class TLSSocketFactory extends SSLSocketFactory {
 
   private Socket enableTLSOnSocket(Socket socket) {
     if (socket instanceof SSLSocket) {
-      if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.JELLY_BEAN) {
-        ((SSLSocket) socket).setEnabledProtocols(new String[]{"TLSv1.1", "TLSv1.2"});
-      } else {
-        ((SSLSocket)socket).setEnabledProtocols(new String[] {"TLSv1"});
-      }
+      ((SSLSocket) socket).setEnabledProtocols(getEnabledProtocols((SSLSocket) socket));
     }
     return socket;
   }
+
+  private String[] getEnabledProtocols(SSLSocket socket) {
+    String[] protocols = enabledProtocols;
+    if (protocols == null) {
+      List<String> supported = Arrays.asList(socket.getSupportedProtocols());
+      List<String> allowed = new ArrayList<>();
+      for (String protocol : ALLOWED_PROTOCOLS) {
+        if (supported.contains(protocol)) {
+          allowed.add(protocol);
+        }
+      }
+      protocols = allowed.toArray(new String[0]);
+      enabledProtocols = protocols;
+    }
+    return protocols;
+  }
+
+  /**
+   * A TLS handshake on a secure socket layered over an already connected one.
+   */
+  static final class Handshake {
+    final long startedAtNanos;
+    private final SSLSocket socket;
+    private final long startedAtMillis;
+
+    Handshake(SSLSocket socket, long startedAtNanos, long startedAtMillis) {
+      this.socket = socket;
+      this.startedAtNanos = startedAtNanos;
+      this.startedAtMillis = startedAtMillis;
+    }
+
+    /**
+     * @return true if the handshake resumed a session negotiated by an earlier connection
+     */
+    boolean isSessionResumed() {
+      SSLSession session = socket.getSession();
+      return session != null && session.isValid() && session.getCreationTime() < startedAtMillis;
+    }
+  }
 }
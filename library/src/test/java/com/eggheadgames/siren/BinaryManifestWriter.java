@@ -0,0 +1,110 @@
+package com.eggheadgames.siren;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Builds documents in the encoding read by {@link SirenBinaryManifestDecoder}.
+ */
+class BinaryManifestWriter {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteArrayOutputStream mEntries = new ByteArrayOutputStream();
+    private ByteArrayOutputStream mFields;
+    private byte[] mPackageName;
+    private int mCount;
+
+    BinaryManifestWriter entry(String packageName) {
+        flushEntry();
+        mPackageName = packageName.getBytes(UTF_8);
+        mFields = new ByteArrayOutputStream();
+        mCount++;
+        return this;
+    }
+
+    BinaryManifestWriter minVersionName(String minVersionName) {
+        return field(SirenBinaryManifestDecoder.TAG_MIN_VERSION_NAME, minVersionName.getBytes(UTF_8));
+    }
+
+    BinaryManifestWriter minVersionCode(long minVersionCode) {
+        return field(SirenBinaryManifestDecoder.TAG_MIN_VERSION_CODE, toBytes(minVersionCode));
+    }
+
+    BinaryManifestWriter enable(boolean enable) {
+        return field(SirenBinaryManifestDecoder.TAG_ENABLE, new byte[]{(byte) (enable ? 1 : 0)});
+    }
+
+    BinaryManifestWriter force(boolean force) {
+        return field(SirenBinaryManifestDecoder.TAG_FORCE, new byte[]{(byte) (force ? 1 : 0)});
+    }
+
+    BinaryManifestWriter updateUrl(String updateUrl) {
+        return field(SirenBinaryManifestDecoder.TAG_UPDATE_URL, updateUrl.getBytes(UTF_8));
+    }
+
+    BinaryManifestWriter minCheckIntervalMinutes(long minutes) {
+        return field(SirenBinaryManifestDecoder.TAG_MIN_CHECK_INTERVAL_MINUTES, toBytes(minutes));
+    }
+
+    BinaryManifestWriter checkSampleRate(double sampleRate) {
+        return field(SirenBinaryManifestDecoder.TAG_CHECK_SAMPLE_RATE, toBytes(Double.doubleToLongBits(sampleRate)));
+    }
+
+    BinaryManifestWriter rules(String rulesJson) {
+        return field(SirenBinaryManifestDecoder.TAG_RULES, rulesJson.getBytes(UTF_8));
+    }
+
+    BinaryManifestWriter field(int tag, byte[] value) {
+        try {
+            DataOutputStream out = new DataOutputStream(mFields);
+            out.writeByte(tag);
+            out.writeShort(value.length);
+            out.write(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return this;
+    }
+
+    byte[] toByteArray() {
+        flushEntry();
+        try {
+            ByteArrayOutputStream document = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(document);
+            out.write(SirenBinaryManifestDecoder.MAGIC);
+            out.writeByte(SirenBinaryManifestDecoder.VERSION);
+            out.writeShort(mCount);
+            mEntries.writeTo(out);
+            return document.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] toBytes(long number) {
+        byte[] value = new byte[8];
+        for (int i = 7; i >= 0; i--) {
+            value[i] = (byte) number;
+            number >>>= 8;
+        }
+        return value;
+    }
+
+    private void flushEntry() {
+        if (mPackageName == null) {
+            return;
+        }
+        try {
+            DataOutputStream out = new DataOutputStream(mEntries);
+            out.writeShort(mPackageName.length);
+            out.write(mPackageName);
+            out.writeShort(mFields.size());
+            mFields.writeTo(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        mPackageName = null;
+    }
+}
@@ -0,0 +1,190 @@
+package com.eggheadgames.siren;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves app description documents from the loopback interface, standing in for the real server in tests.
+ * Methods without a path serve {@code /version.json}; other paths answer 404 until a body is set for them.
+ */
+class LocalManifestServer {
+    static final String PATH = "/version.json";
+
+    private final HttpServer mServer;
+    private final ConcurrentMap<String, Resource> mResources = new ConcurrentHashMap<>();
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    private volatile boolean mGzip;
+    private volatile boolean mChunked;
+
+    LocalManifestServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                Resource resource = getResource(exchange.getRequestURI().getPath());
+                resource.mRequestCount.incrementAndGet();
+                if (resource.mDelayMillis > 0) {
+                    try {
+                        Thread.sleep(resource.mDelayMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                if (resource.mRetryAfter != null) {
+                    exchange.getResponseHeaders().set(Constants.HEADER_RETRY_AFTER, resource.mRetryAfter);
+                }
+                if (resource.mStatus != 200) {
+                    exchange.sendResponseHeaders(resource.mStatus, -1);
+                    exchange.close();
+                    return;
+                }
+                String eTag = resource.mETag;
+                if (eTag != null) {
+                    exchange.getResponseHeaders().set(Constants.HEADER_ETAG, eTag);
+                    if (eTag.equals(exchange.getRequestHeaders().getFirst(Constants.HEADER_IF_NONE_MATCH))) {
+                        exchange.sendResponseHeaders(304, -1);
+                        exchange.close();
+                        return;
+                    }
+                }
+                byte[] body = resource.mBody;
+                exchange.getResponseHeaders().set("Content-Type", resource.mContentType);
+                String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                if (mGzip && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                    body = gzip(body);
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                }
+                exchange.sendResponseHeaders(200, mChunked ? 0 : body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        // delayed requests must not hold up the others
+        mServer.setExecutor(mExecutor);
+        setBody("{}", null);
+    }
+
+    void start() {
+        mServer.start();
+    }
+
+    void stop() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    String getUrl() {
+        return getUrl(PATH);
+    }
+
+    String getUrl(String path) {
+        return "http://" + mServer.getAddress().getHostString() + ":" + mServer.getAddress().getPort() + path;
+    }
+
+    void setBody(String body, String eTag) {
+        setBody(PATH, body, eTag);
+    }
+
+    void setBody(String path, String body, String eTag) {
+        getResource(path).setBody(body.getBytes(Charset.forName("UTF-8")), "application/json", eTag);
+    }
+
+    void setBody(byte[] body, String contentType, String eTag) {
+        getResource(PATH).setBody(body, contentType, eTag);
+    }
+
+    /**
+     * @param gzip compress bodies for clients that accept it
+     */
+    void setGzip(boolean gzip) {
+        mGzip = gzip;
+    }
+
+    /**
+     * @param chunked send bodies without a Content-Length
+     */
+    void setChunked(boolean chunked) {
+        mChunked = chunked;
+    }
+
+    /**
+     * @param status anything but 200 is answered without a body
+     */
+    void setStatus(int status) {
+        getResource(PATH).mStatus = status;
+    }
+
+    /**
+     * @param delayMillis how long requests for the path wait before they are answered
+     */
+    void setDelay(String path, long delayMillis) {
+        getResource(path).mDelayMillis = delayMillis;
+    }
+
+    /**
+     * @param retryAfter Retry-After header sent with every response, or null
+     */
+    void setRetryAfter(String retryAfter) {
+        getResource(PATH).mRetryAfter = retryAfter;
+    }
+
+    int getRequestCount() {
+        return getRequestCount(PATH);
+    }
+
+    int getRequestCount(String path) {
+        return getResource(path).mRequestCount.get();
+    }
+
+    static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(compressed);
+        out.write(bytes);
+        out.close();
+        return compressed.toByteArray();
+    }
+
+    private Resource getResource(String path) {
+        Resource resource = mResources.get(path);
+        if (resource == null) {
+            Resource created = new Resource();
+            resource = mResources.putIfAbsent(path, created);
+            if (resource == null) {
+                resource = created;
+            }
+        }
+        return resource;
+    }
+
+    private static class Resource {
+        final AtomicInteger mRequestCount = new AtomicInteger();
+        volatile byte[] mBody = new byte[0];
+        volatile String mContentType = "application/json";
+        volatile String mETag;
+        volatile int mStatus = 404;
+        volatile long mDelayMillis;
+        volatile String mRetryAfter;
+
+        void setBody(byte[] body, String contentType, String eTag) {
+            mBody = body;
+            mContentType = contentType;
+            mETag = eTag;
+            mStatus = 200;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.eggheadgames.siren;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link SharedPreferences} kept in memory, counting how the edits were saved.
+ */
+class MemoryPreferences implements SharedPreferences {
+    private final Map<String, Object> mValues = new HashMap<>();
+    int commits;
+    int applies;
+
+    @Override
+    public synchronized Map<String, ?> getAll() {
+        return new HashMap<>(mValues);
+    }
+
+    @Nullable
+    @Override
+    public synchronized String getString(String key, @Nullable String defValue) {
+        return mValues.containsKey(key) ? (String) mValues.get(key) : defValue;
+    }
+
+    @Nullable
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized Set<String> getStringSet(String key, @Nullable Set<String> defValues) {
+        return mValues.containsKey(key) ? (Set<String>) mValues.get(key) : defValues;
+    }
+
+    @Override
+    public synchronized int getInt(String key, int defValue) {
+        return mValues.containsKey(key) ? (Integer) mValues.get(key) : defValue;
+    }
+
+    @Override
+    public synchronized long getLong(String key, long defValue) {
+        return mValues.containsKey(key) ? (Long) mValues.get(key) : defValue;
+    }
+
+    @Override
+    public synchronized float getFloat(String key, float defValue) {
+        return mValues.containsKey(key) ? (Float) mValues.get(key) : defValue;
+    }
+
+    @Override
+    public synchronized boolean getBoolean(String key, boolean defValue) {
+        return mValues.containsKey(key) ? (Boolean) mValues.get(key) : defValue;
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return mValues.containsKey(key);
+    }
+
+    @Override
+    public Editor edit() {
+        return new MemoryEditor();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        throw new UnsupportedOperationException();
+    }
+
+    private final class MemoryEditor implements Editor {
+        private final Map<String, Object> mChanges = new HashMap<>();
+        private final Set<String> mRemovals = new HashSet<>();
+        private boolean mClear;
+
+        @Override
+        public Editor putString(String key, @Nullable String value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putStringSet(String key, @Nullable Set<String> values) {
+            return put(key, values == null ? null : new HashSet<>(values));
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putFloat(String key, float value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor remove(String key) {
+            mRemovals.add(key);
+            return this;
+        }
+
+        @Override
+        public Editor clear() {
+            mClear = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            synchronized (MemoryPreferences.this) {
+                commits++;
+                save();
+            }
+            return true;
+        }
+
+        @Override
+        public void apply() {
+            synchronized (MemoryPreferences.this) {
+                applies++;
+                save();
+            }
+        }
+
+        private Editor put(String key, @Nullable Object value) {
+            if (value == null) {
+                return remove(key);
+            }
+            mChanges.put(key, value);
+            return this;
+        }
+
+        private void save() {
+            if (mClear) {
+                mValues.clear();
+            }
+            mValues.keySet().removeAll(mRemovals);
+            mValues.putAll(mChanges);
+        }
+    }
+}
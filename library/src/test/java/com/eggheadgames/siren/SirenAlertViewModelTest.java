@@ -0,0 +1,81 @@
+package com.eggheadgames.siren;
+
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.content.Context;
+import android.view.View;
+import android.widget.TextView;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowAlertDialog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class SirenAlertViewModelTest {
+
+    private Context context;
+    private CountingSirenHelper sirenHelper;
+
+    @Before
+    public void prepareTest() {
+        context = ApplicationProvider.getApplicationContext();
+        sirenHelper = new CountingSirenHelper();
+    }
+
+    @Test
+    public void onOptionAlert_textsAndButtonsShouldBeResolved() {
+        SirenAlertViewModel viewModel = SirenAlertViewModel.create(context, sirenHelper, SirenAlertType.OPTION, "2.0", null, null);
+
+        assertEquals("Update available", viewModel.title);
+        assertEquals("Next time", viewModel.nextTimeLabel);
+        assertTrue(viewModel.message.contains("2.0"));
+        assertTrue(viewModel.opensStore());
+        assertTrue(viewModel.showsNextTime());
+        assertFalse(viewModel.showsSkip());
+    }
+
+    @Test
+    public void onForcedLocale_textsShouldUseThatLanguage() {
+        SirenAlertViewModel viewModel = SirenAlertViewModel.create(context, sirenHelper, SirenAlertType.SKIP, "2.0", null, SirenSupportedLocales.DE);
+
+        assertEquals("Update erh\u00e4ltlich", viewModel.title);
+        assertEquals("Sp\u00e4ter", viewModel.nextTimeLabel);
+        assertTrue(viewModel.showsSkip());
+    }
+
+    @Test
+    public void onShow_preparedTextsShouldOnlyBeBound() {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        SirenAlertViewModel viewModel = SirenAlertViewModel.create(context, sirenHelper, SirenAlertType.FORCE, "2.0", null, null);
+        int lookups = sirenHelper.lookups;
+
+        SirenAlertWrapper alertWrapper = new SirenAlertWrapper(activity, null, viewModel, sirenHelper);
+        alertWrapper.show();
+
+        assertEquals(lookups, sirenHelper.lookups);
+        assertTrue(alertWrapper.getShowNanos() > 0);
+        AlertDialog dialog = ShadowAlertDialog.getLatestAlertDialog();
+        assertTrue(dialog.isShowing());
+        assertEquals(viewModel.message, ((TextView) dialog.findViewById(R.id.tvSirenAlertMessage)).getText().toString());
+        assertEquals(View.GONE, dialog.findViewById(R.id.btnSirenNextTime).getVisibility());
+    }
+
+    private static class CountingSirenHelper extends SirenHelper {
+        int lookups;
+
+        @Override
+        String getLocalizedString(Context context, int stringResource, SirenSupportedLocales locale) {
+            lookups++;
+            return super.getLocalizedString(context, stringResource, locale);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.eggheadgames.siren;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(RobolectricTestRunner.class)
+public class SirenAppInfoTest {
+    private static final long LONG_VERSION_CODE = (3L << 32) | 7;
+
+    private Context context;
+    private PackageManager packageManager;
+    private PackageInfo packageInfo;
+
+    @Before
+    public void prepareTest() throws PackageManager.NameNotFoundException {
+        context = Mockito.mock(Context.class);
+        packageManager = Mockito.mock(PackageManager.class);
+        packageInfo = new PackageInfo();
+        packageInfo.versionName = TestConstants.appVersionName;
+
+        Mockito.when(context.getApplicationContext()).thenReturn(context);
+        Mockito.when(context.getPackageName()).thenReturn(TestConstants.appPackageName);
+        Mockito.when(context.getPackageManager()).thenReturn(packageManager);
+        Mockito.when(packageManager.getPackageInfo(TestConstants.appPackageName, 0)).thenReturn(packageInfo);
+    }
+
+    @Test
+    @Config(sdk = Build.VERSION_CODES.P)
+    public void onPie_longVersionCodeShouldBeRead() {
+        packageInfo.setLongVersionCode(LONG_VERSION_CODE);
+
+        SirenAppInfo appInfo = SirenAppInfo.load(context);
+
+        assertEquals(LONG_VERSION_CODE, appInfo.versionCode);
+        assertEquals(TestConstants.appVersionName, appInfo.versionName);
+        assertEquals(TestConstants.appPackageName, appInfo.packageName);
+        assertEquals(Build.VERSION_CODES.P, appInfo.sdkInt);
+    }
+
+    @Test
+    @Config(sdk = Build.VERSION_CODES.O_MR1)
+    @SuppressWarnings("deprecation")
+    public void beforePie_intVersionCodeShouldBeRead() {
+        packageInfo.versionCode = 7;
+
+        SirenAppInfo appInfo = SirenAppInfo.load(context);
+
+        assertEquals(7, appInfo.versionCode);
+        assertEquals(Build.VERSION_CODES.O_MR1, appInfo.sdkInt);
+    }
+
+    @Test
+    public void onMissingVersionName_emptyNameShouldBeUsed() {
+        packageInfo.versionName = null;
+
+        assertEquals("", SirenAppInfo.load(context).versionName);
+    }
+
+    @Test
+    public void onPackageNotFound_emptyVersionShouldBeUsed() throws PackageManager.NameNotFoundException {
+        Mockito.when(packageManager.getPackageInfo(TestConstants.appPackageName, 0))
+                .thenThrow(new PackageManager.NameNotFoundException(TestConstants.appPackageName));
+
+        SirenAppInfo appInfo = SirenAppInfo.load(context);
+
+        assertEquals(TestConstants.appPackageName, appInfo.packageName);
+        assertEquals(0, appInfo.versionCode);
+        assertEquals("", appInfo.versionName);
+    }
+
+    @Test
+    public void onRepeatedLookups_packageManagerShouldBeAskedOnce() throws PackageManager.NameNotFoundException {
+        SirenHelper sirenHelper = new SirenHelper();
+
+        SirenAppInfo appInfo = sirenHelper.getAppInfo(context);
+        assertSame(appInfo, sirenHelper.getAppInfo(context));
+        assertEquals(TestConstants.appVersionName, sirenHelper.getVersionName(context));
+
+        verify(packageManager, times(1)).getPackageInfo(TestConstants.appPackageName, 0);
+    }
+}
@@ -0,0 +1,259 @@
+package com.eggheadgames.siren;
+
+import androidx.annotation.Nullable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SirenBackoffTest {
+    private static final long NOW = 1500000000000L;
+    private static final String PACKAGE_NAME = "com.example.app";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final MemoryStore store = new MemoryStore();
+    private final FixedRandom random = new FixedRandom();
+    private final SirenBackoff backoff = new SirenBackoff(store, random);
+
+    private LocalManifestServer server;
+    private ExecutorService workerExecutor;
+    private ExecutorService mirrorExecutor;
+    private SirenFetcher fetcher;
+
+    @Before
+    public void prepareTest() throws IOException {
+        server = new LocalManifestServer();
+        server.start();
+        workerExecutor = Executors.newFixedThreadPool(2);
+        mirrorExecutor = new ThreadPoolExecutor(0, 4, 1, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+        SirenManifestLoader loader = new SirenManifestLoader(new SirenManifestCache(folder.newFolder("siren")), PACKAGE_NAME);
+        fetcher = new SirenFetcher(loader, backoff, workerExecutor, mirrorExecutor, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+        workerExecutor.shutdownNow();
+        mirrorExecutor.shutdownNow();
+    }
+
+    @Test
+    public void onFirstFailure_nextAttemptShouldWaitJitteredBaseDelay() {
+        random.value = 0.5;
+
+        backoff.onFailure(NOW, 0);
+
+        assertEquals(1, store.consecutiveFailures);
+        assertEquals(NOW + SirenBackoff.BASE_DELAY_MILLIS * 3 / 4, store.nextAttemptAt);
+        assertFalse(backoff.allowsAttempt(NOW + SirenBackoff.BASE_DELAY_MILLIS / 2));
+        assertTrue(backoff.allowsAttempt(NOW + SirenBackoff.BASE_DELAY_MILLIS));
+    }
+
+    @Test
+    public void onConsecutiveFailures_delayShouldDoubleUpToMaximum() {
+        random.value = 1;
+        store.consecutiveFailures = 2;
+
+        backoff.onFailure(NOW, 0);
+        assertEquals(NOW + SirenBackoff.BASE_DELAY_MILLIS * 4, store.nextAttemptAt);
+
+        store.consecutiveFailures = 30;
+        backoff.onFailure(NOW, 0);
+        assertEquals(NOW + SirenBackoff.MAX_DELAY_MILLIS, store.nextAttemptAt);
+    }
+
+    @Test
+    public void onRepeatedFailures_circuitShouldOpenForCooldown() {
+        random.value = 0;
+        SirenTransferMetrics transfer = new SirenTransferMetrics("");
+
+        for (int i = 0; i < SirenBackoff.CIRCUIT_BREAKER_THRESHOLD - 1; i++) {
+            backoff.onFailure(NOW, 0);
+        }
+        backoff.describe(transfer);
+        assertFalse(transfer.circuitOpen);
+
+        backoff.onFailure(NOW, 0);
+        backoff.describe(transfer);
+        assertTrue(transfer.circuitOpen);
+        assertEquals(SirenBackoff.CIRCUIT_BREAKER_THRESHOLD, transfer.consecutiveFailures);
+        assertEquals(NOW + SirenBackoff.CIRCUIT_COOLDOWN_MILLIS, transfer.nextAttemptAtMillis);
+    }
+
+    @Test
+    public void onLongerRetryAfter_serverDelayShouldWin() {
+        backoff.onFailure(NOW, TimeUnit.MINUTES.toMillis(10));
+        assertEquals(NOW + TimeUnit.MINUTES.toMillis(10), store.nextAttemptAt);
+
+        backoff.onFailure(NOW, TimeUnit.DAYS.toMillis(30));
+        assertEquals(NOW + SirenBackoff.MAX_RETRY_AFTER_MILLIS, store.nextAttemptAt);
+    }
+
+    @Test
+    public void onSuccess_backoffShouldBeReset() {
+        backoff.onFailure(NOW, 0);
+
+        backoff.onSuccess();
+
+        assertEquals(0, store.consecutiveFailures);
+        assertTrue(backoff.allowsAttempt(NOW));
+    }
+
+    @Test
+    public void onClockSetBack_attemptShouldBeAllowed() {
+        store.nextAttemptAt = NOW + SirenBackoff.MAX_RETRY_AFTER_MILLIS + 1;
+
+        assertTrue(backoff.allowsAttempt(NOW));
+    }
+
+    @Test
+    public void onRetryAfterHeader_secondsAndDatesShouldBeParsed() {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        String inTwoMinutes = format.format(new Date(NOW + TimeUnit.MINUTES.toMillis(2)));
+
+        assertEquals(TimeUnit.SECONDS.toMillis(120), SirenBackoff.parseRetryAfter(" 120 ", NOW));
+        assertEquals(TimeUnit.MINUTES.toMillis(2), SirenBackoff.parseRetryAfter(inTwoMinutes, NOW));
+        assertEquals(0, SirenBackoff.parseRetryAfter("soon", NOW));
+        assertEquals(0, SirenBackoff.parseRetryAfter(null, NOW));
+    }
+
+    @Test
+    public void onServiceUnavailable_laterFetchShouldNotAskServer() throws InterruptedException {
+        server.setStatus(503);
+        server.setRetryAfter("3600");
+
+        RecordingCallback failed = new RecordingCallback();
+        fetcher.fetch(server.getUrl(), failed);
+        assertTrue(failed.await());
+        assertEquals(1, failed.transfer.consecutiveFailures);
+        assertTrue(failed.transfer.nextAttemptAtMillis >= System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(59));
+
+        RecordingCallback backedOff = new RecordingCallback();
+        fetcher.fetch(server.getUrl(), backedOff);
+        assertTrue(backedOff.await());
+
+        assertNull(backedOff.json);
+        assertEquals(SirenCheckMetrics.Source.NONE, backedOff.transfer.source);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void onSuccessfulFetch_failuresShouldBeForgotten() throws InterruptedException {
+        server.setBody("{\"" + PACKAGE_NAME + "\":{\"minVersionCode\":7}}", null);
+        store.consecutiveFailures = 3;
+
+        RecordingCallback callback = new RecordingCallback();
+        fetcher.fetch(server.getUrl(), callback);
+        assertTrue(callback.await());
+
+        assertEquals(0, store.consecutiveFailures);
+        assertEquals(0, callback.transfer.nextAttemptAtMillis);
+    }
+
+    private static class MemoryStore implements SirenBackoff.Store {
+        volatile int consecutiveFailures;
+        volatile long nextAttemptAt;
+        volatile boolean failing;
+
+        @Override
+        public int getConsecutiveFailures() {
+            return consecutiveFailures;
+        }
+
+        @Override
+        public long getNextAttemptAt() {
+            if (failing) {
+                throw new IllegalStateException("unreadable");
+            }
+            return nextAttemptAt;
+        }
+
+        @Override
+        public void setBackoff(int consecutiveFailures, long nextAttemptAt) {
+            this.consecutiveFailures = consecutiveFailures;
+            this.nextAttemptAt = nextAttemptAt;
+        }
+    }
+
+    private static class FixedRandom extends Random {
+        double value;
+
+        @Override
+        public double nextDouble() {
+            return value;
+        }
+    }
+
+    @Test
+    public void onFailingStore_fetchShouldEndWithError() throws InterruptedException {
+        store.failing = true;
+
+        RecordingCallback failed = new RecordingCallback();
+        fetcher.fetch(server.getUrl(), failed);
+        assertTrue(failed.await());
+
+        assertTrue(failed.error instanceof IllegalStateException);
+        assertFalse(fetcher.isInFlight(server.getUrl()));
+
+        store.failing = false;
+        server.setBody("{\"" + PACKAGE_NAME + "\":{\"minVersionCode\":7}}", null);
+        RecordingCallback retried = new RecordingCallback();
+        fetcher.fetch(server.getUrl(), retried);
+        assertTrue(retried.await());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    private static class RecordingCallback implements SirenFetcher.Callback {
+        String json;
+        Exception error;
+        SirenTransferMetrics transfer;
+        private final CountDownLatch delivered = new CountDownLatch(1);
+
+        @Override
+        public void onFetched(@Nullable SirenManifestDocument document, SirenTransferMetrics transfer) {
+            this.json = document == null ? null : document.getJson();
+            this.transfer = transfer;
+            delivered.countDown();
+        }
+
+        @Override
+        public void onFetchFailed(Exception e, SirenTransferMetrics transfer) {
+            this.error = e;
+            this.transfer = transfer;
+            delivered.countDown();
+        }
+
+        boolean await() throws InterruptedException {
+            return delivered.await(5, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.eggheadgames.siren;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SirenBinaryManifestDecoderTest {
+    private static final String PACKAGE_NAME = "com.example.app";
+
+    @Test
+    public void onAllFields_entryShouldBeDecoded() throws JSONException {
+        byte[] document = new BinaryManifestWriter().entry(PACKAGE_NAME)
+                .minVersionName("2.1.1.1")
+                .minVersionCode(Long.MAX_VALUE)
+                .enable(false)
+                .force(true)
+                .updateUrl("https://example.com/app")
+                .toByteArray();
+
+        SirenManifestEntry entry = SirenBinaryManifestDecoder.decode(document, PACKAGE_NAME);
+
+        assertEquals("2.1.1.1", entry.minVersionName);
+        assertTrue(entry.hasMinVersionCode);
+        assertEquals(Long.MAX_VALUE, entry.minVersionCode);
+        assertFalse(entry.enable);
+        assertTrue(entry.force);
+        assertEquals("https://example.com/app", entry.updateUrl);
+    }
+
+    @Test
+    public void onMissingFields_defaultsShouldBeUsed() throws JSONException {
+        byte[] document = new BinaryManifestWriter().entry(PACKAGE_NAME).minVersionCode(7).toByteArray();
+
+        SirenManifestEntry entry = SirenBinaryManifestDecoder.decode(document, PACKAGE_NAME);
+
+        assertNull(entry.minVersionName);
+        assertEquals(7, entry.minVersionCode);
+        assertTrue(entry.enable);
+        assertFalse(entry.force);
+    }
+
+    @Test
+    public void onOtherPackagesFirst_matchingEntryShouldBeFound() throws JSONException {
+        byte[] document = new BinaryManifestWriter()
+                .entry("com.example.other").minVersionName("9.9")
+                .entry("com.example.ap").minVersionName("8.8")
+                .entry(PACKAGE_NAME).minVersionName("1.2")
+                .toByteArray();
+
+        assertEquals("1.2", SirenBinaryManifestDecoder.decode(document, PACKAGE_NAME).minVersionName);
+    }
+
+    @Test
+    public void onUnknownField_fieldShouldBeSkipped() throws JSONException {
+        byte[] document = new BinaryManifestWriter().entry(PACKAGE_NAME)
+                .field(200, new byte[]{1, 2, 3})
+                .minVersionName("1.2")
+                .toByteArray();
+
+        assertEquals("1.2", SirenBinaryManifestDecoder.decode(document, PACKAGE_NAME).minVersionName);
+    }
+
+    @Test
+    public void onCheckPolicyFields_entryShouldCarryThem() throws JSONException {
+        byte[] document = new BinaryManifestWriter().entry(PACKAGE_NAME)
+                .minCheckIntervalMinutes(90)
+                .checkSampleRate(0.25)
+                .toByteArray();
+
+        SirenManifestEntry entry = SirenBinaryManifestDecoder.decode(document, PACKAGE_NAME);
+
+        assertEquals(TimeUnit.MINUTES.toMillis(90), entry.minCheckIntervalMillis);
+        assertEquals(0.25, entry.checkSampleRate, 0);
+    }
+
+    @Test
+    public void onRulesField_rulesShouldBeCompiled() throws JSONException {
+        byte[] document = new BinaryManifestWriter().entry(PACKAGE_NAME)
+                .minVersionCode(7)
+                .rules("[{\"maxSdk\":22,\"minVersionCode\":9}]")
+                .toByteArray();
+
+        SirenManifestEntry entry = SirenBinaryManifestDecoder.decode(document, PACKAGE_NAME);
+        entry.applyRules(21, "US", 1);
+
+        assertEquals(9, entry.minVersionCode);
+    }
+
+    @Test(expected = JSONException.class)
+    public void onMissingPackage_exceptionShouldBeThrown() throws JSONException {
+        SirenBinaryManifestDecoder.decode(new BinaryManifestWriter().entry("com.example.other").toByteArray(), PACKAGE_NAME);
+    }
+
+    @Test(expected = JSONException.class)
+    public void onTruncatedDocument_exceptionShouldBeThrown() throws JSONException {
+        byte[] document = new BinaryManifestWriter().entry(PACKAGE_NAME).minVersionName("1.2").toByteArray();
+
+        SirenBinaryManifestDecoder.decode(Arrays.copyOf(document, document.length - 2), PACKAGE_NAME);
+    }
+
+    @Test(expected = JSONException.class)
+    public void onJsonDocument_exceptionShouldBeThrown() throws JSONException {
+        SirenBinaryManifestDecoder.decode(TestConstants.jsonVersionCodeUpdate.getBytes(), PACKAGE_NAME);
+    }
+}
@@ -0,0 +1,107 @@
+package com.eggheadgames.siren;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SirenCheckScheduleTest {
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long MIDNIGHT = 17000 * DAY;
+
+    @Test
+    public void onNoPreviousCheck_checkShouldBeDue() {
+        assertTrue(SirenCheckSchedule.isDue(DAY, 0, 0, MIDNIGHT));
+    }
+
+    @Test
+    public void onZeroInterval_checkShouldAlwaysBeDue() {
+        assertTrue(SirenCheckSchedule.isDue(0, 0, MIDNIGHT, MIDNIGHT));
+    }
+
+    @Test
+    public void onSamePeriod_checkShouldNotBeDue() {
+        long offset = 6 * HOUR;
+
+        assertFalse(SirenCheckSchedule.isDue(DAY, offset, MIDNIGHT + 7 * HOUR, MIDNIGHT + 23 * HOUR));
+        assertFalse(SirenCheckSchedule.isDue(DAY, offset, MIDNIGHT + 7 * HOUR, MIDNIGHT + DAY + 5 * HOUR));
+        assertTrue(SirenCheckSchedule.isDue(DAY, offset, MIDNIGHT + 7 * HOUR, MIDNIGHT + DAY + 6 * HOUR));
+    }
+
+    @Test
+    public void onMidnight_checkShouldOnlyBeDueForInstallsWithoutOffset() {
+        long lastCheck = MIDNIGHT - HOUR;
+
+        assertTrue(SirenCheckSchedule.isDue(DAY, 0, lastCheck, MIDNIGHT));
+        assertFalse(SirenCheckSchedule.isDue(DAY, 3 * HOUR, lastCheck, MIDNIGHT));
+    }
+
+    @Test
+    public void onHourlyInterval_checkShouldBeDueEveryHour() {
+        long offset = TimeUnit.MINUTES.toMillis(20);
+
+        assertFalse(SirenCheckSchedule.isDue(HOUR, offset, MIDNIGHT + offset, MIDNIGHT + offset + HOUR - 1));
+        assertTrue(SirenCheckSchedule.isDue(HOUR, offset, MIDNIGHT + offset, MIDNIGHT + offset + HOUR));
+    }
+
+    @Test
+    public void onClockSetBack_checkShouldBeDue() {
+        assertTrue(SirenCheckSchedule.isDue(DAY, 0, MIDNIGHT + HOUR, MIDNIGHT));
+    }
+
+    @Test
+    public void onInstallSeeds_offsetsShouldStayWithinInterval() {
+        assertEquals(5, SirenCheckSchedule.installOffset(DAY + 5, DAY));
+        assertEquals(DAY - 5, SirenCheckSchedule.installOffset(-5, DAY));
+        assertEquals(0, SirenCheckSchedule.installOffset(42, 0));
+    }
+
+    @Test
+    public void onSampleRate_fractionOfInstallsShouldCheckEachPeriod() {
+        Random random = new Random(11);
+        int sampled = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (SirenCheckSchedule.isSampled(random.nextLong(), DAY, 0, MIDNIGHT, 0.25)) {
+                sampled++;
+            }
+        }
+        assertTrue(sampled > 2300 && sampled < 2700);
+    }
+
+    @Test
+    public void onSampledOutInstall_laterPeriodsShouldGiveItAChance() {
+        long seed = 1234;
+        boolean sampledInLaterPeriod = false;
+        for (int day = 0; day < 100 && !sampledInLaterPeriod; day++) {
+            sampledInLaterPeriod = SirenCheckSchedule.isSampled(seed, DAY, 0, MIDNIGHT + day * DAY, 0.1);
+        }
+        assertTrue(sampledInLaterPeriod);
+        assertEquals(SirenCheckSchedule.isSampled(seed, DAY, 0, MIDNIGHT, 0.1), SirenCheckSchedule.isSampled(seed, DAY, 0, MIDNIGHT + HOUR, 0.1));
+    }
+
+    @Test
+    public void onServerPolicy_valuesShouldBeClamped() {
+        assertEquals(SirenCheckSchedule.MIN_SAMPLE_RATE, SirenCheckSchedule.clampSampleRate(0), 0);
+        assertEquals(1, SirenCheckSchedule.clampSampleRate(3), 0);
+        assertEquals(1, SirenCheckSchedule.clampSampleRate(Double.NaN), 0);
+        assertEquals(SirenCheckSchedule.MAX_MIN_CHECK_INTERVAL_MILLIS, SirenCheckSchedule.clampMinCheckInterval(Long.MAX_VALUE));
+        assertEquals(0, SirenCheckSchedule.clampMinCheckInterval(-1));
+    }
+
+    @Test
+    public void onManyInstalls_offsetsShouldSpreadAcrossInterval() {
+        int[] installsPerHour = new int[24];
+        Random random = new Random(7);
+        for (int i = 0; i < 24000; i++) {
+            installsPerHour[(int) (SirenCheckSchedule.installOffset(random.nextLong(), DAY) / HOUR)]++;
+        }
+        for (int installs : installsPerHour) {
+            assertTrue(installs > 800 && installs < 1200);
+        }
+    }
+}
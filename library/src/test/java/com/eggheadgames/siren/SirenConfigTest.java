@@ -0,0 +1,101 @@
+package com.eggheadgames.siren;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SirenConfigTest {
+
+    @Test
+    public void byDefault_everyUpdateShouldShowOptionAlert() {
+        SirenConfig config = new SirenConfig.Builder().build();
+
+        assertEquals(SirenAlertType.OPTION, config.alertTypeResolver.versionCodeUpdateAlertType);
+        assertEquals(SirenAlertType.OPTION, config.alertTypeResolver.forSegment(0));
+        assertEquals(SirenAlertType.OPTION, config.alertTypeResolver.forSegment(3));
+        assertNull(config.languageLocalization);
+        assertEquals(SirenFetcher.DEFAULT_HEDGE_DELAY_MILLIS, config.hedgeDelayMillis);
+        assertEquals(SirenFetcher.NO_STALE_COPY, config.maxStaleAgeMillis);
+    }
+
+    @Test
+    public void onBuildUpon_otherSettingsShouldBeKept() {
+        SirenConfig config = new SirenConfig.Builder()
+                .setMajorUpdateAlertType(SirenAlertType.FORCE)
+                .setRevisionUpdateAlertType(SirenAlertType.NONE)
+                .setLanguageLocalization(SirenSupportedLocales.DE)
+                .setMaxStaleAge(7, TimeUnit.DAYS)
+                .build();
+
+        SirenConfig changed = config.buildUpon().setPatchUpdateAlertType(SirenAlertType.SKIP).build();
+
+        assertEquals(SirenAlertType.FORCE, changed.alertTypeResolver.forSegment(0));
+        assertEquals(SirenAlertType.SKIP, changed.alertTypeResolver.forSegment(2));
+        assertEquals(SirenAlertType.NONE, changed.alertTypeResolver.forSegment(3));
+        assertEquals(SirenSupportedLocales.DE, changed.languageLocalization);
+        assertEquals(TimeUnit.DAYS.toMillis(7), changed.maxStaleAgeMillis);
+        assertEquals(SirenAlertType.OPTION, config.alertTypeResolver.forSegment(2));
+    }
+
+    @Test
+    public void onConcurrentSetters_noSettingShouldBeLost() throws InterruptedException {
+        for (int round = 0; round < 200; round++) {
+            final Siren siren = new Siren();
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread major = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    await(start);
+                    siren.setMajorUpdateAlertType(SirenAlertType.FORCE);
+                }
+            });
+            Thread minor = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    await(start);
+                    siren.setMinorUpdateAlertType(SirenAlertType.SKIP);
+                }
+            });
+            major.start();
+            minor.start();
+            start.countDown();
+            siren.setPatchUpdateAlertType(SirenAlertType.NONE);
+            major.join();
+            minor.join();
+
+            SirenConfig config = siren.getConfig();
+            assertEquals(SirenAlertType.FORCE, config.alertTypeResolver.forSegment(0));
+            assertEquals(SirenAlertType.SKIP, config.alertTypeResolver.forSegment(1));
+            assertEquals(SirenAlertType.NONE, config.alertTypeResolver.forSegment(2));
+        }
+    }
+
+    @Test
+    public void onCheckRequest_urlsShouldBeCopied() {
+        List<String> urls = new ArrayList<>();
+        urls.add("https://example.com/siren.json");
+        SirenCheckRequest request = new SirenCheckRequest.Builder(urls).setCheckType(SirenVersionCheckType.DAILY).build();
+
+        urls.add("https://mirror.example.com/siren.json");
+
+        assertEquals(1, request.getAppDescriptionUrls().size());
+        assertEquals(TimeUnit.DAYS.toMillis(1), request.getIntervalMillis());
+        assertNull(request.getActivity());
+        assertNull(request.getConfig());
+        assertNull(request.getListener());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
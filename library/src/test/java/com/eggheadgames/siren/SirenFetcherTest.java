@@ -0,0 +1,273 @@
+package com.eggheadgames.siren;
+
+import androidx.annotation.Nullable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SirenFetcherTest {
+    private static final String APP_DESCRIPTION_URL = "http://example.com";
+
+    private final CountDownLatch loadStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseLoad = new CountDownLatch(1);
+    private final CountDownLatch loadCancelled = new CountDownLatch(1);
+    private final AtomicInteger loadCount = new AtomicInteger();
+    private SirenManifestCache.Entry cachedEntry;
+
+    private ExecutorService workerExecutor;
+    private SirenFetcher fetcher;
+
+    @Before
+    public void prepareTest() {
+        workerExecutor = Executors.newFixedThreadPool(2);
+        SirenManifestLoader loader = new SirenManifestLoader(null, null) {
+            @Override
+            SirenManifestCache.Entry getCached(String appDescriptionUrl) {
+                return cachedEntry;
+            }
+
+            @Override
+            SirenManifestDocument load(String appDescriptionUrl, Cancellation cancellation, SirenTransferMetrics metrics) {
+                loadCount.incrementAndGet();
+                loadStarted.countDown();
+                try {
+                    releaseLoad.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // cancelled
+                }
+                if (cancellation.isCancelled()) {
+                    loadCancelled.countDown();
+                    return null;
+                }
+                return SirenManifestDocument.json(TestConstants.jsonVersionCodeUpdate);
+            }
+        };
+        fetcher = new SirenFetcher(loader, workerExecutor, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        workerExecutor.shutdownNow();
+    }
+
+    @Test
+    public void onConcurrentChecks_singleDownloadShouldBeShared() throws InterruptedException {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+
+        SirenCheckHandle firstHandle = fetcher.fetch(APP_DESCRIPTION_URL, first);
+        SirenCheckHandle secondHandle = fetcher.fetch(APP_DESCRIPTION_URL, second);
+        releaseLoad.countDown();
+
+        assertTrue(first.await());
+        assertTrue(second.await());
+        assertEquals(1, loadCount.get());
+        assertEquals(TestConstants.jsonVersionCodeUpdate, first.results.get(0));
+        assertEquals(TestConstants.jsonVersionCodeUpdate, second.results.get(0));
+        assertTrue(firstHandle.isDone());
+        assertTrue(secondHandle.isDone());
+        assertFalse(fetcher.isInFlight(APP_DESCRIPTION_URL));
+    }
+
+    @Test
+    public void onOneCallerCancelled_otherCallerShouldStillReceiveResult() throws InterruptedException {
+        RecordingCallback cancelled = new RecordingCallback();
+        RecordingCallback waiting = new RecordingCallback();
+
+        SirenCheckHandle cancelledHandle = fetcher.fetch(APP_DESCRIPTION_URL, cancelled);
+        fetcher.fetch(APP_DESCRIPTION_URL, waiting);
+        cancelledHandle.cancel();
+        releaseLoad.countDown();
+
+        assertTrue(waiting.await());
+        assertTrue(cancelledHandle.isCancelled());
+        assertTrue(cancelled.results.isEmpty());
+        assertEquals(1, loadCount.get());
+    }
+
+    @Test
+    public void onAllCallersCancelled_downloadShouldBeCancelled() throws InterruptedException {
+        RecordingCallback callback = new RecordingCallback();
+
+        SirenCheckHandle handle = fetcher.fetch(APP_DESCRIPTION_URL, callback);
+        assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+        handle.cancel();
+
+        assertTrue(loadCancelled.await(5, TimeUnit.SECONDS));
+        assertFalse(fetcher.isInFlight(APP_DESCRIPTION_URL));
+        assertTrue(callback.results.isEmpty());
+    }
+
+    @Test
+    public void onCheckAfterCompletion_newDownloadShouldBeStarted() throws InterruptedException {
+        releaseLoad.countDown();
+        RecordingCallback first = new RecordingCallback();
+        fetcher.fetch(APP_DESCRIPTION_URL, first);
+        assertTrue(first.await());
+
+        RecordingCallback second = new RecordingCallback();
+        fetcher.fetch(APP_DESCRIPTION_URL, second);
+        assertTrue(second.await());
+
+        assertEquals(2, loadCount.get());
+    }
+
+    @Test
+    public void onFreshCachedDocument_shouldBeDeliveredWithoutDownload() throws InterruptedException {
+        cachedEntry = new SirenManifestCache.Entry(SirenManifestDocument.json(TestConstants.jsonVersionNameMajorUpdate), null, null, System.currentTimeMillis());
+        RecordingCallback callback = new RecordingCallback();
+
+        SirenCheckHandle handle = fetcher.fetch(APP_DESCRIPTION_URL, TimeUnit.HOURS.toMillis(1), callback);
+
+        assertTrue(callback.await());
+        assertEquals(TestConstants.jsonVersionNameMajorUpdate, callback.results.get(0));
+        assertTrue(handle.isDone());
+        assertEquals(0, loadCount.get());
+    }
+
+    @Test
+    public void onStaleCachedDocument_shouldBeDeliveredAndRefreshedInBackground() throws InterruptedException {
+        cachedEntry = new SirenManifestCache.Entry(SirenManifestDocument.json(TestConstants.jsonVersionNameMajorUpdate), null, null,
+                System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2));
+        RecordingCallback callback = new RecordingCallback();
+
+        fetcher.fetch(APP_DESCRIPTION_URL, TimeUnit.HOURS.toMillis(1), callback);
+
+        assertTrue(callback.await());
+        assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+        releaseLoad.countDown();
+        assertEquals(1, callback.results.size());
+        assertEquals(TestConstants.jsonVersionNameMajorUpdate, callback.results.get(0));
+        assertEquals(1, loadCount.get());
+    }
+
+    @Test
+    public void onMissingCachedDocument_shouldBeDownloaded() throws InterruptedException {
+        releaseLoad.countDown();
+        RecordingCallback callback = new RecordingCallback();
+
+        fetcher.fetch(APP_DESCRIPTION_URL, TimeUnit.HOURS.toMillis(1), callback);
+
+        assertTrue(callback.await());
+        assertEquals(TestConstants.jsonVersionCodeUpdate, callback.results.get(0));
+        assertEquals(1, loadCount.get());
+    }
+
+    @Test
+    public void onStaleCopyAccepted_itShouldBeDeliveredBeforeRevalidatedDocument() throws InterruptedException {
+        cachedEntry = new SirenManifestCache.Entry(SirenManifestDocument.json(TestConstants.jsonVersionNameMajorUpdate), null, null,
+                System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2));
+        RecordingCallback callback = new RecordingCallback(2);
+
+        SirenCheckHandle handle = fetcher.fetch(Collections.singletonList(APP_DESCRIPTION_URL), SirenFetcher.DEFAULT_HEDGE_DELAY_MILLIS,
+                SirenFetcher.NETWORK_FIRST, TimeUnit.DAYS.toMillis(7), callback);
+
+        assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+        assertEquals(1, callback.results.size());
+        assertEquals(TestConstants.jsonVersionNameMajorUpdate, callback.results.get(0));
+        assertTrue(callback.transfers.get(0).stale);
+        assertFalse(handle.isDone());
+        releaseLoad.countDown();
+
+        assertTrue(callback.await());
+        assertEquals(TestConstants.jsonVersionCodeUpdate, callback.results.get(1));
+        assertFalse(callback.transfers.get(1).stale);
+        assertTrue(handle.isDone());
+    }
+
+    @Test
+    public void onCopyOlderThanStaleLimit_onlyRevalidatedDocumentShouldBeDelivered() throws InterruptedException {
+        cachedEntry = new SirenManifestCache.Entry(SirenManifestDocument.json(TestConstants.jsonVersionNameMajorUpdate), null, null,
+                System.currentTimeMillis() - TimeUnit.DAYS.toMillis(8));
+        releaseLoad.countDown();
+        RecordingCallback callback = new RecordingCallback();
+
+        fetcher.fetch(Collections.singletonList(APP_DESCRIPTION_URL), SirenFetcher.DEFAULT_HEDGE_DELAY_MILLIS,
+                SirenFetcher.NETWORK_FIRST, TimeUnit.DAYS.toMillis(7), callback);
+
+        assertTrue(callback.await());
+        assertEquals(1, callback.results.size());
+        assertEquals(TestConstants.jsonVersionCodeUpdate, callback.results.get(0));
+    }
+
+    @Test
+    public void onNothingCached_bundledSnapshotShouldBeDeliveredAsStaleCopy() throws InterruptedException {
+        fetcher.setBundledManifest(new SirenBundledManifest(null, "siren.json") {
+            @Override
+            InputStream openAsset(String assetPath) {
+                return new ByteArrayInputStream(TestConstants.jsonVersionNameMajorUpdate.getBytes(Charset.forName("UTF-8")));
+            }
+
+            @Override
+            long getPackageUpdateTime() {
+                return System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+            }
+        });
+        releaseLoad.countDown();
+        RecordingCallback callback = new RecordingCallback(2);
+
+        fetcher.fetch(Collections.singletonList(APP_DESCRIPTION_URL), SirenFetcher.DEFAULT_HEDGE_DELAY_MILLIS,
+                SirenFetcher.NETWORK_FIRST, TimeUnit.DAYS.toMillis(7), callback);
+
+        assertTrue(callback.await());
+        assertEquals(TestConstants.jsonVersionNameMajorUpdate, callback.results.get(0));
+        assertEquals(SirenCheckMetrics.Source.BUNDLED, callback.transfers.get(0).source);
+        assertEquals(TestConstants.jsonVersionCodeUpdate, callback.results.get(1));
+    }
+
+    private static class RecordingCallback implements SirenFetcher.Callback {
+        final List<String> results = new ArrayList<>();
+        final List<SirenTransferMetrics> transfers = new ArrayList<>();
+        private final CountDownLatch delivered;
+
+        RecordingCallback() {
+            this(1);
+        }
+
+        /**
+         * @param deliveries results to wait for
+         */
+        RecordingCallback(int deliveries) {
+            delivered = new CountDownLatch(deliveries);
+        }
+
+        @Override
+        public void onFetched(@Nullable SirenManifestDocument document, SirenTransferMetrics transfer) {
+            results.add(document == null ? null : document.getJson());
+            transfers.add(transfer);
+            delivered.countDown();
+        }
+
+        @Override
+        public void onFetchFailed(Exception e, SirenTransferMetrics transfer) {
+            delivered.countDown();
+        }
+
+        boolean await() throws InterruptedException {
+            return delivered.await(5, TimeUnit.SECONDS);
+        }
+    }
+}
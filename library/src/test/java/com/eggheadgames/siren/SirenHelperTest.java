@@ -0,0 +1,64 @@
+package com.eggheadgames.siren;
+
+import android.app.Application;
+import android.content.Context;
+import android.content.res.Configuration;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+public class SirenHelperTest {
+
+    private Application application;
+    private SirenHelper sirenHelper;
+
+    @Before
+    public void prepareTest() {
+        application = ApplicationProvider.getApplicationContext();
+        sirenHelper = new SirenHelper();
+    }
+
+    @Test
+    public void onSameLocale_localizedContextShouldBeReused() {
+        Context localized = sirenHelper.getLocalizedContext(application, SirenSupportedLocales.DE);
+
+        assertSame(localized, sirenHelper.getLocalizedContext(application, SirenSupportedLocales.DE));
+        assertEquals("de", localized.getResources().getConfiguration().locale.getLanguage());
+    }
+
+    @Test
+    public void onOtherLocale_otherContextShouldBeCreated() {
+        Context german = sirenHelper.getLocalizedContext(application, SirenSupportedLocales.DE);
+        Context french = sirenHelper.getLocalizedContext(application, SirenSupportedLocales.FR);
+
+        assertNotSame(german, french);
+        assertEquals("fr", french.getResources().getConfiguration().locale.getLanguage());
+    }
+
+    @Test
+    public void onConfigurationChanged_localizedContextsShouldBeDropped() {
+        Context localized = sirenHelper.getLocalizedContext(application, SirenSupportedLocales.DE);
+
+        application.onConfigurationChanged(new Configuration(application.getResources().getConfiguration()));
+
+        assertNotSame(localized, sirenHelper.getLocalizedContext(application, SirenSupportedLocales.DE));
+    }
+
+    @Test
+    public void onLowMemory_localizedContextsShouldBeDropped() {
+        Context localized = sirenHelper.getLocalizedContext(application, SirenSupportedLocales.DE);
+
+        application.onLowMemory();
+
+        assertNotSame(localized, sirenHelper.getLocalizedContext(application, SirenSupportedLocales.DE));
+    }
+}
@@ -0,0 +1,114 @@
+package com.eggheadgames.siren;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SirenManifestCacheTest {
+    private static final String URL = "https://example.com/version.json";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private SirenManifestCache cache;
+
+    @Before
+    public void prepareTest() throws IOException {
+        directory = folder.newFolder("siren");
+        cache = new SirenManifestCache(directory);
+    }
+
+    @Test
+    public void onEmptyCache_entryShouldBeMissing() {
+        assertNull(cache.get(URL));
+    }
+
+    @Test
+    public void onPut_bodyAndValidatorsShouldBeRestored() {
+        cache.put(URL, SirenManifestDocument.json(TestConstants.jsonVersionNameMajorUpdate), "\"abc\"", "Wed, 21 Oct 2015 07:28:00 GMT");
+
+        SirenManifestCache.Entry entry = cache.get(URL);
+        assertEquals(TestConstants.jsonVersionNameMajorUpdate, entry.document.getJson());
+        assertEquals("\"abc\"", entry.eTag);
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", entry.lastModified);
+    }
+
+    @Test
+    public void onPutWithoutValidators_validatorsShouldBeNull() {
+        cache.put(URL, SirenManifestDocument.json(TestConstants.jsonVersionCodeUpdate), null, null);
+
+        SirenManifestCache.Entry entry = cache.get(URL);
+        assertEquals(TestConstants.jsonVersionCodeUpdate, entry.document.getJson());
+        assertNull(entry.eTag);
+        assertNull(entry.lastModified);
+    }
+
+    @Test
+    public void onPutBinaryDocument_encodingShouldBeRestored() {
+        byte[] binary = new BinaryManifestWriter().entry("com.example.app").minVersionCode(7).toByteArray();
+        cache.put(URL, new SirenManifestDocument(binary, true), null, null);
+
+        SirenManifestCache.Entry entry = cache.get(URL);
+        assertTrue(entry.document.isBinary());
+        assertArrayEquals(binary, entry.document.getBytes());
+    }
+
+    @Test
+    public void onTouch_storedAtShouldBeRefreshed() {
+        cache.put(URL, SirenManifestDocument.json(TestConstants.jsonVersionCodeUpdate), "\"abc\"", null);
+        SirenManifestCache.Entry stale = new SirenManifestCache.Entry(SirenManifestDocument.json(TestConstants.jsonVersionCodeUpdate), "\"abc\"", null, 0);
+
+        cache.touch(URL, stale);
+
+        SirenManifestCache.Entry entry = cache.get(URL);
+        assertTrue(entry.storedAt > 0);
+        assertEquals("\"abc\"", entry.eTag);
+    }
+
+    @Test
+    public void onRemove_entryShouldBeMissing() {
+        cache.put(URL, SirenManifestDocument.json(TestConstants.jsonVersionCodeUpdate), "\"abc\"", null);
+        cache.remove(URL);
+        assertNull(cache.get(URL));
+    }
+
+    @Test
+    public void onDamagedBodyLength_entryShouldBeMissing() throws IOException {
+        assertDamagedLengthIsMiss(Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void onNegativeBodyLength_entryShouldBeMissing() throws IOException {
+        assertDamagedLengthIsMiss(-1);
+    }
+
+    private void assertDamagedLengthIsMiss(int length) throws IOException {
+        String json = TestConstants.jsonVersionCodeUpdate;
+        cache.put(URL, SirenManifestDocument.json(json), "\"abc\"", null);
+        File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+        RandomAccessFile file = new RandomAccessFile(files[0], "rw");
+        try {
+            // the body is stored last, after its length
+            file.seek(file.length() - json.getBytes("UTF-8").length - 4);
+            file.writeInt(length);
+        } finally {
+            file.close();
+        }
+
+        assertNull(cache.get(URL));
+        assertFalse(files[0].exists());
+    }
+}
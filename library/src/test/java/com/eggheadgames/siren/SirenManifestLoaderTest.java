@@ -0,0 +1,249 @@
+package com.eggheadgames.siren;
+
+import org.json.JSONException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SirenManifestLoaderTest {
+    private static final String PACKAGE_NAME = "com.example.app";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LocalManifestServer server;
+    private SirenManifestLoader loader;
+    private final SirenManifestLoader.Cancellation notCancelled = new SirenManifestLoader.Cancellation() {
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public void onConnect(HttpURLConnection connection) {
+        }
+    };
+
+    @Before
+    public void prepareTest() throws IOException {
+        server = new LocalManifestServer();
+        server.start();
+        loader = new SirenManifestLoader(new SirenManifestCache(folder.newFolder("siren")), PACKAGE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void onGzipResponse_bodyShouldBeInflated() throws IOException, GeneralSecurityException, JSONException {
+        String json = largeDocument();
+        server.setBody(json, null);
+        server.setGzip(true);
+        SirenTransferMetrics metrics = new SirenTransferMetrics(server.getUrl());
+
+        SirenManifestDocument document = loader.load(server.getUrl(), notCancelled, metrics);
+
+        assertEquals(json, document.getJson());
+        assertEquals(LocalManifestServer.gzip(json.getBytes("UTF-8")).length, metrics.bytesTransferred);
+        assertTrue(metrics.bytesTransferred < json.length());
+        assertEquals(7, document.parse(PACKAGE_NAME).minVersionCode);
+    }
+
+    @Test
+    public void onBinaryContentType_binaryDocumentShouldBeDecoded() throws IOException, GeneralSecurityException, JSONException {
+        byte[] binary = new BinaryManifestWriter().entry(PACKAGE_NAME).minVersionName("2.0").force(true).toByteArray();
+        server.setBody(binary, SirenManifestDocument.BINARY_CONTENT_TYPE + "; version=1", "\"b1\"");
+
+        SirenManifestDocument document = loader.load(server.getUrl(), notCancelled, new SirenTransferMetrics(server.getUrl()));
+
+        assertTrue(document.isBinary());
+        SirenManifestEntry entry = document.parse(PACKAGE_NAME);
+        assertEquals("2.0", entry.minVersionName);
+        assertTrue(entry.force);
+    }
+
+    @Test
+    public void onLoadedDocument_loaderParseShouldBeReused() throws IOException, GeneralSecurityException, JSONException {
+        byte[] binary = new BinaryManifestWriter().entry(PACKAGE_NAME).minVersionName("2.0").toByteArray();
+        server.setBody(binary, SirenManifestDocument.BINARY_CONTENT_TYPE, "\"b1\"");
+        SirenManifestDocument document = loader.load(server.getUrl(), notCancelled, new SirenTransferMetrics(server.getUrl()));
+        assertTrue(loader.isUsable(document));
+
+        // decoding these bytes again would fail
+        Arrays.fill(document.getBytes(), (byte) 0);
+
+        assertEquals("2.0", document.parse(PACKAGE_NAME).minVersionName);
+    }
+
+    @Test
+    public void onChangedEntry_nextParseShouldBeUnaffected() throws JSONException {
+        SirenManifestDocument document = SirenManifestDocument.json(TestConstants.jsonForceUpdateEnabled);
+
+        SirenManifestEntry entry = document.parse(PACKAGE_NAME);
+        entry.force = false;
+
+        assertTrue(document.parse(PACKAGE_NAME).force);
+    }
+
+    @Test
+    public void onNotModifiedBinaryDocument_cachedEncodingShouldBeKept() throws IOException, GeneralSecurityException {
+        byte[] binary = new BinaryManifestWriter().entry(PACKAGE_NAME).minVersionCode(3).toByteArray();
+        server.setBody(binary, SirenManifestDocument.BINARY_CONTENT_TYPE, "\"b1\"");
+        loader.load(server.getUrl(), notCancelled, new SirenTransferMetrics(server.getUrl()));
+
+        SirenTransferMetrics metrics = new SirenTransferMetrics(server.getUrl());
+        SirenManifestDocument document = loader.load(server.getUrl(), notCancelled, metrics);
+
+        assertEquals(SirenCheckMetrics.Source.NOT_MODIFIED, metrics.source);
+        assertTrue(document.isBinary());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void onDocumentForOtherPackage_documentShouldNotBeCached() throws IOException, GeneralSecurityException {
+        server.setBody("{\"com.example.other\":{\"minVersionCode\":7}}", "\"o1\"");
+
+        SirenManifestDocument document = loader.load(server.getUrl(), notCancelled, new SirenTransferMetrics(server.getUrl()));
+
+        assertFalse(document.isEmpty());
+        assertEquals(null, loader.getCached(server.getUrl()));
+    }
+
+    @Test
+    public void onTemplateUrl_packageShardShouldBeDownloaded() throws IOException, GeneralSecurityException, JSONException {
+        server.setBody("/shards/" + PACKAGE_NAME + ".json", shard(4), null);
+
+        SirenManifestDocument document = loader.load(server.getUrl("/shards/{packageName}.json"), notCancelled,
+                new SirenTransferMetrics(server.getUrl()));
+
+        assertEquals(4, document.parse(PACKAGE_NAME).minVersionCode);
+        assertEquals(1, server.getRequestCount("/shards/" + PACKAGE_NAME + ".json"));
+    }
+
+    @Test
+    public void onIndexWithTemplate_relativeShardUrlShouldBeResolved() throws IOException, GeneralSecurityException, JSONException {
+        server.setBody("/index.json", "{\"$index\":{\"template\":\"shards/{packageName}.json\"}}", null);
+        server.setBody("/shards/" + PACKAGE_NAME + ".json", shard(5), null);
+        SirenTransferMetrics metrics = new SirenTransferMetrics(server.getUrl());
+
+        SirenManifestDocument document = loader.load(server.getUrl("/index.json"), notCancelled, metrics);
+
+        assertEquals(5, document.parse(PACKAGE_NAME).minVersionCode);
+        assertEquals(200, metrics.httpStatus);
+        assertEquals(1, server.getRequestCount("/index.json"));
+        assertEquals(1, server.getRequestCount("/shards/" + PACKAGE_NAME + ".json"));
+    }
+
+    @Test
+    public void onIndexListingPackage_listedShardShouldWinOverTemplate() throws IOException, GeneralSecurityException, JSONException {
+        server.setBody("/index.json", "{ \"$index\": {\"template\": \"/shards/{packageName}.json\","
+                + " \"packages\": {\"" + PACKAGE_NAME + "\": \"/special.json\"}}}", null);
+        server.setBody("/special.json", shard(6), null);
+
+        SirenManifestDocument document = loader.load(server.getUrl("/index.json"), notCancelled, new SirenTransferMetrics(server.getUrl()));
+
+        assertEquals(6, document.parse(PACKAGE_NAME).minVersionCode);
+        assertEquals(0, server.getRequestCount("/shards/" + PACKAGE_NAME + ".json"));
+    }
+
+    @Test
+    public void onCachedIndex_onlyShardShouldBeRequested() throws IOException, GeneralSecurityException {
+        server.setBody("/index.json", "{\"$index\":{\"template\":\"/shards/{packageName}.json\"}}", "\"i1\"");
+        server.setBody("/shards/" + PACKAGE_NAME + ".json", shard(5), "\"s1\"");
+        loader.load(server.getUrl("/index.json"), notCancelled, new SirenTransferMetrics(server.getUrl()));
+
+        loader.load(server.getUrl("/index.json"), notCancelled, new SirenTransferMetrics(server.getUrl()));
+
+        assertEquals(1, server.getRequestCount("/index.json"));
+        assertEquals(2, server.getRequestCount("/shards/" + PACKAGE_NAME + ".json"));
+        assertEquals(shard(5), loader.getCached(server.getUrl("/index.json")).document.getJson());
+    }
+
+    @Test(expected = JSONException.class)
+    public void onIndexWithoutPackage_documentShouldNotParse() throws IOException, GeneralSecurityException, JSONException {
+        server.setBody("/index.json", "{\"$index\":{\"packages\":{\"com.example.other\":\"/other.json\"}}}", null);
+
+        SirenManifestDocument document = loader.load(server.getUrl("/index.json"), notCancelled, new SirenTransferMetrics(server.getUrl()));
+
+        document.parse(PACKAGE_NAME);
+    }
+
+    private static String shard(int minVersionCode) {
+        return "{\"" + PACKAGE_NAME + "\":{\"minVersionCode\":" + minVersionCode + "}}";
+    }
+
+    @Test
+    public void onChunkedResponse_wholeBodyShouldBeRead() throws IOException, GeneralSecurityException {
+        String json = largeDocument();
+        server.setBody(json, null);
+        server.setChunked(true);
+
+        SirenManifestDocument document = loader.load(server.getUrl(), notCancelled, new SirenTransferMetrics(server.getUrl()));
+
+        assertEquals(json, document.getJson());
+    }
+
+    @Test
+    public void onBodyLargerThanLimit_requestShouldFailWithoutReadingIt() throws IOException, GeneralSecurityException {
+        loader = new SirenManifestLoader(new SirenManifestCache(folder.newFolder("limited")), PACKAGE_NAME, 1024);
+        server.setBody(largeDocument(), null);
+        SirenTransferMetrics metrics = new SirenTransferMetrics(server.getUrl());
+
+        try {
+            loader.load(server.getUrl(), notCancelled, metrics);
+            fail();
+        } catch (SirenDocumentTooLargeException e) {
+            assertEquals(1024, e.getMaxBytes());
+        }
+        assertEquals(0, metrics.bytesTransferred);
+        assertNull(loader.getCached(server.getUrl()));
+    }
+
+    @Test
+    public void onChunkedBodyLargerThanLimit_readingShouldStopAtLimit() throws IOException, GeneralSecurityException {
+        loader = new SirenManifestLoader(new SirenManifestCache(folder.newFolder("limited")), PACKAGE_NAME, 1024);
+        server.setBody(largeDocument(), null);
+        server.setChunked(true);
+
+        try {
+            loader.load(server.getUrl(), notCancelled, new SirenTransferMetrics(server.getUrl()));
+            fail();
+        } catch (SirenDocumentTooLargeException expected) {
+            assertNull(loader.getCached(server.getUrl()));
+        }
+    }
+
+    @Test(expected = SirenDocumentTooLargeException.class)
+    public void onGzipBodyInflatingBeyondLimit_requestShouldFail() throws IOException, GeneralSecurityException {
+        loader = new SirenManifestLoader(new SirenManifestCache(folder.newFolder("limited")), PACKAGE_NAME, 64 * 1024);
+        char[] padding = new char[1024 * 1024];
+        Arrays.fill(padding, ' ');
+        server.setBody("{\"" + PACKAGE_NAME + "\":{\"minVersionCode\":7}}" + new String(padding), null);
+        server.setGzip(true);
+
+        loader.load(server.getUrl(), notCancelled, new SirenTransferMetrics(server.getUrl()));
+    }
+
+    private static String largeDocument() {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < 200; i++) {
+            json.append("\"com.example.app").append(i).append("\":{\"minVersionName\":\"1.0.").append(i).append("\"},");
+        }
+        return json.append('"').append(PACKAGE_NAME).append("\":{\"minVersionCode\":7}}").toString();
+    }
+}
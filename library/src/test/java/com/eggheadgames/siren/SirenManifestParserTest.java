@@ -0,0 +1,151 @@
+package com.eggheadgames.siren;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SirenManifestParserTest {
+
+    private static final String jsonSharedManifest = "{"
+            + "\"com.example.other\":{\"minVersionName\":\"9.9.9\",\"rules\":[{\"a\":\"}{\\\"\"},[1,2,{}]],\"force\":true},"
+            + "\"com.example.empty\":{},"
+            + "\"com.example.null\":null,"
+            + "\"com.example.number\":42,"
+            + "\"com.example.app\":{\"minVersionName\":\"2.1.1.1\",\"minVersionCode\":5,\"enable\":true,"
+            + "\"force\":true,\"updateUrl\":\"https:\\/\\/example.com\\/app?id=\\u0031\",\"extra\":{\"x\":[null]}},"
+            + "\"com.example.last\":{\"minVersionCode\":1}"
+            + "}";
+
+    @Test
+    public void onSharedManifest_onlyPackageEntryShouldBeRead() throws JSONException {
+        SirenManifestEntry entry = SirenManifestParser.parse(jsonSharedManifest, TestConstants.appPackageName);
+
+        assertEquals("2.1.1.1", entry.minVersionName);
+        assertTrue(entry.hasMinVersionCode);
+        assertEquals(5, entry.minVersionCode);
+        assertTrue(entry.enable);
+        assertTrue(entry.force);
+        assertEquals("https://example.com/app?id=1", entry.updateUrl);
+    }
+
+    @Test
+    public void onMissingFields_defaultsShouldBeUsed() throws JSONException {
+        SirenManifestEntry entry = SirenManifestParser.parse(TestConstants.jsonMalformed3, TestConstants.appPackageName);
+
+        assertNull(entry.minVersionName);
+        assertFalse(entry.hasMinVersionCode);
+        assertTrue(entry.enable);
+        assertFalse(entry.force);
+        assertNull(entry.updateUrl);
+        assertEquals(0, entry.minCheckIntervalMillis);
+        assertEquals(1, entry.checkSampleRate, 0);
+    }
+
+    @Test
+    public void onCheckPolicyFields_entryShouldCarryThem() throws JSONException {
+        SirenManifestEntry entry = SirenManifestParser.parse(
+                "{\"com.example.app\":{\"minVersionCode\":7,\"minCheckIntervalMinutes\":\"90\",\"checkSampleRate\":0.25}}",
+                TestConstants.appPackageName);
+
+        assertEquals(TimeUnit.MINUTES.toMillis(90), entry.minCheckIntervalMillis);
+        assertEquals(0.25, entry.checkSampleRate, 0);
+    }
+
+    @Test
+    public void onRules_firstMatchingRuleShouldOverrideEntry() throws JSONException {
+        String json = "{\"com.example.app\":{\"minVersionCode\":7,\"updateUrl\":\"https://example.com\",\"rules\":["
+                + "{\"countries\":[\"us\",\"CA\"],\"maxSdk\":25,\"minVersionCode\":12,\"force\":true},"
+                + "{\"minInstalledVersionCode\":5,\"maxInstalledVersionCode\":6,\"enable\":false,\"unknown\":[1,2]},"
+                + "{\"minSdk\":21,\"minVersionName\":\"2.0\"}]}}";
+
+        SirenManifestEntry canada = SirenManifestParser.parse(json, TestConstants.appPackageName);
+        canada.applyRules(23, "CA", 5);
+        assertEquals(12, canada.minVersionCode);
+        assertTrue(canada.force);
+        assertTrue(canada.enable);
+        assertEquals("https://example.com", canada.updateUrl);
+
+        SirenManifestEntry germany = SirenManifestParser.parse(json, TestConstants.appPackageName);
+        germany.applyRules(23, "DE", 5);
+        assertEquals(7, germany.minVersionCode);
+        assertFalse(germany.enable);
+
+        SirenManifestEntry newer = SirenManifestParser.parse(json, TestConstants.appPackageName);
+        newer.applyRules(30, "DE", 8);
+        assertEquals("2.0", newer.minVersionName);
+        assertFalse(newer.force);
+
+        SirenManifestEntry old = SirenManifestParser.parse(json, TestConstants.appPackageName);
+        old.applyRules(19, "DE", 8);
+        assertNull(old.minVersionName);
+    }
+
+    @Test(expected = JSONException.class)
+    public void onMalformedRules_exceptionShouldBeThrown() throws JSONException {
+        SirenManifestParser.parse("{\"com.example.app\":{\"minVersionCode\":7,\"rules\":{\"minSdk\":21}}}",
+                TestConstants.appPackageName);
+    }
+
+    @Test
+    public void onVersionCheckDisabled_enableShouldBeFalse() throws JSONException {
+        assertFalse(SirenManifestParser.parse(TestConstants.jsonVersionCheckDisabled, TestConstants.appPackageName).enable);
+    }
+
+    @Test
+    public void onQuotedValues_valuesShouldBeCoerced() throws JSONException {
+        SirenManifestEntry entry = SirenManifestParser.parse(
+                "{\"com.example.app\":{\"minVersionCode\":\"7\",\"force\":\"TRUE\",\"minVersionName\":null}}", TestConstants.appPackageName);
+
+        assertEquals(7, entry.minVersionCode);
+        assertTrue(entry.force);
+        assertNull(entry.minVersionName);
+    }
+
+    @Test
+    public void onEscapedPackageKey_entryShouldBeFound() throws JSONException {
+        SirenManifestEntry entry = SirenManifestParser.parse("{\"com\\u002eexample.app\":{\"minVersionCode\":3}}", TestConstants.appPackageName);
+        assertEquals(3, entry.minVersionCode);
+    }
+
+    @Test
+    public void onGarbageAfterPackageEntry_entryShouldStillBeRead() throws JSONException {
+        SirenManifestEntry entry = SirenManifestParser.parse("{\"com.example.app\":{\"minVersionCode\":3},<html>", TestConstants.appPackageName);
+        assertEquals(3, entry.minVersionCode);
+    }
+
+    @Test(expected = JSONException.class)
+    public void onMissingPackage_exceptionShouldBeThrown() throws JSONException {
+        SirenManifestParser.parse(TestConstants.jsonMalformed, TestConstants.appPackageName);
+    }
+
+    @Test(expected = JSONException.class)
+    public void onEmptyDocument_exceptionShouldBeThrown() throws JSONException {
+        SirenManifestParser.parse(TestConstants.jsonMalformed2, TestConstants.appPackageName);
+    }
+
+    @Test(expected = JSONException.class)
+    public void onNullPackageEntry_exceptionShouldBeThrown() throws JSONException {
+        SirenManifestParser.parse(jsonSharedManifest, "com.example.null");
+    }
+
+    @Test(expected = JSONException.class)
+    public void onNonObjectPackageEntry_exceptionShouldBeThrown() throws JSONException {
+        SirenManifestParser.parse(jsonSharedManifest, "com.example.number");
+    }
+
+    @Test(expected = JSONException.class)
+    public void onHtmlDocument_exceptionShouldBeThrown() throws JSONException {
+        SirenManifestParser.parse("<html><body>Not found</body></html>", TestConstants.appPackageName);
+    }
+
+    @Test(expected = JSONException.class)
+    public void onTruncatedDocument_exceptionShouldBeThrown() throws JSONException {
+        SirenManifestParser.parse("{\"com.example.other\":{\"minVersionName\":\"1.0", TestConstants.appPackageName);
+    }
+}
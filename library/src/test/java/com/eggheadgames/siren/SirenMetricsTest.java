@@ -0,0 +1,124 @@
+package com.eggheadgames.siren;
+
+import android.content.Context;
+import android.os.Looper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+public class SirenMetricsTest {
+
+    private LocalManifestServer server;
+    private SirenHelper sirenHelper;
+    private Siren siren;
+    private String updateDocument;
+    private final List<SirenCheckMetrics> reported = new ArrayList<>();
+
+    @Before
+    public void prepareTest() throws IOException {
+        Context context = ApplicationProvider.getApplicationContext();
+        updateDocument = "{\"" + context.getPackageName() + "\":{\"minVersionCode\":" + Integer.MAX_VALUE + "}}";
+        server = new LocalManifestServer();
+        server.start();
+        server.setBody(updateDocument, "\"v1\"");
+
+        sirenHelper = new SirenHelper();
+        siren = new Siren() {
+            @Override
+            protected SirenHelper getSirenHelper() {
+                return sirenHelper;
+            }
+        };
+        siren.mApplicationContext = context;
+        siren.setVersionCodeUpdateAlertType(SirenAlertType.NONE);
+        siren.setMetricsListener(new ISirenMetricsListener() {
+            @Override
+            public void onVersionCheckCompleted(SirenCheckMetrics metrics) {
+                reported.add(metrics);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void onDownloadedDocument_transferAndDecisionShouldBeReported() {
+        SirenCheckMetrics metrics = check();
+
+        assertEquals(server.getUrl(), metrics.getUrl());
+        assertEquals(SirenCheckMetrics.Source.NETWORK, metrics.getSource());
+        assertEquals(200, metrics.getHttpStatus());
+        assertEquals(updateDocument.length(), metrics.getBytesTransferred());
+        assertTrue(metrics.getConnectNanos() > 0);
+        assertTrue(metrics.getParseNanos() > 0);
+        assertEquals(0, metrics.getAlertShowNanos());
+        assertEquals(SirenCheckDecision.ALERT_SHOWN, metrics.getDecision());
+    }
+
+    @Test
+    public void onUnchangedDocument_revalidationShouldBeReported() {
+        check();
+
+        SirenCheckMetrics metrics = check();
+
+        assertEquals(SirenCheckMetrics.Source.NOT_MODIFIED, metrics.getSource());
+        assertEquals(304, metrics.getHttpStatus());
+        assertEquals(0, metrics.getBytesTransferred());
+        assertEquals(SirenCheckDecision.ALERT_SHOWN, metrics.getDecision());
+    }
+
+    @Test
+    public void onDisabledCheck_disabledDecisionShouldBeReported() {
+        server.setBody("{\"" + ApplicationProvider.getApplicationContext().getPackageName()
+                + "\":{\"minVersionCode\":" + Integer.MAX_VALUE + ",\"enable\":false}}", null);
+
+        assertEquals(SirenCheckDecision.DISABLED, check().getDecision());
+    }
+
+    @Test
+    public void onServerError_statusAndFailureShouldBeReported() {
+        server.setStatus(503);
+
+        SirenCheckMetrics metrics = check();
+
+        assertEquals(503, metrics.getHttpStatus());
+        assertEquals(SirenCheckDecision.FAILED, metrics.getDecision());
+    }
+
+    private SirenCheckMetrics check() {
+        int reportedBefore = reported.size();
+        siren.checkVersion(null, SirenVersionCheckType.IMMEDIATELY, server.getUrl());
+
+        // results are posted to the main looper, which Robolectric only runs when asked to
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (reported.size() == reportedBefore && System.currentTimeMillis() < deadline) {
+            shadowOf(Looper.getMainLooper()).idle();
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        assertEquals(reportedBefore + 1, reported.size());
+        return reported.get(reportedBefore);
+    }
+}
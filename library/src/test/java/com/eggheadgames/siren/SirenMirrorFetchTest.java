@@ -0,0 +1,165 @@
+package com.eggheadgames.siren;
+
+import androidx.annotation.Nullable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SirenMirrorFetchTest {
+    private static final String PACKAGE_NAME = "com.example.app";
+    private static final String PRIMARY_PATH = "/primary.json";
+    private static final String MIRROR_PATH = "/mirror.json";
+    private static final String PRIMARY_DOCUMENT = "{\"" + PACKAGE_NAME + "\":{\"minVersionCode\":7}}";
+    private static final String MIRROR_DOCUMENT = "{\"" + PACKAGE_NAME + "\":{\"minVersionCode\":8}}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LocalManifestServer server;
+    private ExecutorService workerExecutor;
+    private ExecutorService mirrorExecutor;
+    private SirenFetcher fetcher;
+    private List<String> mirrorUrls;
+
+    @Before
+    public void prepareTest() throws IOException {
+        server = new LocalManifestServer();
+        server.start();
+        server.setBody(PRIMARY_PATH, PRIMARY_DOCUMENT, null);
+        server.setBody(MIRROR_PATH, MIRROR_DOCUMENT, null);
+        mirrorUrls = Arrays.asList(server.getUrl(PRIMARY_PATH), server.getUrl(MIRROR_PATH));
+
+        workerExecutor = Executors.newFixedThreadPool(2);
+        mirrorExecutor = new ThreadPoolExecutor(0, 4, 1, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+        SirenManifestLoader loader = new SirenManifestLoader(new SirenManifestCache(folder.newFolder("siren")), PACKAGE_NAME);
+        fetcher = new SirenFetcher(loader, null, workerExecutor, mirrorExecutor, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+        workerExecutor.shutdownNow();
+        mirrorExecutor.shutdownNow();
+    }
+
+    @Test
+    public void onFastPrimary_mirrorShouldNotBeAsked() throws InterruptedException {
+        RecordingCallback callback = new RecordingCallback();
+
+        fetcher.fetch(mirrorUrls, TimeUnit.SECONDS.toMillis(5), SirenFetcher.NETWORK_FIRST, callback);
+
+        assertTrue(callback.await());
+        assertEquals(PRIMARY_DOCUMENT, callback.json);
+        assertEquals(server.getUrl(PRIMARY_PATH), callback.transfer.url);
+        assertFalse(callback.transfer.hedged);
+        assertEquals(0, server.getRequestCount(MIRROR_PATH));
+    }
+
+    @Test
+    public void onSlowPrimary_mirrorShouldAnswerAfterHedgeDelay() throws InterruptedException {
+        server.setDelay(PRIMARY_PATH, TimeUnit.SECONDS.toMillis(5));
+        RecordingCallback callback = new RecordingCallback();
+
+        long start = System.nanoTime();
+        fetcher.fetch(mirrorUrls, 100, SirenFetcher.NETWORK_FIRST, callback);
+
+        assertTrue(callback.await());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3));
+        assertEquals(MIRROR_DOCUMENT, callback.json);
+        assertEquals(server.getUrl(MIRROR_PATH), callback.transfer.url);
+        assertTrue(callback.transfer.hedged);
+        assertEquals(1, server.getRequestCount(PRIMARY_PATH));
+        assertEquals(1, server.getRequestCount(MIRROR_PATH));
+    }
+
+    @Test
+    public void onFailingPrimary_mirrorShouldBeAskedWithoutWaiting() throws InterruptedException {
+        server.setStatus(503);
+        List<String> urls = Arrays.asList(server.getUrl(), server.getUrl(MIRROR_PATH));
+        RecordingCallback callback = new RecordingCallback();
+
+        long start = System.nanoTime();
+        fetcher.fetch(urls, TimeUnit.SECONDS.toMillis(10), SirenFetcher.NETWORK_FIRST, callback);
+
+        assertTrue(callback.await());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(MIRROR_DOCUMENT, callback.json);
+    }
+
+    @Test
+    public void onEveryMirrorFailing_lastResultShouldBeDelivered() throws InterruptedException {
+        List<String> urls = Arrays.asList(server.getUrl("/missing.json"), server.getUrl("/gone.json"));
+        RecordingCallback callback = new RecordingCallback();
+
+        fetcher.fetch(urls, 100, SirenFetcher.NETWORK_FIRST, callback);
+
+        assertTrue(callback.await());
+        assertNull(callback.json);
+        assertEquals(404, callback.transfer.httpStatus);
+        assertEquals(1, server.getRequestCount("/missing.json"));
+        assertEquals(1, server.getRequestCount("/gone.json"));
+    }
+
+    @Test
+    public void onCachedMirrorDocument_shouldBeServedForPrimary() throws InterruptedException {
+        server.setDelay(PRIMARY_PATH, TimeUnit.SECONDS.toMillis(5));
+        RecordingCallback hedged = new RecordingCallback();
+        fetcher.fetch(mirrorUrls, 100, SirenFetcher.NETWORK_FIRST, hedged);
+        assertTrue(hedged.await());
+
+        RecordingCallback cached = new RecordingCallback();
+        fetcher.fetch(mirrorUrls, 100, TimeUnit.HOURS.toMillis(1), cached);
+
+        assertTrue(cached.await());
+        assertEquals(MIRROR_DOCUMENT, cached.json);
+        assertEquals(SirenCheckMetrics.Source.CACHE, cached.transfer.source);
+        assertEquals(1, server.getRequestCount(MIRROR_PATH));
+    }
+
+    private static class RecordingCallback implements SirenFetcher.Callback {
+        String json;
+        SirenTransferMetrics transfer;
+        private final CountDownLatch delivered = new CountDownLatch(1);
+
+        @Override
+        public void onFetched(@Nullable SirenManifestDocument document, SirenTransferMetrics transfer) {
+            this.json = document == null ? null : document.getJson();
+            this.transfer = transfer;
+            delivered.countDown();
+        }
+
+        @Override
+        public void onFetchFailed(Exception e, SirenTransferMetrics transfer) {
+            this.transfer = transfer;
+            delivered.countDown();
+        }
+
+        boolean await() throws InterruptedException {
+            return delivered.await(5, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.eggheadgames.siren;
+
+import android.app.Activity;
+import android.app.AlertDialog;
+import android.content.Context;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowAlertDialog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+public class SirenOfflineFirstTest {
+
+    private Context context;
+    private LocalManifestServer server;
+    private SirenHelper sirenHelper;
+    private Siren siren;
+    private RecordingListener listener;
+    private final List<SirenCheckMetrics> metrics = new ArrayList<>();
+    private final CountDownLatch checksCompleted = new CountDownLatch(2);
+
+    @Before
+    public void prepareTest() throws IOException {
+        context = ApplicationProvider.getApplicationContext();
+        server = new LocalManifestServer();
+        server.start();
+        server.setBody(document(Integer.MAX_VALUE), "\"v2\"");
+
+        sirenHelper = new SirenHelper();
+        siren = new Siren() {
+            @Override
+            protected SirenHelper getSirenHelper() {
+                return sirenHelper;
+            }
+        };
+        siren.mApplicationContext = context;
+        siren.setVersionCodeUpdateAlertType(SirenAlertType.NONE);
+        listener = new RecordingListener();
+        siren.setSirenListener(listener);
+        siren.setMetricsListener(new ISirenMetricsListener() {
+            @Override
+            public void onVersionCheckCompleted(@NonNull SirenCheckMetrics checkMetrics) {
+                metrics.add(checkMetrics);
+                checksCompleted.countDown();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void onServerDown_decisionShouldBeMadeFromStaleCopy() {
+        cache(document(Integer.MAX_VALUE));
+        server.setStatus(503);
+        siren.setMaxStaleAge(7, TimeUnit.DAYS);
+
+        siren.checkVersion(null, SirenVersionCheckType.IMMEDIATELY, server.getUrl());
+
+        assertTrue(awaitOnMainThread(checksCompleted));
+        assertEquals(1, listener.detections);
+        assertEquals(0, listener.errors);
+        assertTrue(metrics.get(0).isStale());
+        assertEquals(SirenCheckDecision.ALERT_SHOWN, metrics.get(0).getDecision());
+        assertEquals(SirenCheckDecision.FAILED, metrics.get(1).getDecision());
+    }
+
+    @Test
+    public void onServerDown_staleCopyShouldNotCountAsCheck() {
+        cache("{\"" + context.getPackageName() + "\":{\"minVersionCode\":" + Integer.MAX_VALUE
+                + ",\"minCheckIntervalMinutes\":90,\"checkSampleRate\":0.25}}");
+        server.setStatus(503);
+        siren.setMaxStaleAge(7, TimeUnit.DAYS);
+
+        siren.checkVersion(null, SirenVersionCheckType.IMMEDIATELY, server.getUrl());
+
+        assertTrue(awaitOnMainThread(checksCompleted));
+        assertEquals(1, listener.detections);
+        assertEquals(0, sirenHelper.getLastVerificationDate(context));
+        assertEquals(0, sirenHelper.getMinCheckIntervalMillis(context));
+    }
+
+    @Test
+    public void onSameRevalidatedOutcome_userShouldBePromptedOnce() {
+        cache(document(Integer.MAX_VALUE));
+        siren.setMaxStaleAge(7, TimeUnit.DAYS);
+
+        siren.checkVersion(null, SirenVersionCheckType.IMMEDIATELY, server.getUrl());
+
+        assertTrue(awaitOnMainThread(checksCompleted));
+        assertEquals(1, listener.detections);
+        assertEquals(1, server.getRequestCount());
+        assertFalse(metrics.get(1).isStale());
+        assertEquals(SirenCheckDecision.ALERT_SHOWN, metrics.get(1).getDecision());
+    }
+
+    @Test
+    public void onChangedRevalidatedOutcome_userShouldBePrompted() {
+        cache(document(1));
+        siren.setMaxStaleAge(7, TimeUnit.DAYS);
+
+        siren.checkVersion(null, SirenVersionCheckType.IMMEDIATELY, server.getUrl());
+
+        assertTrue(awaitOnMainThread(checksCompleted));
+        assertEquals(SirenCheckDecision.UP_TO_DATE, metrics.get(0).getDecision());
+        assertEquals(SirenCheckDecision.ALERT_SHOWN, metrics.get(1).getDecision());
+        assertEquals(1, listener.detections);
+    }
+
+    @Test
+    public void onRevalidatedUpToDate_staleAlertShouldBeDismissed() {
+        Activity activity = Robolectric.buildActivity(Activity.class).setup().get();
+        cache(document(Integer.MAX_VALUE));
+        server.setBody(document(1), "\"v2\"");
+        siren.setVersionCodeUpdateAlertType(SirenAlertType.FORCE);
+        siren.setMaxStaleAge(7, TimeUnit.DAYS);
+
+        siren.checkVersion(activity, SirenVersionCheckType.IMMEDIATELY, server.getUrl());
+
+        assertTrue(awaitOnMainThread(checksCompleted));
+        assertEquals(SirenCheckDecision.ALERT_SHOWN, metrics.get(0).getDecision());
+        assertEquals(SirenCheckDecision.UP_TO_DATE, metrics.get(1).getDecision());
+        assertEquals(1, listener.dialogs);
+        AlertDialog dialog = ShadowAlertDialog.getLatestAlertDialog();
+        assertNotNull(dialog);
+        assertFalse(dialog.isShowing());
+    }
+
+    @Test
+    public void onStaleCopyNotAllowed_serverDownShouldBeReported() {
+        cache(document(Integer.MAX_VALUE));
+        server.setStatus(503);
+        CountDownLatch checkCompleted = new CountDownLatch(1);
+        listener.errorReported = checkCompleted;
+
+        siren.checkVersion(null, SirenVersionCheckType.IMMEDIATELY, server.getUrl());
+
+        assertTrue(awaitOnMainThread(checkCompleted));
+        assertEquals(0, listener.detections);
+    }
+
+    private String document(int minVersionCode) {
+        return "{\"" + context.getPackageName() + "\":{\"minVersionCode\":" + minVersionCode + "}}";
+    }
+
+    private void cache(String document) {
+        sirenHelper.getManifestCache(context).put(server.getUrl(), SirenManifestDocument.json(document), "\"v1\"", null);
+    }
+
+    /**
+     * Results are posted to the main looper, which Robolectric only runs when asked to
+     */
+    private static boolean awaitOnMainThread(CountDownLatch latch) {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (latch.getCount() > 0 && System.currentTimeMillis() < deadline) {
+            shadowOf(Looper.getMainLooper()).idle();
+            try {
+                latch.await(10, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return latch.getCount() == 0;
+    }
+
+    private static class RecordingListener implements ISirenListener {
+        int dialogs;
+        int detections;
+        int errors;
+        CountDownLatch errorReported = new CountDownLatch(1);
+
+        @Override
+        public void onShowUpdateDialog() {
+            dialogs++;
+        }
+
+        @Override
+        public void onLaunchGooglePlay() {
+        }
+
+        @Override
+        public void onSkipVersion() {
+        }
+
+        @Override
+        public void onCancel() {
+        }
+
+        @Override
+        public void onDetectNewVersionWithoutAlert(String message) {
+            detections++;
+        }
+
+        @Override
+        public void onError(Exception e) {
+            errors++;
+            errorReported.countDown();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.eggheadgames.siren;
+
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.Context;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+public class SirenPrefetchTest {
+
+    private Context context;
+    private LocalManifestServer server;
+    private SirenHelper sirenHelper;
+    private Siren siren;
+
+    @Before
+    public void prepareTest() throws IOException {
+        context = ApplicationProvider.getApplicationContext();
+        server = new LocalManifestServer();
+        server.start();
+        server.setBody("{\"" + context.getPackageName() + "\":{\"minVersionCode\":" + Integer.MAX_VALUE + "}}", "\"v1\"");
+
+        sirenHelper = new SirenHelper();
+        siren = new Siren() {
+            @Override
+            protected SirenHelper getSirenHelper() {
+                return sirenHelper;
+            }
+        };
+        siren.mApplicationContext = context;
+        siren.setVersionCodeUpdateAlertType(SirenAlertType.NONE);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+        siren.disablePrefetch();
+    }
+
+    @Test
+    public void onEnablePrefetch_jobShouldBeScheduledForUrl() {
+        siren.enablePrefetch(server.getUrl(), 1, TimeUnit.HOURS);
+
+        List<JobInfo> jobs = getJobScheduler().getAllPendingJobs();
+        assertEquals(1, jobs.size());
+        assertEquals(Constants.PREFETCH_JOB_ID, jobs.get(0).getId());
+        assertEquals(server.getUrl(), jobs.get(0).getExtras().getString(Constants.PREFETCH_EXTRA_URL));
+        assertEquals(TimeUnit.HOURS.toMillis(1), jobs.get(0).getIntervalMillis());
+    }
+
+    @Test
+    public void onShortInterval_jobShouldUseSchedulerMinimum() {
+        siren.enablePrefetch(server.getUrl(), 1, TimeUnit.MINUTES);
+
+        assertEquals(SirenPrefetchJobService.MIN_INTERVAL_MILLIS, getJobScheduler().getAllPendingJobs().get(0).getIntervalMillis());
+    }
+
+    @Test
+    public void onDisablePrefetch_jobShouldBeCancelled() {
+        siren.enablePrefetch(server.getUrl(), 1, TimeUnit.HOURS);
+        siren.disablePrefetch();
+
+        assertTrue(getJobScheduler().getAllPendingJobs().isEmpty());
+    }
+
+    @Test
+    public void onPrefetchedDocument_checkShouldNotAskServer() {
+        prefetch();
+        assertEquals(1, server.getRequestCount());
+
+        CountDownLatch detected = new CountDownLatch(1);
+        siren.setSirenListener(new DetectionListener(detected));
+        siren.enablePrefetch(server.getUrl(), 1, TimeUnit.HOURS);
+        siren.checkVersion(null, SirenVersionCheckType.IMMEDIATELY, server.getUrl());
+
+        assertTrue(awaitOnMainThread(detected));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void onWithoutPrefetch_checkShouldRevalidateDocument() {
+        prefetch();
+
+        CountDownLatch detected = new CountDownLatch(1);
+        siren.setSirenListener(new DetectionListener(detected));
+        siren.checkVersion(null, SirenVersionCheckType.IMMEDIATELY, server.getUrl());
+
+        assertTrue(awaitOnMainThread(detected));
+        assertEquals(2, server.getRequestCount());
+    }
+
+    /**
+     * Does what {@link SirenPrefetchJobService} does when the job runs
+     */
+    private void prefetch() {
+        final CountDownLatch fetched = new CountDownLatch(1);
+        sirenHelper.getManifestFetcher(context).fetch(server.getUrl(), new SirenFetcher.Callback() {
+            @Override
+            public void onFetched(@Nullable SirenManifestDocument document, SirenTransferMetrics transfer) {
+                fetched.countDown();
+            }
+
+            @Override
+            public void onFetchFailed(Exception e, SirenTransferMetrics transfer) {
+                // the latch times out
+            }
+        });
+        assertTrue(awaitOnMainThread(fetched));
+    }
+
+    private JobScheduler getJobScheduler() {
+        return (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+    }
+
+    /**
+     * Results are posted to the main looper, which Robolectric only runs when asked to
+     */
+    private static boolean awaitOnMainThread(CountDownLatch latch) {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (latch.getCount() > 0 && System.currentTimeMillis() < deadline) {
+            shadowOf(Looper.getMainLooper()).idle();
+            try {
+                latch.await(10, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return latch.getCount() == 0;
+    }
+
+    private static class DetectionListener implements ISirenListener {
+        private final CountDownLatch mDetected;
+
+        DetectionListener(CountDownLatch detected) {
+            mDetected = detected;
+        }
+
+        @Override
+        public void onShowUpdateDialog() {
+        }
+
+        @Override
+        public void onLaunchGooglePlay() {
+        }
+
+        @Override
+        public void onSkipVersion() {
+        }
+
+        @Override
+        public void onCancel() {
+        }
+
+        @Override
+        public void onDetectNewVersionWithoutAlert(String message) {
+            mDetected.countDown();
+        }
+
+        @Override
+        public void onError(Exception e) {
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.eggheadgames.siren;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.Nullable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Runs the fetches of {@link #onConcurrentProcesses_onlyOneShouldDownload}, and the other process of
+ * {@link #onStateSavedByOtherProcess_valuesOfBothShouldBeKept} and {@link #onLockHeldTooLong_itShouldNotBeWaitedFor},
+ * in separate JVMs started with the classpath of the test, the way the processes of a multi-process app share the
+ * cache directory.
+ */
+public class SirenProcessLockTest {
+    private static final int PROCESSES = 3;
+    private static final String READY = "ready";
+    private static final String SAVE_STATE = "save-state";
+    private static final String HOLD_LOCK = "hold-lock";
+    private static final long CHECK_DATE = 1500000000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LocalManifestServer server;
+    private File directory;
+
+    @Before
+    public void prepareTest() throws IOException {
+        server = new LocalManifestServer();
+        server.start();
+        server.setBody(TestConstants.jsonVersionCodeUpdate, "\"v1\"");
+        directory = folder.newFolder();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test(timeout = 60000)
+    public void onConcurrentProcesses_onlyOneShouldDownload() throws Exception {
+        // held until every process is waiting for it, so their fetches overlap
+        SirenProcessLock.Held held = new SirenProcessLock(directory).acquire(server.getUrl());
+        assertNotNull(held);
+        List<Process> processes = new ArrayList<>();
+        List<BufferedReader> outputs = new ArrayList<>();
+        try {
+            for (int i = 0; i < PROCESSES; i++) {
+                Process process = startProcess(directory.getPath(), server.getUrl());
+                processes.add(process);
+                outputs.add(new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8")));
+            }
+            for (BufferedReader output : outputs) {
+                assertEquals(READY, output.readLine());
+            }
+        } finally {
+            held.release();
+        }
+
+        int downloaded = 0;
+        int shared = 0;
+        for (int i = 0; i < PROCESSES; i++) {
+            String source = outputs.get(i).readLine();
+            if (SirenCheckMetrics.Source.NETWORK.name().equals(source)) {
+                downloaded++;
+            } else if (SirenCheckMetrics.Source.SHARED.name().equals(source)) {
+                shared++;
+            }
+            assertEquals(0, processes.get(i).waitFor());
+        }
+        assertEquals(1, downloaded);
+        assertEquals(PROCESSES - 1, shared);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test(timeout = 60000)
+    public void onLockHeldTooLong_itShouldNotBeWaitedFor() throws Exception {
+        Process process = startProcess(HOLD_LOCK, directory.getPath(), server.getUrl());
+        try {
+            assertEquals(READY, new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8")).readLine());
+
+            assertNull(new SirenProcessLock(directory, 100).acquire(server.getUrl()));
+        } finally {
+            process.destroy();
+        }
+        process.waitFor();
+
+        SirenProcessLock.Held held = new SirenProcessLock(directory).acquire(server.getUrl());
+        assertNotNull(held);
+        held.release();
+    }
+
+    @Test
+    public void onCopyStoredWithinInterval_downloadShouldBeSkipped() throws InterruptedException {
+        assertEquals(SirenCheckMetrics.Source.NETWORK, fetch(directory, server.getUrl(), 0));
+
+        assertEquals(SirenCheckMetrics.Source.SHARED, fetch(directory, server.getUrl(), TimeUnit.HOURS.toMillis(1)));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void onCopyStoredBeforeFetch_documentShouldBeDownloaded() throws InterruptedException {
+        assertEquals(SirenCheckMetrics.Source.NETWORK, fetch(directory, server.getUrl(), 0));
+        Thread.sleep(5);
+
+        assertEquals(SirenCheckMetrics.Source.NOT_MODIFIED, fetch(directory, server.getUrl(), 0));
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test(timeout = 60000)
+    public void onStateSavedByOtherProcess_valuesOfBothShouldBeKept() throws Exception {
+        SirenSharedState sharedState = new SirenSharedState(directory, new SirenProcessLock(directory));
+        SirenStateStore store = newStateStore();
+        store.reload(sharedState);
+        store.setSkippedVersion(TestConstants.appVersionName);
+
+        Process process = startProcess(SAVE_STATE, directory.getPath());
+        String installSeed = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8")).readLine();
+        assertEquals(0, process.waitFor());
+        store.reload(sharedState);
+
+        assertEquals(TestConstants.appVersionName, store.getSkippedVersion());
+        assertEquals(CHECK_DATE, store.getLastCheckDate());
+        assertEquals(2, store.getConsecutiveFailures());
+        assertEquals(CHECK_DATE + 1, store.getNextAttemptAt());
+        assertEquals(String.valueOf(store.getInstallSeed()), installSeed);
+    }
+
+    @Test
+    public void onNewProcess_sharedStateShouldBeTakenOver() {
+        SirenStateStore store = newStateStore();
+        store.reload(new SirenSharedState(directory, new SirenProcessLock(directory)));
+        store.setLastCheckDate(CHECK_DATE);
+
+        SirenStateStore otherStore = newStateStore();
+        otherStore.reload(new SirenSharedState(directory, new SirenProcessLock(directory)));
+
+        assertEquals(CHECK_DATE, otherStore.getLastCheckDate());
+        assertEquals(store.getInstallSeed(), otherStore.getInstallSeed());
+    }
+
+    /**
+     * With {@link #SAVE_STATE}, the other process of {@link #onStateSavedByOtherProcess_valuesOfBothShouldBeKept}:
+     * saves a check and a backoff, then prints the install seed it uses.
+     * <p>
+     * With {@link #HOLD_LOCK}, the other process of {@link #onLockHeldTooLong_itShouldNotBeWaitedFor}: prints
+     * {@link #READY} once it holds the lock, then keeps it until its input is closed.
+     * <p>
+     * Otherwise one process of {@link #onConcurrentProcesses_onlyOneShouldDownload}: prints {@link #READY} once its
+     * fetch has started, then the source of the document it got
+     */
+    public static void main(String[] args) throws InterruptedException, IOException {
+        if (HOLD_LOCK.equals(args[0])) {
+            SirenProcessLock.Held held = new SirenProcessLock(new File(args[1])).acquire(args[2]);
+            System.out.println(held == null ? null : READY);
+            //noinspection StatementWithEmptyBody
+            while (System.in.read() != -1) {
+                // held until the test is done
+            }
+            System.exit(0);
+        }
+        if (SAVE_STATE.equals(args[0])) {
+            File directory = new File(args[1]);
+            SirenStateStore store = newStateStore();
+            store.reload(new SirenSharedState(directory, new SirenProcessLock(directory)));
+            store.setLastCheckDate(CHECK_DATE);
+            store.setBackoff(2, CHECK_DATE + 1);
+            System.out.println(store.getInstallSeed());
+            System.exit(0);
+        }
+        File directory = new File(args[0]);
+        ExecutorService workerExecutor = Executors.newSingleThreadExecutor();
+        ResultCallback callback = new ResultCallback();
+        newFetcher(directory, workerExecutor).fetch(Collections.singletonList(args[1]), SirenFetcher.DEFAULT_HEDGE_DELAY_MILLIS,
+                SirenFetcher.NETWORK_FIRST, SirenFetcher.NO_STALE_COPY, 0, callback);
+        System.out.println(READY);
+        System.out.println(callback.await());
+        System.exit(0);
+    }
+
+    private static Process startProcess(String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(SirenProcessLockTest.class.getName());
+        Collections.addAll(command, args);
+        return new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    }
+
+    /**
+     * @return a store with fresh preferences that saves its changes right away
+     */
+    private static SirenStateStore newStateStore() {
+        SirenStateStore.LegacyPreferences legacyPreferences = new SirenStateStore.LegacyPreferences() {
+            @Override
+            public SharedPreferences get() {
+                return new MemoryPreferences();
+            }
+        };
+        return new SirenStateStore(new MemoryPreferences(), legacyPreferences, new SirenStateStore.BackgroundRunner() {
+            @Override
+            public boolean runInBackground(Runnable runnable) {
+                runnable.run();
+                return true;
+            }
+        });
+    }
+
+    @Nullable
+    private static SirenCheckMetrics.Source fetch(File directory, String url, long sharedMaxAgeMillis) throws InterruptedException {
+        ExecutorService workerExecutor = Executors.newSingleThreadExecutor();
+        try {
+            ResultCallback callback = new ResultCallback();
+            newFetcher(directory, workerExecutor).fetch(Collections.singletonList(url), SirenFetcher.DEFAULT_HEDGE_DELAY_MILLIS,
+                    SirenFetcher.NETWORK_FIRST, SirenFetcher.NO_STALE_COPY, sharedMaxAgeMillis, callback);
+            return callback.await();
+        } finally {
+            workerExecutor.shutdownNow();
+        }
+    }
+
+    private static SirenFetcher newFetcher(File directory, ExecutorService workerExecutor) {
+        SirenFetcher fetcher = new SirenFetcher(new SirenManifestLoader(new SirenManifestCache(directory), TestConstants.appPackageName),
+                workerExecutor, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        fetcher.setProcessLock(new SirenProcessLock(directory));
+        return fetcher;
+    }
+
+    private static class ResultCallback implements SirenFetcher.Callback {
+        private final CountDownLatch mFetched = new CountDownLatch(1);
+        @Nullable private volatile SirenCheckMetrics.Source mSource;
+
+        @Override
+        public void onFetched(@Nullable SirenManifestDocument document, SirenTransferMetrics transfer) {
+            mSource = document == null ? null : transfer.source;
+            mFetched.countDown();
+        }
+
+        @Override
+        public void onFetchFailed(Exception e, SirenTransferMetrics transfer) {
+            mFetched.countDown();
+        }
+
+        /**
+         * @return the source of the document, or null if there is none
+         */
+        @Nullable
+        SirenCheckMetrics.Source await() throws InterruptedException {
+            mFetched.await(30, TimeUnit.SECONDS);
+            return mSource;
+        }
+    }
+}
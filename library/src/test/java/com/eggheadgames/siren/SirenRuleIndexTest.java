@@ -0,0 +1,97 @@
+package com.eggheadgames.siren;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class SirenRuleIndexTest {
+    private static final String[] COUNTRIES = {"US", "CA", "DE", "FR", "JP", "BR"};
+
+    @Test
+    public void onOverlappingRules_firstRuleInDocumentOrderShouldWin() {
+        SirenRuleIndex.Rule anywhere = rule(21, 30, null, 0, 100);
+        SirenRuleIndex.Rule germany = rule(23, 23, new String[]{"DE"}, 0, 100);
+        List<SirenRuleIndex.Rule> rules = new ArrayList<>();
+        rules.add(germany);
+        rules.add(anywhere);
+        SirenRuleIndex index = SirenRuleIndex.compile(rules);
+
+        assertSame(germany, index.match(23, "de", 50));
+        assertSame(anywhere, index.match(24, "DE", 50));
+        assertSame(anywhere, index.match(23, "US", 50));
+        assertNull(index.match(31, "DE", 50));
+        assertNull(index.match(23, "DE", 101));
+    }
+
+    @Test
+    public void onInvertedRange_ruleShouldNeverMatch() {
+        List<SirenRuleIndex.Rule> rules = new ArrayList<>();
+        rules.add(rule(30, 21, null, Long.MIN_VALUE, Long.MAX_VALUE));
+        SirenRuleIndex index = SirenRuleIndex.compile(rules);
+
+        assertNull(index.match(25, "US", 1));
+    }
+
+    @Test
+    public void onHundredsOfRules_indexShouldMatchLinearScan() {
+        Random random = new Random(3);
+        List<SirenRuleIndex.Rule> rules = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            int minSdk = 16 + random.nextInt(20);
+            long minVersionCode = random.nextInt(1000);
+            String[] countries = random.nextInt(3) == 0 ? null : new String[]{COUNTRIES[random.nextInt(COUNTRIES.length)]};
+            rules.add(rule(minSdk, minSdk + random.nextInt(6), countries, minVersionCode, minVersionCode + random.nextInt(50)));
+        }
+        SirenRuleIndex index = SirenRuleIndex.compile(rules);
+
+        for (int i = 0; i < 5000; i++) {
+            int sdk = 14 + random.nextInt(26);
+            String country = random.nextInt(7) == 0 ? "IT" : COUNTRIES[random.nextInt(COUNTRIES.length)];
+            long versionCode = random.nextInt(1100);
+            assertSame(scan(rules, sdk, country, versionCode), index.match(sdk, country, versionCode));
+        }
+    }
+
+    @Test
+    public void onSameRulesText_compiledIndexShouldBeReused() throws JSONException {
+        String source = "[{\"minSdk\":21,\"minVersionCode\":9}]";
+
+        SirenRuleIndex first = SirenRuleIndex.forSource(source);
+
+        assertSame(first, SirenRuleIndex.forSource(new String(source)));
+    }
+
+    private static SirenRuleIndex.Rule rule(long minSdk, long maxSdk, String[] countries, long minVersionCode, long maxVersionCode) {
+        SirenRuleIndex.Rule rule = new SirenRuleIndex.Rule();
+        rule.minSdk = minSdk;
+        rule.maxSdk = maxSdk;
+        rule.countries = countries;
+        rule.minInstalledVersionCode = minVersionCode;
+        rule.maxInstalledVersionCode = maxVersionCode;
+        return rule;
+    }
+
+    private static SirenRuleIndex.Rule scan(List<SirenRuleIndex.Rule> rules, int sdk, String country, long versionCode) {
+        for (SirenRuleIndex.Rule rule : rules) {
+            if (sdk < rule.minSdk || sdk > rule.maxSdk
+                    || versionCode < rule.minInstalledVersionCode || versionCode > rule.maxInstalledVersionCode) {
+                continue;
+            }
+            if (rule.countries == null) {
+                return rule;
+            }
+            for (String ruleCountry : rule.countries) {
+                if (ruleCountry.equals(country)) {
+                    return rule;
+                }
+            }
+        }
+        return null;
+    }
+}
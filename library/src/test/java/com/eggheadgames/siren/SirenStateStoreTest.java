@@ -0,0 +1,147 @@
+package com.eggheadgames.siren;
+
+import android.content.SharedPreferences;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SirenStateStoreTest {
+    private static final long CHECK_DATE = 1500000000000L;
+
+    private final MemoryPreferences preferences = new MemoryPreferences();
+    private final MemoryPreferences legacyPreferences = new MemoryPreferences();
+    private final CapturingRunner runner = new CapturingRunner();
+    private int legacyReads;
+    private final SirenStateStore.LegacyPreferences legacySource = new SirenStateStore.LegacyPreferences() {
+        @Override
+        public SharedPreferences get() {
+            legacyReads++;
+            return legacyPreferences;
+        }
+    };
+
+    @Test
+    public void onFirstUse_legacyValuesShouldBeMoved() {
+        legacyPreferences.edit()
+                .putLong(Constants.PREFERENCES_LAST_CHECK_DATE, CHECK_DATE)
+                .putString(Constants.PREFERENCES_SKIPPED_VERSION, TestConstants.appVersionName)
+                .putString("host_app_key", "kept")
+                .commit();
+
+        SirenStateStore store = new SirenStateStore(preferences, legacySource, runner);
+
+        assertEquals(CHECK_DATE, store.getLastCheckDate());
+        assertEquals(TestConstants.appVersionName, store.getSkippedVersion());
+        assertEquals(CHECK_DATE, preferences.getLong(Constants.PREFERENCES_LAST_CHECK_DATE, 0));
+        assertEquals(TestConstants.appVersionName, preferences.getString(Constants.PREFERENCES_SKIPPED_VERSION, null));
+        assertTrue(preferences.getBoolean(Constants.PREFERENCES_MIGRATED, false));
+        assertFalse(legacyPreferences.contains(Constants.PREFERENCES_LAST_CHECK_DATE));
+        assertFalse(legacyPreferences.contains(Constants.PREFERENCES_SKIPPED_VERSION));
+        assertEquals("kept", legacyPreferences.getString("host_app_key", null));
+    }
+
+    @Test
+    public void onMigratedPreferences_legacyValuesShouldBeIgnored() {
+        preferences.edit()
+                .putBoolean(Constants.PREFERENCES_MIGRATED, true)
+                .putLong(Constants.PREFERENCES_LAST_CHECK_DATE, CHECK_DATE)
+                .commit();
+        legacyPreferences.edit()
+                .putLong(Constants.PREFERENCES_LAST_CHECK_DATE, CHECK_DATE - 1)
+                .putString(Constants.PREFERENCES_SKIPPED_VERSION, TestConstants.appVersionName)
+                .commit();
+
+        SirenStateStore store = new SirenStateStore(preferences, legacySource, runner);
+
+        assertEquals(CHECK_DATE, store.getLastCheckDate());
+        assertEquals("", store.getSkippedVersion());
+        assertTrue(legacyPreferences.contains(Constants.PREFERENCES_SKIPPED_VERSION));
+        assertEquals(0, legacyReads);
+    }
+
+    @Test
+    public void onSeveralWrites_oneFlushShouldSaveTheLatestValues() {
+        SirenStateStore store = new SirenStateStore(preferences, legacySource, runner);
+        int commits = preferences.commits;
+
+        store.setLastCheckDate(CHECK_DATE);
+        store.setSkippedVersion("1.0");
+        store.setSkippedVersion(TestConstants.appVersionName);
+        store.setBackoff(2, CHECK_DATE + 1);
+        store.setCheckPolicy(60000, 0.5f);
+
+        assertEquals(1, runner.runnables.size());
+        assertEquals(commits, preferences.commits);
+        runner.runAll();
+
+        assertEquals(commits + 1, preferences.commits);
+        assertEquals(CHECK_DATE, preferences.getLong(Constants.PREFERENCES_LAST_CHECK_DATE, 0));
+        assertEquals(TestConstants.appVersionName, preferences.getString(Constants.PREFERENCES_SKIPPED_VERSION, null));
+        assertEquals(2, preferences.getInt(Constants.PREFERENCES_CONSECUTIVE_FAILURES, 0));
+        assertEquals(CHECK_DATE + 1, preferences.getLong(Constants.PREFERENCES_NEXT_ATTEMPT_AT, 0));
+        assertEquals(60000, preferences.getLong(Constants.PREFERENCES_MIN_CHECK_INTERVAL, 0));
+        assertEquals(0.5f, preferences.getFloat(Constants.PREFERENCES_CHECK_SAMPLE_RATE, 1), 0);
+    }
+
+    @Test
+    public void onWriteAfterFlush_anotherFlushShouldBeScheduled() {
+        SirenStateStore store = new SirenStateStore(preferences, legacySource, runner);
+        store.setLastCheckDate(CHECK_DATE);
+        runner.runAll();
+
+        store.setLastCheckDate(CHECK_DATE + 1);
+
+        assertEquals(1, runner.runnables.size());
+        runner.runAll();
+        assertEquals(CHECK_DATE + 1, preferences.getLong(Constants.PREFERENCES_LAST_CHECK_DATE, 0));
+    }
+
+    @Test
+    public void onRejectedFlush_valuesShouldBeAppliedInstead() {
+        runner.rejects = true;
+        SirenStateStore store = new SirenStateStore(preferences, legacySource, runner);
+        int commits = preferences.commits;
+        int applies = preferences.applies;
+
+        store.setSkippedVersion(TestConstants.appVersionName);
+
+        assertEquals(commits, preferences.commits);
+        assertEquals(applies + 1, preferences.applies);
+        assertEquals(TestConstants.appVersionName, preferences.getString(Constants.PREFERENCES_SKIPPED_VERSION, null));
+    }
+
+    @Test
+    public void onReload_installSeedShouldBeKept() {
+        long installSeed = new SirenStateStore(preferences, legacySource, runner).getInstallSeed();
+
+        assertEquals(installSeed, new SirenStateStore(preferences, legacySource, runner).getInstallSeed());
+    }
+
+    private static class CapturingRunner implements SirenStateStore.BackgroundRunner {
+        final List<Runnable> runnables = new ArrayList<>();
+        boolean rejects;
+
+        @Override
+        public boolean runInBackground(Runnable runnable) {
+            if (rejects) {
+                return false;
+            }
+            runnables.add(runnable);
+            return true;
+        }
+
+        void runAll() {
+            List<Runnable> captured = new ArrayList<>(runnables);
+            runnables.clear();
+            for (Runnable runnable : captured) {
+                runnable.run();
+            }
+        }
+    }
+}
@@ -6,12 +6,18 @@ import android.content.Context;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatcher;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.eq;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -34,26 +40,14 @@ public class SirenTest {
         siren = Mockito.spy(new Siren());
         alertWrapper = Mockito.spy(new SirenAlertWrapper(null, null, null, null, null, null, null));
         //Mock SirenHelper class
+        Mockito.when(sirenHelper.isStateLoaded()).thenReturn(true);
         Mockito.when(sirenHelper.getAlertMessage(Mockito.any(Context.class), Mockito.anyString(), Mockito.any(SirenSupportedLocales.class))).thenReturn("");
-        Mockito.when(sirenHelper.getDaysSinceLastCheck(activity)).thenReturn(0);
+        Mockito.when(sirenHelper.isCheckDue(eq(activity), Mockito.anyLong())).thenReturn(false);
         Mockito.when(sirenHelper.getLocalizedString(Mockito.any(Context.class), Mockito.anyInt(), Mockito.any(SirenSupportedLocales.class))).thenReturn("");
         Mockito.when(sirenHelper.getPackageName(activity)).thenReturn(TestConstants.appPackageName);
         Mockito.when(sirenHelper.getVersionCode(activity)).thenReturn(TestConstants.appVersionCode);
         Mockito.when(sirenHelper.getVersionName(activity)).thenReturn(TestConstants.appVersionName);
         Mockito.when(sirenHelper.isVersionSkippedByUser(Mockito.any(Context.class), Mockito.anyString())).thenReturn(false);
-        Mockito.when(sirenHelper.isGreater(Mockito.anyString(), Mockito.anyString())).thenAnswer(new Answer<Boolean>() {
-            @Override
-            public Boolean answer(InvocationOnMock invocation) throws Throwable {
-                return Integer.parseInt((String) invocation.getArguments()[0]) > Integer.parseInt((String) invocation.getArguments()[1]);
-            }
-        });
-
-        Mockito.when(sirenHelper.isEquals(Mockito.anyString(), Mockito.anyString())).thenAnswer(new Answer<Boolean>() {
-            @Override
-            public Boolean answer(InvocationOnMock invocation) throws Throwable {
-                return Integer.parseInt((String) invocation.getArguments()[0]) == Integer.parseInt((String) invocation.getArguments()[1]);
-            }
-        });
         Mockito.when(sirenHelper.isEmpty(Mockito.anyString())).thenAnswer(new Answer<Boolean>() {
             @Override
             public Boolean answer(InvocationOnMock invocation) throws Throwable {
@@ -81,19 +75,32 @@ public class SirenTest {
         siren.mApplicationContext = activity;
 
         Mockito.when(siren.getSirenHelper()).thenReturn(sirenHelper);
-        Mockito.doReturn(alertWrapper).when(siren).getAlertWrapper(Mockito.any(SirenAlertType.class), Mockito.anyString(), Mockito.any());
+        Mockito.doReturn(alertWrapper).when(siren).getAlertWrapper(Mockito.any(SirenCheckRequest.class), Mockito.any(SirenAlertViewModel.class));
 
         mockResult(TestConstants.jsonVersionNameMajorUpdate);
     }
 
+    /**
+     * @param minAppVersion null to accept any version
+     */
+    private static SirenAlertViewModel alertOf(final SirenAlertType alertType, final String minAppVersion) {
+        return Mockito.argThat(new ArgumentMatcher<SirenAlertViewModel>() {
+            @Override
+            public boolean matches(SirenAlertViewModel viewModel) {
+                return viewModel != null && viewModel.alertType == alertType
+                        && (minAppVersion == null || minAppVersion.equals(viewModel.minAppVersion));
+            }
+        });
+    }
+
     private void mockResult(final String forResult) {
         Mockito.doAnswer(new Answer() {
             @Override
             public Object answer(InvocationOnMock invocation) throws Throwable {
-                siren.handleVerificationResults(forResult);
+                siren.handleVerificationResults((SirenCheckRequest) invocation.getArguments()[0], forResult);
                 return null;
             }
-        }).when(siren).performVersionCheck(Mockito.anyString());
+        }).when(siren).performVersionCheck(Mockito.any(SirenCheckRequest.class));
     }
 
     @Test
@@ -104,7 +111,7 @@ public class SirenTest {
     @Test
     public void onEmptyJsonUrl_verificationShouldNotBePerformed() {
         siren.checkVersion(activity, SirenVersionCheckType.IMMEDIATELY, "");
-        Mockito.verify(siren, Mockito.never()).performVersionCheck(Mockito.anyString());
+        Mockito.verify(siren, Mockito.never()).performVersionCheck(Mockito.any(SirenCheckRequest.class));
     }
 
     @Test
@@ -127,7 +134,7 @@ public class SirenTest {
 
     @Test
     public void onDailyVerification_versionCheckShouldBePerformedOnceADay() {
-        Mockito.when(sirenHelper.getDaysSinceLastCheck(activity)).thenReturn(0);
+        Mockito.when(sirenHelper.isCheckDue(eq(activity), Mockito.anyLong())).thenReturn(false);
         siren.checkVersion(activity, SirenVersionCheckType.DAILY, APP_DESCRIPTION_URL);
         Mockito.verify(alertWrapper, Mockito.times(1)).show();
 
@@ -136,14 +143,14 @@ public class SirenTest {
         Mockito.verify(alertWrapper, Mockito.times(1)).show();
 
         //next day verification
-        Mockito.when(sirenHelper.getDaysSinceLastCheck(activity)).thenReturn(1);
+        Mockito.when(sirenHelper.isCheckDue(eq(activity), Mockito.anyLong())).thenReturn(true);
         siren.checkVersion(activity, SirenVersionCheckType.DAILY, APP_DESCRIPTION_URL);
         Mockito.verify(alertWrapper, Mockito.times(2)).show();
     }
 
     @Test
     public void onWeeklyVerificationVersionCheckShouldBePerformedOnceAWeek() {
-        Mockito.when(sirenHelper.getDaysSinceLastCheck(activity)).thenReturn(0);
+        Mockito.when(sirenHelper.isCheckDue(eq(activity), Mockito.anyLong())).thenReturn(false);
         siren.checkVersion(activity, SirenVersionCheckType.WEEKLY, APP_DESCRIPTION_URL);
         Mockito.verify(alertWrapper, Mockito.times(1)).show();
 
@@ -152,12 +159,12 @@ public class SirenTest {
         Mockito.verify(alertWrapper, Mockito.times(1)).show();
 
         //day 5 verification
-        Mockito.when(sirenHelper.getDaysSinceLastCheck(activity)).thenReturn(5);
+        Mockito.when(sirenHelper.isCheckDue(eq(activity), Mockito.anyLong())).thenReturn(false);
         siren.checkVersion(activity, SirenVersionCheckType.WEEKLY, APP_DESCRIPTION_URL);
         Mockito.verify(alertWrapper, Mockito.times(1)).show();
 
         //next week verification
-        Mockito.when(sirenHelper.getDaysSinceLastCheck(activity)).thenReturn(7);
+        Mockito.when(sirenHelper.isCheckDue(eq(activity), Mockito.anyLong())).thenReturn(true);
         siren.checkVersion(activity, SirenVersionCheckType.WEEKLY, APP_DESCRIPTION_URL);
         Mockito.verify(alertWrapper, Mockito.times(2)).show();
     }
@@ -248,12 +255,39 @@ public class SirenTest {
     }
 
     @Test
-    public void onVersionNameCountNotEquals_verificationShouldBeSkipped() {
+    public void onSkippedVersionNameInstalled_updateStateShouldBeUpToDate() {
+        mockResult(TestConstants.jsonVersionNameLongRevisionUpdate);
+        Mockito.when(sirenHelper.isVersionSkippedByUser(activity, TestConstants.appVersionName)).thenReturn(true);
+
+        siren.checkVersion(activity, SirenVersionCheckType.IMMEDIATELY, APP_DESCRIPTION_URL);
+
+        Mockito.verify(alertWrapper, Mockito.never()).show();
+        assertEquals(SirenCheckDecision.UP_TO_DATE, siren.getUpdateState().getDecision());
+    }
+
+    @Test
+    public void onVersionNameCountNotEquals_missingSegmentsShouldCountAsZero() {
         Mockito.when(sirenHelper.getVersionName(activity)).thenReturn("1.1.1");
         siren.checkVersion(activity, SirenVersionCheckType.IMMEDIATELY, APP_DESCRIPTION_URL);
+        Mockito.verify(siren).getAlertWrapper(Mockito.any(SirenCheckRequest.class), alertOf(SirenAlertType.OPTION, "2.1.1.1"));
+    }
+
+    @Test
+    public void onShorterVersionNameUpToDate_dialogShouldNotBeShown() {
+        mockResult(TestConstants.jsonVersionNameShort);
+        siren.checkVersion(activity, SirenVersionCheckType.IMMEDIATELY, APP_DESCRIPTION_URL);
         Mockito.verify(alertWrapper, Mockito.never()).show();
     }
 
+    @Test
+    public void onLongerVersionNameUpdate_revisionAlertTypeShouldBeUsed() {
+        mockResult(TestConstants.jsonVersionNameLongRevisionUpdate);
+        Mockito.when(sirenHelper.getVersionName(activity)).thenReturn("1.1.1");
+        siren.setRevisionUpdateAlertType(SirenAlertType.SKIP);
+        siren.checkVersion(activity, SirenVersionCheckType.IMMEDIATELY, APP_DESCRIPTION_URL);
+        Mockito.verify(siren).getAlertWrapper(Mockito.any(SirenCheckRequest.class), alertOf(SirenAlertType.SKIP, null));
+    }
+
     @Test
     public void onVerificationFailure_listenerShouldBeTriggered() {
         mockResult(TestConstants.jsonMalformed);
@@ -273,13 +307,36 @@ public class SirenTest {
         Mockito.verify(listener, Mockito.times(1)).onDetectNewVersionWithoutAlert(Mockito.anyString());
     }
 
+    @Test
+    public void onCheckRequest_onlyItsListenerShouldBeTriggered() {
+        ISirenListener defaultListener = Mockito.mock(ISirenListener.class);
+        ISirenListener requestListener = Mockito.mock(ISirenListener.class);
+        siren.setSirenListener(defaultListener);
+        siren.setMajorUpdateAlertType(SirenAlertType.NONE);
+
+        siren.checkVersion(new SirenCheckRequest.Builder(APP_DESCRIPTION_URL).setActivity(activity).setListener(requestListener).build());
+
+        Mockito.verify(requestListener, Mockito.times(1)).onDetectNewVersionWithoutAlert(Mockito.anyString());
+        Mockito.verifyNoMoreInteractions(defaultListener);
+    }
+
+    @Test
+    public void onCheckRequestWithConfig_itsAlertTypeShouldBeUsed() {
+        SirenConfig config = siren.getConfig().buildUpon().setMajorUpdateAlertType(SirenAlertType.SKIP).build();
+
+        siren.checkVersion(new SirenCheckRequest.Builder(APP_DESCRIPTION_URL).setActivity(activity).setConfig(config).build());
+
+        Mockito.verify(siren).getAlertWrapper(Mockito.any(SirenCheckRequest.class), alertOf(SirenAlertType.SKIP, null));
+        assertEquals(SirenAlertType.OPTION, siren.getConfig().alertTypeResolver.majorUpdateAlertType);
+    }
+
     @Test
     public void onVersionCodeUpdate_checkVersionCodeAlertType() {
         mockResult(TestConstants.jsonVersionCodeUpdate);
 
         siren.setVersionCodeUpdateAlertType(SirenAlertType.FORCE);
         siren.checkVersion(activity, SirenVersionCheckType.IMMEDIATELY, APP_DESCRIPTION_URL);
-        Mockito.verify(siren).getAlertWrapper(eq(SirenAlertType.FORCE), Mockito.anyString(), Mockito.any());
+        Mockito.verify(siren).getAlertWrapper(Mockito.any(SirenCheckRequest.class), alertOf(SirenAlertType.FORCE, null));
     }
 
     @Test
@@ -316,6 +373,51 @@ public class SirenTest {
 
         siren.checkVersion(activity, SirenVersionCheckType.IMMEDIATELY, APP_DESCRIPTION_URL);
 
-        Mockito.verify(siren).getAlertWrapper(eq(SirenAlertType.FORCE), Mockito.anyString(), Mockito.any());
+        Mockito.verify(siren).getAlertWrapper(Mockito.any(SirenCheckRequest.class), alertOf(SirenAlertType.FORCE, null));
+    }
+
+    @Test
+    public void beforeFirstEvaluation_updateStateShouldBeUnknown() {
+        assertNull(siren.getUpdateState());
+    }
+
+    @Test
+    public void onForceUpdateEnabled_updateStateShouldBeForced() {
+        mockResult(TestConstants.jsonForceUpdateEnabled);
+        Mockito.when(sirenHelper.getVersionName(activity)).thenReturn(TestConstants.appVersionNameTest);
+
+        siren.checkVersion(activity, SirenVersionCheckType.IMMEDIATELY, APP_DESCRIPTION_URL);
+
+        SirenUpdateState state = siren.getUpdateState();
+        assertTrue(state.isUpdateAvailable());
+        assertTrue(state.isForced());
+        assertEquals(SirenAlertType.FORCE, state.getAlertType());
+        assertEquals("2.1.1.1", state.getRequiredVersion());
+        assertTrue(state.getEvaluatedAtMillis() > 0);
+    }
+
+    @Test
+    public void onOutdatedVersionName_updateStateShouldBeUpToDate() {
+        mockResult(TestConstants.jsonVersionNameOutdated);
+
+        siren.checkVersion(activity, SirenVersionCheckType.IMMEDIATELY, APP_DESCRIPTION_URL);
+
+        SirenUpdateState state = siren.getUpdateState();
+        assertEquals(SirenCheckDecision.UP_TO_DATE, state.getDecision());
+        assertFalse(state.isUpdateAvailable());
+        assertFalse(state.isForced());
+        assertNull(state.getAlertType());
+        assertEquals("0.0.0.0", state.getRequiredVersion());
+    }
+
+    @Test
+    public void onMalformedJson_updateStateShouldBeKept() {
+        siren.checkVersion(activity, SirenVersionCheckType.IMMEDIATELY, APP_DESCRIPTION_URL);
+        SirenUpdateState state = siren.getUpdateState();
+
+        mockResult(TestConstants.jsonMalformed);
+        siren.checkVersion(activity, SirenVersionCheckType.IMMEDIATELY, APP_DESCRIPTION_URL);
+
+        assertSame(state, siren.getUpdateState());
     }
 }
\ No newline at end of file
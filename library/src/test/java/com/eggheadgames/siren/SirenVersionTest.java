@@ -0,0 +1,59 @@
+package com.eggheadgames.siren;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SirenVersionTest {
+
+    @Test
+    public void onParse_segmentsShouldBeNumeric() {
+        SirenVersion version = SirenVersion.parse("2.10.0.3");
+        assertEquals(4, version.getSegmentCount());
+        assertEquals(2, version.getSegment(0));
+        assertEquals(10, version.getSegment(1));
+        assertEquals(0, version.getSegment(2));
+        assertEquals(3, version.getSegment(3));
+        assertEquals(0, version.getSegment(4));
+        assertEquals("2.10.0.3", version.getName());
+    }
+
+    @Test
+    public void onSuffixedSegments_onlyLeadingDigitsShouldCount() {
+        SirenVersion version = SirenVersion.parse("1.2.3-beta.rc1");
+        assertEquals(3, version.getSegment(2));
+        assertEquals(0, version.getSegment(3));
+    }
+
+    @Test
+    public void onOverflowingSegment_valueShouldBeClamped() {
+        assertEquals(Integer.MAX_VALUE, SirenVersion.parse("1.99999999999").getSegment(1));
+    }
+
+    @Test
+    public void onGreaterVersion_firstChangedSegmentShouldBeReturned() {
+        SirenVersion current = SirenVersion.parse(TestConstants.appVersionName);
+        assertEquals(0, SirenVersion.parse("2.1.1.1").firstGreaterSegment(current));
+        assertEquals(1, SirenVersion.parse("1.2.1.1").firstGreaterSegment(current));
+        assertEquals(2, SirenVersion.parse("1.1.2.1").firstGreaterSegment(current));
+        assertEquals(3, SirenVersion.parse("1.1.1.2").firstGreaterSegment(current));
+    }
+
+    @Test
+    public void onSameOrOlderVersion_noSegmentShouldBeReturned() {
+        SirenVersion current = SirenVersion.parse(TestConstants.appVersionName);
+        assertEquals(-1, SirenVersion.parse("1.1.1.1").firstGreaterSegment(current));
+        assertEquals(-1, SirenVersion.parse("0.9.9.9").firstGreaterSegment(current));
+        assertEquals(-1, SirenVersion.parse("1.1.0.5").firstGreaterSegment(current));
+    }
+
+    @Test
+    public void onDifferentSegmentCounts_missingSegmentsShouldCountAsZero() {
+        assertEquals(SirenVersion.parse("1.2"), SirenVersion.parse("1.2.0.0"));
+        assertEquals(SirenVersion.parse("1.2").hashCode(), SirenVersion.parse("1.2.0.0").hashCode());
+        assertEquals(2, SirenVersion.parse("1.2.1").firstGreaterSegment(SirenVersion.parse("1.2")));
+        assertEquals(-1, SirenVersion.parse("1.2").firstGreaterSegment(SirenVersion.parse("1.2.1")));
+        assertTrue(SirenVersion.parse("1.10").compareTo(SirenVersion.parse("1.9.9")) > 0);
+    }
+}
@@ -0,0 +1,64 @@
+package com.eggheadgames.siren;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.net.ssl.SSLSocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TLSSocketFactoryTest {
+
+    private ServerSocket serverSocket;
+
+    @Before
+    public void prepareTest() throws IOException {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        serverSocket.close();
+    }
+
+    @Test
+    public void onSharedInstance_sameFactoryShouldBeReturned() throws GeneralSecurityException {
+        assertSame(TLSSocketFactory.getSharedInstance(), TLSSocketFactory.getSharedInstance());
+    }
+
+    @Test
+    public void onNewSocket_onlyModernSupportedProtocolsShouldBeEnabled() throws GeneralSecurityException, IOException {
+        SSLSocket socket = (SSLSocket) TLSSocketFactory.getSharedInstance().createSocket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+        try {
+            List<String> enabled = Arrays.asList(socket.getEnabledProtocols());
+            List<String> supported = Arrays.asList(socket.getSupportedProtocols());
+
+            assertTrue(enabled.contains("TLSv1.2"));
+            assertEquals(supported.contains("TLSv1.3"), enabled.contains("TLSv1.3"));
+            for (String protocol : enabled) {
+                assertTrue(protocol, Arrays.asList("TLSv1.3", "TLSv1.2", "TLSv1.1").contains(protocol));
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void onSocketNotLayered_noHandshakeShouldBeRecorded() throws GeneralSecurityException, IOException {
+        TLSSocketFactory.takeLastHandshake();
+        TLSSocketFactory.getSharedInstance().createSocket(serverSocket.getInetAddress(), serverSocket.getLocalPort()).close();
+
+        assertNull(TLSSocketFactory.takeLastHandshake());
+    }
+}
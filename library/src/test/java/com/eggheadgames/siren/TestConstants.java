@@ -4,7 +4,7 @@ interface TestConstants {
 
     String appVersionName = "1.1.1.1";
     String appVersionNameTest = "0.0.1.0";
-    int appVersionCode = 1;
+    long appVersionCode = 1;
     String appPackageName = "com.example.app";
 
     String jsonVersionNameMajorUpdate = "{\"com.example.app\":{\"minVersionName\":\"2.1.1.1\"}}";
@@ -14,6 +14,8 @@ interface TestConstants {
     String jsonVersionNameOutdatedTest = "{\"com.example.app\":{\"minVersionName\":\"0.0.0.1\"}}";
 
     String jsonVersionNameRevisionUpdate = "{\"com.example.app\":{\"minVersionName\":\"1.1.1.2\"}}";
+    String jsonVersionNameShort = "{\"com.example.app\":{\"minVersionName\":\"1.1\"}}";
+    String jsonVersionNameLongRevisionUpdate = "{\"com.example.app\":{\"minVersionName\":\"1.1.1.1\"}}";
 
     String jsonVersionCodeUpdate = "{\"com.example.app\":{\"minVersionCode\":5}}";
     String jsonVersionCodeOutdated = "{\"com.example.app\":{\"minVersionCode\":0}}";